@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Measures the {@code acquire().flatMap(PooledRef::release)} round trip of the {@link Pool} implementations
+ * that {@link PoolBuilder#build()} can return, under increasing contention.
+ * <p>
+ * When the number of benchmark threads exceeds {@link #size}, borrowers have to wait for a release, which
+ * exercises the pending paths ({@code SimplePool#drainLoop} and {@code AffinityPool#slowPathRecycle}).
+ *
+ * @author Simon Baslé
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AcquireReleaseBenchmark {
+
+    /**
+     * Pool flavor, as selected by {@link PoolBuilder#threadAffinity(boolean)} and {@link PoolBuilder#lifo(boolean)}.
+     */
+    @Param({"simpleFifo", "simpleLifo", "affinityFifo", "affinityLifo"})
+    public String poolType;
+
+    /**
+     * Maximum size of the pool, or {@code -1} for {@link PoolBuilder#sizeUnbounded()}.
+     */
+    @Param({"8", "64", "-1"})
+    public int size;
+
+    /**
+     * The {@link PoolBuilder#acquisitionScheduler(Scheduler)}: either {@code immediate} or {@code parallel}.
+     */
+    @Param({"immediate", "parallel"})
+    public String acquisitionScheduler;
+
+    Pool<Object> pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PoolBuilder<Object> builder = PoolBuilder.from(Mono.fromCallable(Object::new))
+                                                 .threadAffinity(poolType.startsWith("affinity"))
+                                                 .lifo(poolType.endsWith("Lifo"));
+
+        if (size < 0) {
+            builder.sizeUnbounded();
+        }
+        else {
+            builder.sizeMax(size)
+                   .initialSize(size);
+        }
+
+        if ("parallel".equals(acquisitionScheduler)) {
+            builder.acquisitionScheduler(Schedulers.parallel());
+        }
+        else {
+            builder.acquisitionScheduler(Schedulers.immediate());
+        }
+
+        pool = builder.build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void uncontended() {
+        roundTrip();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contended4() {
+        roundTrip();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void contended16() {
+        roundTrip();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void contended64() {
+        roundTrip();
+    }
+
+    void roundTrip() {
+        pool.acquire()
+            .flatMap(PooledRef::release)
+            .block();
+    }
+}
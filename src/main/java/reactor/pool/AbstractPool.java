@@ -17,24 +17,36 @@ package reactor.pool;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscription;
 
 import reactor.core.CoreSubscriber;
 import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Operators;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.Logger;
 import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
 import reactor.util.context.Context;
 
 /**
@@ -53,20 +65,657 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
 
     final PoolMetricsRecorder metricsRecorder;
 
+    //the read-only view handed out by #metrics(), which doesn't expose the pool itself
+    final PoolMetrics metrics;
+
+    //checked once rather than having the hot paths read the clock for a recorder that ignores the measurements
+    final boolean metricsEnabled;
+    //whether the PooledRefs must track their release time, which the evictionPredicate might also look at
+    final boolean trackIdleTime;
+
+    volatile Disposable evictionTask = Disposables.disposed();
+
+    volatile AcquireTimeoutWheel                                           acquireTimeoutWheel;
+    static final AtomicReferenceFieldUpdater<AbstractPool, AcquireTimeoutWheel> ACQUIRE_TIMEOUT_WHEEL = AtomicReferenceFieldUpdater.newUpdater(
+            AbstractPool.class, AcquireTimeoutWheel.class, "acquireTimeoutWheel");
+
+    volatile     int                                     allocating;
+    static final AtomicIntegerFieldUpdater<AbstractPool> ALLOCATING = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "allocating");
+
+    volatile     int                                     idleAllocating;
+    static final AtomicIntegerFieldUpdater<AbstractPool> IDLE_ALLOCATING = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "idleAllocating");
+
+    volatile     int                                     toWarmup;
+    static final AtomicIntegerFieldUpdater<AbstractPool> TO_WARMUP = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "toWarmup");
+
+    volatile     int                                     allocationRetryScheduled;
+    static final AtomicIntegerFieldUpdater<AbstractPool> ALLOCATION_RETRY_SCHEDULED = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "allocationRetryScheduled");
+
+    //weight of the live resources that the AllocationStrategy couldn't grant, see #chargeWeight(Object)
+    volatile     int                                     weightShortfall;
+    static final AtomicIntegerFieldUpdater<AbstractPool> WEIGHT_SHORTFALL = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "weightShortfall");
+
     volatile     int                                     pendingCount;
     static final AtomicIntegerFieldUpdater<AbstractPool> PENDING_COUNT = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "pendingCount");
 
+    //1 once borrowers timed out that the pending structures might still hold, see #requestPendingCompaction()
+    volatile     int                                     pendingCompaction;
+    static final AtomicIntegerFieldUpdater<AbstractPool> PENDING_COMPACTION = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "pendingCompaction");
+
+    //batches of borrowers waiting to be served all at once, see #acquire(int)
+    final Queue<BatchBorrower<POOLABLE>> pendingBatches = new ConcurrentLinkedQueue<>();
+
+    volatile     int                                     pendingBatchCount;
+    static final AtomicIntegerFieldUpdater<AbstractPool> PENDING_BATCHES = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "pendingBatchCount");
+
+    //started batches with allocations held back by the maxConcurrentAllocations, see #startBatchAllocations()
+    final Queue<BatchBorrower<POOLABLE>> allocatingBatches = new ConcurrentLinkedQueue<>();
+
+    volatile     int                                     batchAllocationWip;
+    static final AtomicIntegerFieldUpdater<AbstractPool> BATCH_ALLOCATION_WIP = AtomicIntegerFieldUpdater.newUpdater(AbstractPool.class, "batchAllocationWip");
+
     AbstractPool(DefaultPoolConfig<POOLABLE> poolConfig, Logger logger) {
         this.poolConfig = poolConfig;
         this.logger = logger;
+        this.metrics = new PoolMetricsView(this);
         this.metricsRecorder = poolConfig.metricsRecorder;
+        this.metricsEnabled = !metricsRecorder.isNoOp();
+        this.trackIdleTime = metricsEnabled || poolConfig.evictionPredicate != PoolBuilder.NEVER_PREDICATE;
     }
 
     abstract boolean elementOffer(POOLABLE element);
-    abstract int idleSize();
+
+    /**
+     * @return the read-only {@link PoolMetrics} view of this pool, never {@code null}
+     */
+    @Override
+    public PoolMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the number of resources currently acquired
+     * @see PoolMetrics#acquiredSize()
+     */
+    public abstract int acquiredSize();
+
+    /**
+     * @return the number of idle resources
+     * @see PoolMetrics#idleSize()
+     */
+    public abstract int idleSize();
+
+    public int allocatedSize() {
+        return acquiredSize() + idleSize();
+    }
+
+    public int pendingAcquireSize() {
+        return PENDING_COUNT.get(this);
+    }
+
+    public int remainingPermits() {
+        return poolConfig.allocationStrategy.estimatePermitCount();
+    }
+
+    public int maxPendingAcquireSize() {
+        return poolConfig.maxPending < 0 ? Integer.MAX_VALUE : poolConfig.maxPending;
+    }
 
     abstract void doAcquire(Borrower<POOLABLE> borrower);
 
+    /**
+     * Implementation of {@link Pool#acquire(int)} for the implementations that serve batches through
+     * {@link #serveBatches()}.
+     *
+     * @param n the number of resources to acquire
+     * @return a {@link Flux} acquiring the {@code n} resources at once upon subscription
+     */
+    Flux<PooledRef<POOLABLE>> batchAcquire(int n) {
+        if (n < 1) {
+            return Flux.error(new IllegalArgumentException("n must be >= 1"));
+        }
+        return new BatchBorrowerFlux<>(this, n); //the flux is unknown to the pool until requested
+    }
+
+    void doAcquireBatch(BatchBorrower<POOLABLE> batch) {
+        if (isDisposed()) {
+            batch.fail(new RuntimeException("Pool has been shut down"));
+            return;
+        }
+        int max = poolConfig.allocationStrategy.permitMaximum();
+        if (poolConfig.weigher == null && batch.size > max) {
+            batch.fail(new IllegalArgumentException("Cannot acquire " + batch.size + " resources at once from a pool of at most " + max));
+            return;
+        }
+        PENDING_BATCHES.incrementAndGet(this);
+        pendingBatches.offer(batch);
+        if (isDisposed()) {
+            failPendingBatches(); //raced with dispose
+            return;
+        }
+        serveBatches();
+    }
+
+    /**
+     * Serve the pending batches that can be served in full, in order. Defaults to {@link #drain()}, for the
+     * implementations that serve the batches from their drain loop.
+     */
+    void serveBatches() {
+        drain();
+    }
+
+    /**
+     * @return the oldest pending batch, dropping the batches that have been cancelled along the way, or null if none
+     */
+    @Nullable
+    BatchBorrower<POOLABLE> peekPendingBatch() {
+        BatchBorrower<POOLABLE> batch;
+        while ((batch = pendingBatches.peek()) != null && batch.isTerminated()) {
+            removePendingBatch(batch);
+        }
+        return batch;
+    }
+
+    void removePendingBatch(BatchBorrower<POOLABLE> batch) {
+        if (pendingBatches.remove(batch)) {
+            PENDING_BATCHES.decrementAndGet(this);
+        }
+    }
+
+    void failPendingBatches() {
+        BatchBorrower<POOLABLE> batch;
+        while ((batch = pendingBatches.poll()) != null) {
+            PENDING_BATCHES.decrementAndGet(this);
+            batch.fail(new RuntimeException("Pool has been shut down"));
+        }
+    }
+
+    /**
+     * Get the permits to allocate the part of a batch that the idle resources don't cover, all or nothing.
+     *
+     * @param toAllocate the number of resources to allocate
+     * @return true if all the permits were obtained, false if none was kept
+     */
+    boolean tryReserveBatchPermits(int toAllocate) {
+        if (toAllocate == 0) {
+            return true;
+        }
+        int permits = poolConfig.allocationStrategy.getPermits(toAllocate);
+        if (permits == toAllocate) {
+            return true;
+        }
+        if (permits > 0) {
+            poolConfig.allocationStrategy.returnPermits(permits);
+        }
+        scheduleAllocationRetry();
+        return false;
+    }
+
+    /**
+     * Deliver the reserved idle resources of a batch, then allocate the rest of it with the permits that have been
+     * reserved. The resources MUST already be accounted for as acquired, {@code onAllocationFailure} undoing that for
+     * a failed allocation, whose permit is returned.
+     * <p>
+     * The allocations count against {@link DefaultPoolConfig#maxConcurrentAllocations} like the ones made on behalf
+     * of a single borrower: the ones that can't start yet are queued, and started as the allocations in flight
+     * terminate.
+     *
+     * @param batch the batch to serve
+     * @param idle the reserved idle resources
+     * @param toAllocate the number of resources to allocate, for which permits have been reserved
+     * @param refFactory the {@link Function} creating the {@link AbstractPooledRef} of a newly allocated resource
+     * @param onAllocationFailure a {@link Runnable} undoing the acquired accounting of a failed allocation
+     */
+    void startBatch(BatchBorrower<POOLABLE> batch, List<? extends AbstractPooledRef<POOLABLE>> idle, int toAllocate,
+            Function<POOLABLE, ? extends AbstractPooledRef<POOLABLE>> refFactory, Runnable onAllocationFailure) {
+        if (!idle.isEmpty()) {
+            poolConfig.acquisitionScheduler.schedule(() -> {
+                for (AbstractPooledRef<POOLABLE> ref : idle) {
+                    batch.deliver(ref);
+                }
+            });
+        }
+        if (toAllocate > 0) {
+            batch.toAllocate = toAllocate;
+            batch.refFactory = refFactory;
+            batch.onAllocationFailure = onAllocationFailure;
+            allocatingBatches.offer(batch);
+            startBatchAllocations();
+        }
+    }
+
+    /**
+     * Start the allocations of the {@link #allocatingBatches} in order, as long as {@link #tryStartAllocation()} lets
+     * them. The reserved permits and acquired accounting of the allocations that won't be started, because their
+     * batch has failed or has been cancelled, are given back.
+     * <p>
+     * A synchronous allocator terminates within this loop, so rather than recursing the thread already in it starts
+     * the next allocation on behalf of the nested {@link #allocationDone()}.
+     */
+    void startBatchAllocations() {
+        if (allocatingBatches.isEmpty() || BATCH_ALLOCATION_WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        boolean gaveBack = false;
+        int missed = 1;
+        for (;;) {
+            BatchBorrower<POOLABLE> batch;
+            while ((batch = allocatingBatches.peek()) != null) {
+                if (isDisposed()) {
+                    batch.fail(new RuntimeException("Pool has been shut down"));
+                }
+                if (batch.isTerminated()) {
+                    allocatingBatches.poll();
+                    int unstarted = batch.toAllocate;
+                    batch.toAllocate = 0;
+                    for (int i = 0; i < unstarted; i++) {
+                        batch.onAllocationFailure.run();
+                    }
+                    poolConfig.allocationStrategy.returnPermits(unstarted);
+                    gaveBack = true;
+                    continue;
+                }
+                if (!tryStartAllocation()) {
+                    break;
+                }
+                if (--batch.toAllocate == 0) {
+                    allocatingBatches.poll();
+                }
+                allocateForBatch(batch);
+            }
+
+            missed = BATCH_ALLOCATION_WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+        if (gaveBack) {
+            drain();
+            if (PENDING_BATCHES.get(this) > 0) {
+                serveBatches();
+            }
+        }
+    }
+
+    private void allocateForBatch(BatchBorrower<POOLABLE> batch) {
+        Function<POOLABLE, ? extends AbstractPooledRef<POOLABLE>> refFactory = batch.refFactory;
+        Runnable onAllocationFailure = batch.onAllocationFailure;
+        long start = metricsEnabled ? metricsRecorder.now() : 0L;
+        Mono<POOLABLE> allocator = poolConfig.allocator;
+        Scheduler s = poolConfig.acquisitionScheduler;
+        if (s != Schedulers.immediate()) {
+            allocator = allocator.publishOn(s);
+        }
+        allocator.subscribe(newInstance -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                    batch.deliver(refFactory.apply(newInstance));
+                },
+                e -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                    onAllocationFailure.run();
+                    poolConfig.allocationStrategy.returnPermits(1);
+                    batch.fail(e);
+                    allocationDone();
+                    drain();
+                    if (PENDING_BATCHES.get(this) > 0) {
+                        serveBatches();
+                    }
+                },
+                this::allocationDone);
+    }
+
+    /**
+     * Free the in-flight allocation slot of a terminated allocation, then start the next allocation if batches or
+     * borrowers are waiting for one. Implementations MUST call {@link #startBatchAllocations()} first, as the
+     * permits of these allocations have already been reserved.
+     */
+    abstract void allocationDone();
+
+    /**
+     * Try to serve pending borrowers with the idle resources, eg. after resources have been added outside of the
+     * release path.
+     */
+    abstract void drain();
+
+    /**
+     * Ask for the {@link Borrower#isRemoved() removed} borrowers to be physically dropped from the pending structures,
+     * wherever they are. These are otherwise only dropped once they reach the head of said structures, so that
+     * borrowers timing out behind a head that isn't served would pile up. Called by the {@link AcquireTimeoutWheel}
+     * once it timed out borrowers, the compaction itself being performed by the owner of the drain loop.
+     */
+    void requestPendingCompaction() {
+        PENDING_COMPACTION.set(this, 1);
+        drain();
+    }
+
+    /**
+     * Check whether a compaction of the pending structures has been requested. If this returns {@code true}, the
+     * caller MUST perform it.
+     *
+     * @return true if a compaction has been requested since the previous call
+     */
+    boolean pendingCompactionRequested() {
+        return pendingCompaction == 1 && PENDING_COMPACTION.compareAndSet(this, 1, 0);
+    }
+
+    /**
+     * Physically drop the {@link Borrower#isRemoved() removed} borrowers from an MPSC queue of pending borrowers, by
+     * re-offering the other ones at its tail. This reorders these with the borrowers offered concurrently, but only
+     * happens once borrowers timed out. MUST only be called by the single consumer of the queue.
+     *
+     * @param q the queue to compact
+     */
+    static <POOLABLE> void compactPending(Queue<Borrower<POOLABLE>> q) {
+        for (int toTest = q.size(); toTest > 0; toTest--) {
+            Borrower<POOLABLE> b = q.poll();
+            if (b == null) {
+                break;
+            }
+            if (!b.isRemoved()) {
+                q.offer(b);
+            }
+        }
+    }
+
+    /**
+     * Allocate the {@link DefaultPoolConfig#initialSize} resources, either blocking sequentially on each of them
+     * or deferring them to {@link #warmup()} if {@link DefaultPoolConfig#warmupParallelism} is set.
+     * This MUST be called from the implementation constructor, once the idle resources can be offered.
+     */
+    void initialAllocations() {
+        if (poolConfig.warmupParallelism > 0) {
+            this.toWarmup = poolConfig.initialSize;
+            return;
+        }
+        int initSize = poolConfig.allocationStrategy.getPermits(poolConfig.initialSize);
+        for (int i = 0; i < initSize; i++) {
+            long start = metricsEnabled ? metricsRecorder.now() : 0L;
+            try {
+                POOLABLE poolable = Objects.requireNonNull(poolConfig.allocator.block(), "allocator returned null in constructor");
+                if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                elementOffer(poolable); //the pool slot won't access this pool instance until after it has been constructed
+            }
+            catch (Throwable e) {
+                if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Mono<Integer> warmup() {
+        return Mono.defer(() -> {
+            if (isDisposed()) {
+                return Mono.just(0);
+            }
+            int toWarmup = TO_WARMUP.getAndSet(this, 0);
+            int permits = toWarmup == 0 ? 0 : poolConfig.allocationStrategy.getPermits(toWarmup);
+            if (permits < toWarmup) {
+                //the permits that weren't granted are left for the next warmup
+                TO_WARMUP.addAndGet(this, toWarmup - permits);
+            }
+            if (permits == 0) {
+                return Mono.just(0);
+            }
+            return Flux.range(0, permits)
+                       .flatMapDelayError(i -> warmupOne(), Math.min(permits, poolConfig.warmupParallelism), Queues.XS_BUFFER_SIZE)
+                       .count()
+                       .map(Long::intValue);
+        });
+    }
+
+    private Mono<POOLABLE> warmupOne() {
+        long start = metricsEnabled ? metricsRecorder.now() : 0L;
+        return poolConfig.allocator
+                .doOnNext(poolable -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                    offerAllocated(poolable);
+                })
+                .doOnError(e -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                    poolConfig.allocationStrategy.returnPermits(1);
+                    //the allocation can be retried by the next warmup
+                    TO_WARMUP.incrementAndGet(this);
+                });
+    }
+
+    /**
+     * Allocate resources in the background if there are less than {@link DefaultPoolConfig#minIdle} idle resources,
+     * taking the allocations already in flight into account. Only allocates as much as the {@link AllocationStrategy}
+     * and the {@link DefaultPoolConfig#maxConcurrentAllocations} permit, the rest and the failed allocations are
+     * simply retried on the next invocation.
+     */
+    void ensureMinIdle() {
+        int minIdle = poolConfig.minIdle;
+        if (minIdle == 0 || isDisposed()) {
+            return;
+        }
+        for (;;) {
+            int inFlight = IDLE_ALLOCATING.get(this);
+            if (minIdle - idleSize() - inFlight <= 0) {
+                return;
+            }
+            if (!IDLE_ALLOCATING.compareAndSet(this, inFlight, inFlight + 1)) {
+                continue;
+            }
+            if (!tryStartAllocation()) {
+                IDLE_ALLOCATING.decrementAndGet(this);
+                return;
+            }
+            if (poolConfig.allocationStrategy.getPermits(1) != 1) {
+                ALLOCATING.decrementAndGet(this);
+                IDLE_ALLOCATING.decrementAndGet(this);
+                return;
+            }
+            long start = metricsEnabled ? metricsRecorder.now() : 0L;
+            poolConfig.allocator.subscribe(poolable -> {
+                        if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                        IDLE_ALLOCATING.decrementAndGet(this);
+                        offerAllocated(poolable);
+                        allocationDone();
+                    },
+                    e -> {
+                        if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                        IDLE_ALLOCATING.decrementAndGet(this);
+                        poolConfig.allocationStrategy.returnPermits(1);
+                        logger.debug("Failed to allocate a resource to maintain the minimum idle resources", e);
+                        allocationDone();
+                    });
+        }
+    }
+
+    /**
+     * Add a resource allocated outside of an acquisition (for which a permit has been obtained) to the idle
+     * resources and serve pending borrowers, or destroy it if the pool has been disposed in the meantime.
+     *
+     * @param poolable the newly allocated resource
+     */
+    private void offerAllocated(POOLABLE poolable) {
+        if (isDisposed()) {
+            poolConfig.allocationStrategy.returnPermits(1);
+            destroyUnpooled(poolable);
+        }
+        else {
+            elementOffer(poolable);
+            drain();
+        }
+    }
+
+    private void destroyUnpooled(POOLABLE poolable) {
+        Function<POOLABLE, ? extends Publisher<Void>> factory = poolConfig.destroyHandler;
+        if (factory == PoolBuilder.NOOP_HANDLER) {
+            defaultDestroy(poolable);
+        }
+        else {
+            Mono.from(factory.apply(poolable)).subscribe(v -> {}, e -> logger.debug("Failed to destroy a resource allocated after disposal", e));
+        }
+    }
+
+    /**
+     * Walk the idle resources once and destroy the ones that match the eviction predicate, without preventing
+     * concurrent acquires from proceeding. Invoked periodically if {@link DefaultPoolConfig#evictionInterval} is set.
+     */
+    abstract void evictInBackground();
+
+    /**
+     * Dispose the pool upon subscription, like {@link #dispose()}, but without blocking on the destruction of the
+     * idle resources: the returned {@link Mono} completes once they have all been destroyed. Subscribing more than
+     * once, or after the pool has been disposed, completes immediately.
+     *
+     * @return a {@link Mono} disposing the pool and destroying its idle resources
+     */
+    abstract Mono<Void> disposeLater();
+
+    /**
+     * Check the timeout of an {@link Pool#acquire(Duration) acquire(Duration)}, which must not be null.
+     *
+     * @param timeout the timeout to check
+     * @return true if the timeout is negative and the acquire must be rejected
+     */
+    static boolean isNegativeTimeout(Duration timeout) {
+        return Objects.requireNonNull(timeout, "timeout").isNegative();
+    }
+
+    /**
+     * @return the {@link AcquireTimeoutWheel} of this pool, lazily started on the first acquire with a timeout
+     */
+    AcquireTimeoutWheel acquireTimeoutWheel() {
+        AcquireTimeoutWheel wheel = this.acquireTimeoutWheel;
+        if (wheel != null) {
+            return wheel;
+        }
+        wheel = new AcquireTimeoutWheel(this, poolConfig.evictionScheduler,
+                AcquireTimeoutWheel.DEFAULT_TICK_NANOS, AcquireTimeoutWheel.DEFAULT_WHEEL_SIZE);
+        if (ACQUIRE_TIMEOUT_WHEEL.compareAndSet(this, null, wheel)) {
+            return wheel;
+        }
+        wheel.dispose();
+        return this.acquireTimeoutWheel;
+    }
+
+    /**
+     * Dispose the background tasks of the pool, if any.
+     */
+    void disposeTasks() {
+        failPendingBatches();
+        evictionTask.dispose();
+        AcquireTimeoutWheel wheel = this.acquireTimeoutWheel;
+        if (wheel != null) {
+            wheel.dispose();
+        }
+    }
+
+    /**
+     * Try to reserve one of the {@link DefaultPoolConfig#maxConcurrentAllocations} slots for an allocation on behalf
+     * of a borrower. If this returns {@code true}, the {@link #ALLOCATING} counter MUST be decremented once the
+     * allocation terminates.
+     *
+     * @return true if a new allocation can be started
+     */
+    boolean tryStartAllocation() {
+        int max = poolConfig.maxConcurrentAllocations;
+        for (;;) {
+            int current = ALLOCATING.get(this);
+            if (current >= max) {
+                return false;
+            }
+            if (ALLOCATING.compareAndSet(this, current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * If the {@link AllocationStrategy} expects a new permit after some time (eg. it limits the rate of allocations),
+     * schedule a single {@link #retryAllocation()} for when that permit becomes available. This is called by the
+     * implementations when borrowers are left pending for lack of a permit, and MUST NOT be called when they are held
+     * back by something else (eg. the {@link DefaultPoolConfig#maxConcurrentAllocations}), as the retry would then
+     * spin without serving them. The retry runs on the {@link DefaultPoolConfig#evictionScheduler}.
+     */
+    void scheduleAllocationRetry() {
+        long delay = poolConfig.allocationStrategy.nanosUntilNextPermit();
+        if (delay <= 0L || isDisposed()) {
+            return;
+        }
+        if (ALLOCATION_RETRY_SCHEDULED.compareAndSet(this, 0, 1)) {
+            poolConfig.evictionScheduler.schedule(() -> {
+                ALLOCATION_RETRY_SCHEDULED.set(this, 0);
+                retryAllocation();
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Try to allocate for the pending borrowers again, once the {@link AllocationStrategy} is expected to have a new
+     * permit. Defaults to {@link #drain()}.
+     */
+    void retryAllocation() {
+        drain();
+    }
+
+    /**
+     * Charge the {@link DefaultPoolConfig#weigher weight} of a newly allocated resource, for which a single permit
+     * has already been obtained. The resource is kept even if the {@link AllocationStrategy} cannot grant the rest of
+     * its weight, in which case the shortfall is recorded and recouped from the next permits returned by
+     * {@link #destroyPoolable(AbstractPooledRef)}, so that no other resource is allocated until the total weight is
+     * back under the limit.
+     *
+     * @param poolable the newly allocated resource
+     * @return the number of permits held by the resource, to be returned once it is destroyed
+     */
+    int chargeWeight(POOLABLE poolable) {
+        ToIntFunction<? super POOLABLE> weigher = poolConfig.weigher;
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.applyAsInt(poolable);
+        if (weight <= 1) {
+            return 1;
+        }
+        int shortfall = weight - 1 - poolConfig.allocationStrategy.getPermits(weight - 1);
+        if (shortfall > 0) {
+            WEIGHT_SHORTFALL.addAndGet(this, shortfall);
+        }
+        return weight;
+    }
+
+    /**
+     * Return the permits held by a destroyed resource to the {@link AllocationStrategy}, minus the ones that cover the
+     * recorded {@link #chargeWeight(Object) weight shortfall}.
+     *
+     * @param permits the permits held by the destroyed resource
+     */
+    void returnWeight(int permits) {
+        for (;;) {
+            int shortfall = weightShortfall;
+            if (shortfall == 0) {
+                poolConfig.allocationStrategy.returnPermits(permits);
+                return;
+            }
+            int recouped = Math.min(shortfall, permits);
+            if (WEIGHT_SHORTFALL.compareAndSet(this, shortfall, shortfall - recouped)) {
+                if (permits > recouped) {
+                    poolConfig.allocationStrategy.returnPermits(permits - recouped);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Start the periodic background eviction task if {@link DefaultPoolConfig#evictionInterval} is set.
+     * This MUST be called once the implementation is fully constructed.
+     */
+    void scheduleEvictionInBackground() {
+        Duration interval = poolConfig.evictionInterval;
+        if (!interval.isZero()) {
+            //in nanoseconds, as a sub-millisecond interval would otherwise be truncated to a busy loop
+            long intervalNanos = interval.toNanos();
+            this.evictionTask = poolConfig.evictionScheduler.schedulePeriodically(this::evictInBackground,
+                    intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
     private void defaultDestroy(@Nullable POOLABLE poolable) {
         if (poolable instanceof Disposable) {
             ((Disposable) poolable).dispose();
@@ -82,27 +731,75 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
     }
 
     /**
-     * Apply the configured destroyHandler to get the destroy {@link Mono} AND return a permit to the {@link AllocationStrategy},
-     * which assumes that the {@link Mono} will always be subscribed immediately.
+     * Apply the configured destroyHandler to get the destroy {@link Mono}, which returns the permits of the resource to
+     * the {@link AllocationStrategy} once it terminates, so that no replacement is allocated while it is still alive.
      *
      * @param ref the {@link PooledRef} that is not part of the live set
      * @return the destroy {@link Mono}, which MUST be subscribed immediately
      */
     Mono<Void> destroyPoolable(AbstractPooledRef<POOLABLE> ref) {
         POOLABLE poolable = ref.poolable();
-        poolConfig.allocationStrategy.returnPermits(1);
-        long start = metricsRecorder.now();
-        metricsRecorder.recordLifetimeDuration(ref.lifeTime());
+        long start = metricsEnabled ? metricsRecorder.now() : 0L;
+        if (metricsEnabled) metricsRecorder.recordLifetimeDuration(metricsRecorder.measureTime(ref.creationTimestamp));
         Function<POOLABLE, ? extends Publisher<Void>> factory = poolConfig.destroyHandler;
+        Mono<Void> destroy;
         if (factory == PoolBuilder.NOOP_HANDLER) {
-            return Mono.fromRunnable(() -> {
-                defaultDestroy(poolable);
-                metricsRecorder.recordDestroyLatency(metricsRecorder.measureTime(start));
-            });
+            destroy = Mono.fromRunnable(() -> defaultDestroy(poolable));
         }
         else {
-            return Mono.from(factory.apply(poolable))
-                       .doFinally(fin -> metricsRecorder.recordDestroyLatency(metricsRecorder.measureTime(start)));
+            destroy = Mono.from(factory.apply(poolable));
+        }
+        return destroy.doFinally(fin -> {
+            if (metricsEnabled) metricsRecorder.recordDestroyLatency(metricsRecorder.measureTime(start));
+            returnWeight(ref.permits);
+            if (PENDING_BATCHES.get(this) > 0) {
+                //the returned permits might complete what a pending batch needs
+                serveBatches();
+            }
+            //the destroyed resource might have been idle, or its permits needed to maintain the minimum idle resources
+            ensureMinIdle();
+        });
+    }
+
+    /**
+     * The {@link PoolMetrics} of an {@link AbstractPool}, reading its gauges on each call.
+     */
+    static final class PoolMetricsView implements PoolMetrics {
+
+        final AbstractPool<?> pool;
+
+        PoolMetricsView(AbstractPool<?> pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public int acquiredSize() {
+            return pool.acquiredSize();
+        }
+
+        @Override
+        public int allocatedSize() {
+            return pool.allocatedSize();
+        }
+
+        @Override
+        public int idleSize() {
+            return pool.idleSize();
+        }
+
+        @Override
+        public int pendingAcquireSize() {
+            return pool.pendingAcquireSize();
+        }
+
+        @Override
+        public int remainingPermits() {
+            return pool.remainingPermits();
+        }
+
+        @Override
+        public int maxPendingAcquireSize() {
+            return pool.maxPendingAcquireSize();
         }
     }
 
@@ -115,20 +812,35 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
 
         final long            creationTimestamp;
         final PoolMetricsRecorder metricsRecorder;
+        final boolean         metricsEnabled;
+        //when false, neither the creation nor the release time is tracked and both lifeTime() and idleTime() are always 0
+        final boolean         trackIdleTime;
 
         volatile T poolable;
 
+        //the permits held by the resource, returned to the AllocationStrategy once it is destroyed
+        final int permits;
+
         volatile int acquireCount;
         static final AtomicIntegerFieldUpdater<AbstractPooledRef> ACQUIRE = AtomicIntegerFieldUpdater.newUpdater(AbstractPooledRef.class, "acquireCount");
 
-        //might be peeked at by multiple threads, in which case a value of -1 indicates it is currently held/acquired
+        //might be peeked at by multiple threads, in which case a value of -1 indicates it is currently held/acquired.
+        //other values are the release time relative to creationTimestamp, so that the sentinels can't collide with
+        //clocks like System.nanoTime() that can return negative values
         volatile long timeSinceRelease;
         static final AtomicLongFieldUpdater<AbstractPooledRef> TIME_SINCE_RELEASE = AtomicLongFieldUpdater.newUpdater(AbstractPooledRef.class, "timeSinceRelease");
 
-        AbstractPooledRef(T poolable, PoolMetricsRecorder metricsRecorder) {
+        AbstractPooledRef(T poolable, AbstractPool<?> pool) {
+            this(poolable, pool, 1);
+        }
+
+        AbstractPooledRef(T poolable, AbstractPool<?> pool, int permits) {
             this.poolable = poolable;
-            this.metricsRecorder = metricsRecorder;
-            this.creationTimestamp = metricsRecorder.now();
+            this.permits = permits;
+            this.metricsRecorder = pool.metricsRecorder;
+            this.metricsEnabled = pool.metricsEnabled;
+            this.trackIdleTime = pool.trackIdleTime;
+            this.creationTimestamp = trackIdleTime ? metricsRecorder.now() : 0L;
             this.timeSinceRelease = -2L;
         }
 
@@ -149,9 +861,15 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
          */
         int markAcquired() {
             int acq = ACQUIRE.incrementAndGet(this);
+            if (!trackIdleTime) {
+                return acq;
+            }
             long tsr = TIME_SINCE_RELEASE.getAndSet(this, -1);
-            if (tsr > 0) {
-                metricsRecorder.recordIdleTime(metricsRecorder.measureTime(tsr));
+            if (!metricsEnabled) {
+                return acq;
+            }
+            if (tsr >= 0L) {
+                metricsRecorder.recordIdleTime(metricsRecorder.measureTime(creationTimestamp + tsr));
             }
             else if (tsr < -1L) { //allocated, never acquired
                 metricsRecorder.recordIdleTime(metricsRecorder.measureTime(creationTimestamp));
@@ -160,7 +878,7 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
         }
 
         void markReleased() {
-            this.timeSinceRelease = metricsRecorder.now();
+            if (trackIdleTime) this.timeSinceRelease = Math.max(0L, metricsRecorder.now() - creationTimestamp);
         }
 
         @Override
@@ -170,17 +888,36 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
 
         @Override
         public long lifeTime() {
-            return metricsRecorder.measureTime(creationTimestamp);
+            if (!trackIdleTime) return 0L;
+            return metricsRecorder.timeUnit().toMillis(metricsRecorder.measureTime(creationTimestamp));
+        }
+
+        @Override
+        public long lifeTimeNanos() {
+            if (!trackIdleTime) return 0L;
+            return metricsRecorder.timeUnit().toNanos(metricsRecorder.measureTime(creationTimestamp));
         }
 
         @Override
         public long idleTime() {
+            return metricsRecorder.timeUnit().toMillis(measureIdleTime());
+        }
+
+        @Override
+        public long idleTimeNanos() {
+            return metricsRecorder.timeUnit().toNanos(measureIdleTime());
+        }
+
+        /**
+         * @return the idle time in the {@link PoolMetricsRecorder#timeUnit() unit} of the recorder's clock
+         */
+        long measureIdleTime() {
             long tsr = this.timeSinceRelease;
-            if (tsr == -1L) { //-1 is when it's been marked as acquired
+            if (tsr == -1L || !trackIdleTime) { //-1 is when it's been marked as acquired
                 return 0L;
             }
-            if (tsr < 0L) tsr = creationTimestamp; //any negative date other than -1 is considered "never yet released"
-            return metricsRecorder.measureTime(tsr);
+            if (tsr < 0L) tsr = 0L; //any negative value other than -1 is considered "never yet released"
+            return metricsRecorder.measureTime(creationTimestamp + tsr);
         }
 
         /**
@@ -210,6 +947,176 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
         }
     }
 
+    /**
+     * The {@link Flux} returned by {@link #batchAcquire(int)}, which registers a {@link BatchBorrower} with the pool
+     * upon the first request.
+     */
+    static final class BatchBorrowerFlux<T> extends Flux<PooledRef<T>> {
+
+        final AbstractPool<T> parent;
+        final int             size;
+
+        BatchBorrowerFlux(AbstractPool<T> parent, int size) {
+            this.parent = parent;
+            this.size = size;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super PooledRef<T>> actual) {
+            Objects.requireNonNull(actual, "subscribing with null");
+            BatchBorrower<T> batch = new BatchBorrower<>(actual, parent, size);
+            actual.onSubscribe(batch);
+        }
+    }
+
+    /**
+     * Inner {@link Subscription} delivering the {@link #size} resources of a {@link #batchAcquire(int) batch acquire}.
+     * The resources can be delivered concurrently by several allocations, so they are queued until all of them have
+     * been delivered, then emitted according to the downstream demand by a drain loop. That loop also releases them
+     * if the batch is cancelled or fails.
+     *
+     * @author Simon Baslé
+     */
+    static final class BatchBorrower<POOLABLE> implements Scannable, Subscription {
+
+        final CoreSubscriber<? super PooledRef<POOLABLE>> actual;
+        final AbstractPool<POOLABLE>                      pool;
+        final int                                         size;
+        final Queue<AbstractPooledRef<POOLABLE>>          delivered = new ConcurrentLinkedQueue<>();
+
+        //only accessed by the drain loop
+        int     emitted;
+        boolean done;
+
+        volatile boolean cancelled;
+
+        volatile Throwable error;
+        static final AtomicReferenceFieldUpdater<BatchBorrower, Throwable> ERROR = AtomicReferenceFieldUpdater.newUpdater(
+                BatchBorrower.class, Throwable.class, "error");
+
+        volatile long requested;
+        static final AtomicLongFieldUpdater<BatchBorrower> REQUESTED = AtomicLongFieldUpdater.newUpdater(BatchBorrower.class, "requested");
+
+        volatile int deliveredCount;
+        static final AtomicIntegerFieldUpdater<BatchBorrower> DELIVERED_COUNT = AtomicIntegerFieldUpdater.newUpdater(BatchBorrower.class, "deliveredCount");
+
+        volatile int started;
+        static final AtomicIntegerFieldUpdater<BatchBorrower> STARTED = AtomicIntegerFieldUpdater.newUpdater(BatchBorrower.class, "started");
+
+        volatile int wip;
+        static final AtomicIntegerFieldUpdater<BatchBorrower> WIP = AtomicIntegerFieldUpdater.newUpdater(BatchBorrower.class, "wip");
+
+        //set before the batch is queued in allocatingBatches, then only accessed by the startBatchAllocations loop
+        int                                                       toAllocate;
+        Function<POOLABLE, ? extends AbstractPooledRef<POOLABLE>> refFactory;
+        Runnable                                                  onAllocationFailure;
+
+        BatchBorrower(CoreSubscriber<? super PooledRef<POOLABLE>> actual, AbstractPool<POOLABLE> pool, int size) {
+            this.actual = actual;
+            this.pool = pool;
+            this.size = size;
+        }
+
+        @Override
+        public void request(long n) {
+            if (Operators.validate(n)) {
+                Operators.addCap(REQUESTED, this, n);
+                if (STARTED.compareAndSet(this, 0, 1)) {
+                    pool.doAcquireBatch(this);
+                }
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        /**
+         * @return true if this batch has been cancelled or has failed, and doesn't need any more resources
+         */
+        boolean isTerminated() {
+            return cancelled || error != null;
+        }
+
+        void deliver(AbstractPooledRef<POOLABLE> poolSlot) {
+            poolSlot.markAcquired();
+            delivered.offer(poolSlot);
+            DELIVERED_COUNT.incrementAndGet(this);
+            drain();
+        }
+
+        void fail(Throwable e) {
+            if (ERROR.compareAndSet(this, null, e)) {
+                drain();
+            }
+            else {
+                Operators.onErrorDropped(e, actual.currentContext());
+            }
+        }
+
+        void drain() {
+            if (WIP.getAndIncrement(this) != 0) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                if (done || isTerminated()) {
+                    //the resources that won't be emitted go back to the pool
+                    AbstractPooledRef<POOLABLE> ref;
+                    while ((ref = delivered.poll()) != null) {
+                        ref.release().subscribe(aVoid -> {}, e -> Operators.onErrorDropped(e, Context.empty()));
+                    }
+                    Throwable e = error;
+                    if (!done && !cancelled && e != null) {
+                        done = true;
+                        actual.onError(e);
+                    }
+                }
+                else if (deliveredCount == size) {
+                    long r = requested;
+                    while (emitted < r && emitted < size && !cancelled) {
+                        AbstractPooledRef<POOLABLE> ref = delivered.poll();
+                        if (ref == null) {
+                            break;
+                        }
+                        emitted++;
+                        actual.onNext(ref);
+                    }
+                    if (emitted == size && !cancelled) {
+                        done = true;
+                        actual.onComplete();
+                    }
+                }
+
+                missed = WIP.addAndGet(this, -missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        @Override
+        @Nullable
+        public Object scanUnsafe(Attr key) {
+            if (key == Attr.CANCELLED) return cancelled;
+            if (key == Attr.TERMINATED) return done;
+            if (key == Attr.REQUESTED_FROM_DOWNSTREAM) return requested;
+            if (key == Attr.BUFFERED) return delivered.size();
+            if (key == Attr.ERROR) return error;
+            if (key == Attr.ACTUAL) return actual;
+
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchBorrower(" + size + ")";
+        }
+    }
+
     /**
      * Common inner {@link Subscription} to be used to deliver poolable elements wrapped in {@link AbstractPooledRef} from
      * an {@link AbstractPool}.
@@ -218,24 +1125,104 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
      */
     static final class Borrower<POOLABLE> extends AtomicBoolean implements Scannable, Subscription  {
 
+        static final int NOT_PENDING = 0;
+        static final int PENDING     = 1;
+        static final int REMOVED     = 2;
+
         final CoreSubscriber<? super AbstractPooledRef<POOLABLE>> actual;
         final AbstractPool<POOLABLE> pool;
+        final Duration acquireTimeout;
+
+        //only meaningful if acquireTimeout is not zero, set before registering with the AcquireTimeoutWheel and as per
+        //the clock of its Scheduler
+        long acquireDeadline;
+
+        //the start of the wait for a resource, as per the pool's metricsRecorder clock
+        long pendingStart;
 
-        Borrower(CoreSubscriber<? super AbstractPooledRef<POOLABLE>> actual, AbstractPool<POOLABLE> pool) {
+        //whether or not this borrower is accounted for in the PENDING_COUNT of the pool
+        volatile int pendingState;
+        static final AtomicIntegerFieldUpdater<Borrower> PENDING_STATE = AtomicIntegerFieldUpdater.newUpdater(Borrower.class, "pendingState");
+
+        Borrower(CoreSubscriber<? super AbstractPooledRef<POOLABLE>> actual, AbstractPool<POOLABLE> pool, Duration acquireTimeout) {
             this.actual = actual;
             this.pool = pool;
+            this.acquireTimeout = acquireTimeout;
         }
 
         @Override
         public void request(long n) {
             if (Operators.validate(n)) {
+                this.pendingStart = pool.metricsEnabled ? pool.metricsRecorder.now() : 0L;
+                if (!acquireTimeout.isZero()) {
+                    AcquireTimeoutWheel wheel = pool.acquireTimeoutWheel();
+                    this.acquireDeadline = wheel.scheduler.now(TimeUnit.NANOSECONDS) + acquireTimeout.toNanos();
+                    wheel.add(this);
+                }
                 pool.doAcquire(this);
             }
         }
 
+        /**
+         * Mark this borrower as pending, once it has been accounted for in the {@link #PENDING_COUNT} of the pool
+         * and right before it is added to a pending structure. If this returns {@code false}, the borrower has been
+         * removed concurrently (eg. it timed out) so it MUST NOT be added, and the {@link #PENDING_COUNT} MUST be
+         * decremented back.
+         *
+         * @return true if the borrower can be added to a pending structure
+         */
+        boolean markPending() {
+            return PENDING_STATE.compareAndSet(this, NOT_PENDING, PENDING);
+        }
+
+        /**
+         * Mark this borrower as polled from a pending structure. If this returns {@code true}, the caller MUST
+         * decrement the {@link #PENDING_COUNT} of the pool. Otherwise the borrower has already been removed
+         * (and uncounted) and MUST be skipped.
+         *
+         * @return true if the borrower is still pending and can be served
+         */
+        boolean markPolled() {
+            return PENDING_STATE.compareAndSet(this, PENDING, NOT_PENDING);
+        }
+
+        /**
+         * Logically remove this borrower from the pending structure it might be in, releasing its slot in the
+         * {@link #PENDING_COUNT} of the pool immediately. The borrower is physically dropped once it is polled or
+         * purged from said structure, or once said structure is compacted after a timeout.
+         */
+        void removePending() {
+            if (PENDING_STATE.getAndSet(this, REMOVED) == PENDING) {
+                PENDING_COUNT.decrementAndGet(pool);
+            }
+        }
+
+        /**
+         * @return true if this borrower has been cancelled or timed out while pending, and can be purged
+         */
+        boolean isRemoved() {
+            return pendingState == REMOVED;
+        }
+
+        /**
+         * Fail this borrower with a {@link TimeoutException} if it hasn't been served yet, in which case it is
+         * immediately removed from the {@link #PENDING_COUNT} of the pool. It will be skipped once polled from the
+         * pending structure, like a cancelled borrower.
+         */
+        void timeout() {
+            if (compareAndSet(false, true)) {
+                removePending();
+                if (pool.metricsEnabled) pool.metricsRecorder.recordPendingFailureAndLatency(pool.metricsRecorder.measureTime(pendingStart));
+                actual.onError(new TimeoutException("Pool#acquire(Duration) has been pending for more than the " +
+                        "configured timeout of " + acquireTimeout.toMillis() + "ms"));
+            }
+        }
+
         @Override
         public void cancel() {
-            set(true);
+            if (compareAndSet(false, true)) {
+                removePending();
+            }
         }
 
         @Override
@@ -249,11 +1236,25 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
         }
 
         void deliver(AbstractPooledRef<POOLABLE> poolSlot) {
-            if (get()) {
-                //CANCELLED
+            deliver(poolSlot, false);
+        }
+
+        /**
+         * Deliver a resource to this borrower, unless it has been cancelled or has timed out in which case the
+         * resource is released.
+         *
+         * @param poolSlot the resource to deliver
+         * @param fastPath true if the resource is delivered by the fast path, without going through the pending
+         * borrowers
+         */
+        void deliver(AbstractPooledRef<POOLABLE> poolSlot, boolean fastPath) {
+            //the flag is also set once terminated, so that delivery doesn't race with a timeout
+            if (!compareAndSet(false, true)) {
+                //CANCELLED or TIMED OUT
                 poolSlot.release().subscribe(aVoid -> {}, e -> Operators.onErrorDropped(e, Context.empty())); //actual mustn't receive onError
             }
             else {
+                if (pool.metricsEnabled) pool.metricsRecorder.recordPendingSuccessAndLatency(pool.metricsRecorder.measureTime(pendingStart), fastPath);
                 poolSlot.markAcquired();
                 actual.onNext(poolSlot);
                 actual.onComplete();
@@ -261,14 +1262,15 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
         }
 
         void fail(Throwable error) {
-            if (!get()) {
+            if (compareAndSet(false, true)) {
+                if (pool.metricsEnabled) pool.metricsRecorder.recordPendingFailureAndLatency(pool.metricsRecorder.measureTime(pendingStart));
                 actual.onError(error);
             }
         }
 
         @Override
         public String toString() {
-            return get() ? "Borrower(cancelled)" : "Borrower";
+            return get() ? "Borrower(terminated)" : "Borrower";
         }
     }
 
@@ -288,6 +1290,20 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
          * The minimum number of objects a {@link Pool} should create at initialization.
          */
         final int                                           initialSize;
+        /**
+         * The maximum number of concurrent allocations when the {@link #initialSize} resources are allocated through
+         * {@link Pool#warmup()}, or {@code 0} if they are allocated in the constructor instead.
+         */
+        final int                                           warmupParallelism;
+        /**
+         * The number of idle resources the {@link Pool} allocates ahead of demand, or {@code 0} to only allocate
+         * when borrowers need it.
+         */
+        final int                                           minIdle;
+        /**
+         * The maximum number of allocations that can be in flight on behalf of borrowers at any given time.
+         */
+        final int                                           maxConcurrentAllocations;
         /**
          * {@link AllocationStrategy} defines a strategy / limit for the number of pooled object to allocate.
          */
@@ -337,9 +1353,32 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
          * Defaults to {@code false} (FIFO).
          */
         final boolean                                       isLifo;
+        /**
+         * The interval at which idle resources are tested against the {@link #evictionPredicate} in the background,
+         * or {@link Duration#ZERO} if there is no background eviction.
+         */
+        final Duration                                      evictionInterval;
+        /**
+         * The {@link Scheduler} on which the background eviction task runs, if {@link #evictionInterval} is not zero,
+         * and on which the allocations postponed by the {@link #allocationStrategy} are retried.
+         */
+        final Scheduler                                     evictionScheduler;
+        /**
+         * The maximum number of borrowers a resource can be concurrently lent to, {@code 1} for exclusive resources.
+         */
+        final int                                           maxConcurrentLeases;
+        /**
+         * The weight of each resource, in permits of the {@link #allocationStrategy}, or null if each resource holds
+         * a single permit.
+         */
+        @Nullable
+        final ToIntFunction<? super POOLABLE>               weigher;
 
         DefaultPoolConfig(Mono<POOLABLE> allocator,
                           int initialSize,
+                          int warmupParallelism,
+                          int minIdle,
+                          int maxConcurrentAllocations,
                           AllocationStrategy allocationStrategy,
                           int maxPending,
                           Function<POOLABLE, ? extends Publisher<Void>> releaseHandler,
@@ -347,9 +1386,16 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
                           BiPredicate<POOLABLE, PooledRefMetadata> evictionPredicate,
                           Scheduler acquisitionScheduler,
                           PoolMetricsRecorder metricsRecorder,
-                          boolean isLifo) {
+                          boolean isLifo,
+                          Duration evictionInterval,
+                          Scheduler evictionScheduler,
+                          int maxConcurrentLeases,
+                          @Nullable ToIntFunction<? super POOLABLE> weigher) {
             this.allocator = allocator;
             this.initialSize = initialSize;
+            this.warmupParallelism = warmupParallelism;
+            this.minIdle = minIdle;
+            this.maxConcurrentAllocations = maxConcurrentAllocations;
             this.allocationStrategy = allocationStrategy;
             this.maxPending = maxPending;
             this.releaseHandler = releaseHandler;
@@ -358,6 +1404,10 @@ abstract class AbstractPool<POOLABLE> implements Pool<POOLABLE> {
             this.acquisitionScheduler = acquisitionScheduler;
             this.metricsRecorder = metricsRecorder;
             this.isLifo = isLifo;
+            this.evictionInterval = evictionInterval;
+            this.evictionScheduler = evictionScheduler;
+            this.maxConcurrentLeases = maxConcurrentLeases;
+            this.weigher = weigher;
         }
     }
 }
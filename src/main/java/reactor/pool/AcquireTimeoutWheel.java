@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.jctools.queues.MpscLinkedQueue8;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.pool.AbstractPool.Borrower;
+
+/**
+ * A hashed timing wheel that times out the {@link Borrower borrowers} of a {@link Pool} that haven't been served
+ * before their deadline, using a single periodic task rather than one scheduled task per timed acquire.
+ * <p>
+ * Borrowers are handed over through an MPSC queue and distributed into the wheel buckets by the periodic task,
+ * which is the only one to ever touch the buckets. As a consequence, timeouts have a resolution of one tick: a
+ * {@link Borrower} is timed out between its deadline and its deadline plus one tick. Deadlines are expressed as per the
+ * clock of the {@link Scheduler} that runs the task, so that timeouts can be tested with virtual time. Once a tick
+ * timed out borrowers, it {@link AbstractPool#requestPendingCompaction() asks} the pool to physically drop them from
+ * its pending structures.
+ * <p>
+ * The periodic task only runs while the wheel holds timed borrowers: it is started by the first {@link #add(Borrower)}
+ * and stops once the buckets are empty, so an idle pool doesn't keep waking a thread up. Borrowers that have been
+ * served or cancelled are purged from the buckets once per revolution of the wheel.
+ *
+ * @author Simon Baslé
+ */
+final class AcquireTimeoutWheel implements Disposable {
+
+    static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final int  DEFAULT_WHEEL_SIZE = 512;
+
+    final AbstractPool<?>            pool;
+    final Scheduler                  scheduler;
+    final long                       tickNanos;
+    final int                        mask;
+    final Queue<Borrower<?>>         incoming; //MPSC. Producers: any thread that acquires with a timeout. Consumer: the tick task
+    final ArrayDeque<Borrower<?>>[]  buckets; //only accessed by the tick task
+    final long                       startNanos;
+
+    long lastTick; //only accessed by the tick task
+    int  size; //number of borrowers in the buckets, only accessed by the tick task
+
+    //1 while a tick is scheduled or running. Only the tick task resets it, so that there's at most one tick at a time
+    volatile int ticking;
+    static final AtomicIntegerFieldUpdater<AcquireTimeoutWheel> TICKING = AtomicIntegerFieldUpdater.newUpdater(AcquireTimeoutWheel.class, "ticking");
+
+    volatile Disposable task;
+    volatile boolean    disposed;
+
+    @SuppressWarnings("unchecked")
+    AcquireTimeoutWheel(AbstractPool<?> pool, Scheduler scheduler, long tickNanos, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of 2");
+        }
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.tickNanos = tickNanos;
+        this.mask = wheelSize - 1;
+        this.incoming = new MpscLinkedQueue8<>();
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startNanos = scheduler.now(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Register a {@link Borrower} to be timed out once its {@link Borrower#acquireDeadline deadline} has passed,
+     * unless it has been served or cancelled by then. Starts the periodic task if it isn't running.
+     *
+     * @param borrower the {@link Borrower} with a deadline
+     */
+    void add(Borrower<?> borrower) {
+        incoming.offer(borrower);
+        if (TICKING.compareAndSet(this, 0, 1)) {
+            scheduleTick();
+        }
+    }
+
+    /**
+     * @return true if the periodic task is currently scheduled or running
+     */
+    boolean isTicking() {
+        return ticking == 1;
+    }
+
+    void scheduleTick() {
+        if (disposed) {
+            return;
+        }
+        this.task = scheduler.schedule(this::tick, tickNanos, TimeUnit.NANOSECONDS);
+        if (disposed) {
+            task.dispose();
+        }
+    }
+
+    void tick() {
+        if (disposed || pool.isDisposed()) {
+            dispose();
+            return;
+        }
+        long now = scheduler.now(TimeUnit.NANOSECONDS);
+        long currentTick = (now - startNanos) / tickNanos;
+        if (size == 0) {
+            lastTick = currentTick - 1; //nothing to catch up on, eg. the task has just been restarted
+        }
+        else if (currentTick / (mask + 1) != lastTick / (mask + 1)) {
+            purge(); //once per revolution, so that served borrowers with a distant deadline don't keep the task running
+        }
+
+        Borrower<?> borrower;
+        while ((borrower = incoming.poll()) != null) {
+            if (borrower.get()) {
+                continue; //already served or cancelled
+            }
+            //deadlines that are already due go in the current bucket, which is processed right away
+            long deadlineTick = Math.max(currentTick, (borrower.acquireDeadline - startNanos + tickNanos - 1) / tickNanos);
+            buckets[(int) (deadlineTick & mask)].offer(borrower);
+            size++;
+        }
+
+        //catch up on the ticks that were delayed, but walk each bucket at most once. The current bucket is always
+        //walked, even if the previous tick ran within the same tick period
+        long fromTick = Math.max(Math.min(lastTick + 1, currentTick), currentTick - mask);
+        int timedOut = 0;
+        for (long t = fromTick; t <= currentTick; t++) {
+            ArrayDeque<Borrower<?>> bucket = buckets[(int) (t & mask)];
+            for (int n = bucket.size(); n > 0; n--) {
+                Borrower<?> b = bucket.poll();
+                if (b.get()) {
+                    size--;
+                    continue;
+                }
+                if (b.acquireDeadline - now <= 0) {
+                    size--;
+                    timedOut++;
+                    b.timeout();
+                }
+                else {
+                    bucket.offer(b); //due in a later round
+                }
+            }
+        }
+        lastTick = currentTick;
+        if (timedOut > 0) {
+            pool.requestPendingCompaction();
+        }
+
+        if (size > 0) {
+            scheduleTick();
+            return;
+        }
+        //stop ticking, unless a borrower has been added concurrently and its add() saw the task as still running
+        TICKING.set(this, 0);
+        if (!incoming.isEmpty() && TICKING.compareAndSet(this, 0, 1)) {
+            scheduleTick();
+        }
+    }
+
+    void purge() {
+        for (ArrayDeque<Borrower<?>> bucket : buckets) {
+            if (!bucket.isEmpty()) {
+                bucket.removeIf(AtomicBoolean::get);
+            }
+        }
+        int remaining = 0;
+        for (ArrayDeque<Borrower<?>> bucket : buckets) {
+            remaining += bucket.size();
+        }
+        size = remaining;
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        Disposable t = this.task;
+        if (t != null) {
+            t.dispose();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+}
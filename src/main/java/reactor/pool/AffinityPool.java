@@ -15,13 +15,18 @@
  */
 package reactor.pool;
 
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
@@ -34,6 +39,7 @@ import org.reactivestreams.Subscription;
 
 import reactor.core.CoreSubscriber;
 import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Operators;
 import reactor.util.Loggers;
@@ -49,15 +55,47 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
     @SuppressWarnings("RawTypeCanBeGeneric")
     static final Map TERMINATED = Collections.emptyMap();
 
+    static final SubPool[] EMPTY_SUBPOOLS = new SubPool[0];
+
+    //minimum number of SubPools registered between two looks for the dead threads, see #onSubPoolRegistered()
+    static final int RECLAIM_INTERVAL = 16;
+
     final Queue<AffinityPooledRef<POOLABLE>> availableElements; //needs to be at least MPSC. producers include fastpath threads, only consumer is slowpath winner thread
     final Function<? super Long, ? extends SubPool<POOLABLE>>     subPoolFactory;
 
     volatile Map<Long, SubPool<POOLABLE>> pools;
     static final AtomicReferenceFieldUpdater<AffinityPool, Map> POOLS = AtomicReferenceFieldUpdater.newUpdater(AffinityPool.class, Map.class, "pools");
 
+    //caches each thread's SubPool, so that the fast path doesn't box the thread id and look it up in the pools map.
+    //the SubPool is only weakly referenced, otherwise its parent pool would stay reachable from long-lived threads
+    //through the ThreadLocal value even once disposed. It is kept alive by the pools map in the meantime
+    final ThreadLocal<WeakReference<SubPool<POOLABLE>>> localSubPool = new ThreadLocal<>();
+
+    //copy-on-write snapshot of the pools values, refreshed whenever a SubPool is added or removed, which allows the
+    //slow path to visit the SubPools from a random starting index
+    volatile SubPool<POOLABLE>[] subPools = emptySubPools();
+
+    //number of idle resources cached in the SubPools, as opposed to the shared availableElements
+    volatile int localIdle;
+    static final AtomicIntegerFieldUpdater<AffinityPool> LOCAL_IDLE = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "localIdle");
+
+    volatile int acquired;
+    static final AtomicIntegerFieldUpdater<AffinityPool> ACQUIRED = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "acquired");
+
     volatile int slowPathWip;
     static final AtomicIntegerFieldUpdater<AffinityPool> SLOWPATH_WIP = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "slowPathWip");
 
+    volatile int batchWip;
+    static final AtomicIntegerFieldUpdater<AffinityPool> BATCH_WIP = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "batchWip");
+
+    //number of completed allocations that still have to look for a pending borrower, see allocationDone()
+    volatile int allocationDoneWip;
+    static final AtomicIntegerFieldUpdater<AffinityPool> ALLOCATION_DONE_WIP = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "allocationDoneWip");
+
+    //number of SubPools registered since the dead threads were last looked for
+    volatile int registrations;
+    static final AtomicIntegerFieldUpdater<AffinityPool> REGISTRATIONS = AtomicIntegerFieldUpdater.newUpdater(AffinityPool.class, "registrations");
+
 
     public AffinityPool(DefaultPoolConfig<POOLABLE> poolConfig) {
         super(poolConfig, Loggers.getLogger(AffinityPool.class));
@@ -66,34 +104,49 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                 it -> new LifoSubPool<>(this) :
                 it -> new FifoSubPool<>(this);
 
-        int maxSize = poolConfig.allocationStrategy.estimatePermitCount();
-        if (maxSize == Integer.MAX_VALUE) {
+        int maxSize = poolConfig.allocationStrategy.permitMaximum();
+        //with a weigher, the permits don't bound the number of resources
+        if (maxSize == Integer.MAX_VALUE || poolConfig.weigher != null) {
             this.availableElements = new ConcurrentLinkedQueue<>();
         }
         else {
             this.availableElements = new MpmcArrayQueue<>(Math.max(maxSize, 2));
         }
 
-        int toBuild = poolConfig.allocationStrategy.getPermits(poolConfig.initialSize);
-
-        for (int i = 0; i < toBuild; i++) {
-            long start = poolConfig.metricsRecorder.now();
-            try {
-                POOLABLE poolable = Objects.requireNonNull(poolConfig.allocator.block(), "allocator returned null in constructor");
-                poolConfig.metricsRecorder.recordAllocationSuccessAndLatency(poolConfig.metricsRecorder.measureTime(start));
-                availableElements.offer(new AffinityPooledRef<>(this, poolable)); //the pool slot won't access this pool instance until after it has been constructed
-            }
-            catch (Throwable t) {
-                poolConfig.metricsRecorder.recordAllocationFailureAndLatency(poolConfig.metricsRecorder.measureTime(start));
-                throw t;
-            }
-        }
+        initialAllocations();
+        ensureMinIdle();
+        scheduleEvictionInBackground();
     }
 
     @Override
     public Mono<PooledRef<POOLABLE>> acquire() {
         //Note the pool isn't aware of the mono until requested.
-        return new AffinityBorrowerMono<>(this);
+        return new AffinityBorrowerMono<>(this, Duration.ZERO);
+    }
+
+    @Override
+    public Mono<PooledRef<POOLABLE>> acquire(Duration timeout) {
+        if (isNegativeTimeout(timeout)) {
+            return Mono.error(new IllegalArgumentException("timeout must be >= 0"));
+        }
+        //Note the pool isn't aware of the mono until requested.
+        return new AffinityBorrowerMono<>(this, timeout);
+    }
+
+    /**
+     * Acquire {@code n} {@code POOLABLE} at once upon subscription. The batch is reserved in a single pass: either
+     * the idle resources and the permits to allocate the rest cover the {@code n} resources, or nothing is reserved
+     * and the batch waits for resources to be released. The resulting {@link Flux} thus emits the {@code n}
+     * {@link PooledRef} then completes, or fails without emitting any of them. Cancelling the
+     * {@link org.reactivestreams.Subscription} translates to a {@link PooledRef#release() release} of the
+     * {@code POOLABLE} that haven't been emitted yet.
+     *
+     * @param n the number of resources to acquire, at least {@code 1}
+     * @return a {@link Flux} acquiring the {@code n} resources at once upon subscription
+     */
+    @Override
+    public Flux<PooledRef<POOLABLE>> acquire(int n) {
+        return batchAcquire(n);
     }
 
     @Override
@@ -103,9 +156,21 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
             return;
         }
 
-        SubPool<POOLABLE> subPool = pools.computeIfAbsent(Thread.currentThread().getId(), this.subPoolFactory);
+        SubPool<POOLABLE> subPool = cachedSubPool();
+        if (subPool == null) {
+            subPool = pools.computeIfAbsent(Thread.currentThread().getId(), this.subPoolFactory);
+            localSubPool.set(new WeakReference<>(subPool));
+            refreshSubPools();
+            onSubPoolRegistered();
+        }
 
-        AffinityPooledRef<POOLABLE> element = availableElements.poll();
+        AffinityPooledRef<POOLABLE> element = subPool.pollIdle();
+        if (element == null) {
+            element = availableElements.poll();
+        }
+        if (element == null && LOCAL_IDLE.get(this) > 0) {
+            element = stealIdle();
+        }
         if (element != null) {
 
             //TODO test this scenario
@@ -114,13 +179,15 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                 allocateOrPend(subPool, borrower);
             }
             else {
-                metricsRecorder.recordFastPath();
-                borrower.deliver(element);
+                if (metricsEnabled) metricsRecorder.recordFastPath();
+                ACQUIRED.incrementAndGet(this);
+                borrower.deliver(element, true);
             }
         }
         else {
             allocateOrPend(subPool, borrower);
         }
+        ensureMinIdle();
     }
 
     @Override
@@ -129,52 +196,368 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
     }
 
     @Override
-    int idleSize() {
-        return availableElements.size();
+    public int idleSize() {
+        return availableElements.size() + Math.max(0, LOCAL_IDLE.get(this));
+    }
+
+    /**
+     * Take an idle resource from the cache of another {@link SubPool}, once the local cache and the shared queue
+     * are both empty.
+     *
+     * @return an idle resource, or null if none could be found
+     */
+    @Nullable
+    AffinityPooledRef<POOLABLE> stealIdle() {
+        SubPool<POOLABLE>[] victims = subPools;
+        int start = randomStart(victims);
+        for (int i = 0; i < victims.length; i++) {
+            AffinityPooledRef<POOLABLE> ref = victims[(start + i) % victims.length].pollIdle();
+            if (ref != null) {
+                return ref;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuild the {@link #subPools} snapshot from the pools map. This is only done when SubPools are added or
+     * removed, which is rare enough that it is simply serialized.
+     */
+    synchronized void refreshSubPools() {
+        Map<Long, SubPool<POOLABLE>> current = pools;
+        this.subPools = current == TERMINATED ? emptySubPools() : current.values().toArray(emptySubPools());
+    }
+
+    /**
+     * Pick a random index to start visiting the {@link SubPool SubPools} from, so that the slow path doesn't
+     * systematically favour the first ones.
+     */
+    static int randomStart(SubPool<?>[] victims) {
+        return victims.length < 2 ? 0 : ThreadLocalRandom.current().nextInt(victims.length);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> SubPool<T>[] emptySubPools() {
+        return (SubPool<T>[]) EMPTY_SUBPOOLS;
+    }
+
+    /**
+     * Move the idle resources cached in the {@link SubPool SubPools} to the shared queue, eg. so that borrowers
+     * pending on any thread can be served or so that the resources can be evicted.
+     */
+    void flushIdleCaches() {
+        for (SubPool<POOLABLE> subPool : pools.values()) {
+            subPool.flushIdle();
+        }
+    }
+
+    @Override
+    public int acquiredSize() {
+        return ACQUIRED.get(this);
+    }
+
+    @Override
+    void drain() {
+        slowPathRecycle();
+    }
+
+    @Override
+    void requestPendingCompaction() {
+        //each SubPool is compacted by the next holder of its slow path lock, possibly right away
+        for (SubPool<POOLABLE> subPool : pools.values()) {
+            subPool.compactionRequested = true;
+            subPool.tryPurgePending();
+        }
+    }
+
+    @Override
+    void evictInBackground() {
+        flushIdleCaches();
+        int evicted = 0;
+        //only look at the elements that are idle at the start of the run, which are re-offered at the tail
+        for (int toTest = availableElements.size(); toTest > 0 && !isDisposed(); toTest--) {
+            AffinityPooledRef<POOLABLE> ref = availableElements.poll();
+            if (ref == null) {
+                break;
+            }
+            if (poolConfig.evictionPredicate.test(ref.poolable, ref)) {
+                destroyPoolable(ref).subscribe(v -> {}, e -> logger.debug("Failed to destroy an evicted resource", e));
+                evicted++;
+            }
+            else {
+                availableElements.offer(ref);
+            }
+        }
+        if (PENDING_COUNT.get(this) > 0) {
+            //some borrowers might have pended while idle elements were temporarily out of the queue
+            slowPathRecycle();
+            for (; evicted > 0 && PENDING_COUNT.get(this) > 0; evicted--) {
+                bestEffortAllocateOrPend();
+            }
+        }
+        reclaimDeadSubPools();
+        ensureMinIdle();
+    }
+
+    /**
+     * The map only grows when a new thread shows up, which is when the dead threads are looked for. As that scan
+     * visits all the {@link SubPool SubPools}, it only happens once the registrations since the previous one are on
+     * par with half of them (and at least {@link #RECLAIM_INTERVAL}), so that its cost is amortized under thread
+     * churn. The eviction task also looks for them on each run.
+     */
+    void onSubPoolRegistered() {
+        int n = REGISTRATIONS.incrementAndGet(this);
+        if (n >= Math.max(RECLAIM_INTERVAL, subPools.length >> 1) && REGISTRATIONS.compareAndSet(this, n, 0)) {
+            reclaimDeadSubPools();
+        }
+    }
+
+    /**
+     * Remove the {@link SubPool SubPools} of the threads that have terminated, so that the slow path doesn't keep
+     * scanning them. A SubPool that still has pending borrowers is kept until these have been served.
+     */
+    void reclaimDeadSubPools() {
+        Map<Long, SubPool<POOLABLE>> current = pools;
+        if (current == TERMINATED) {
+            return;
+        }
+        boolean reclaimed = false;
+        for (SubPool<POOLABLE> subPool : current.values()) {
+            if (subPool.isOwnerAlive() || !subPool.tryLockForSlowPath()) {
+                continue;
+            }
+            subPool.purgeOrCompactPending();
+            SubPool.DIRECT_RELEASE_WIP.decrementAndGet(subPool);
+
+            //a borrower can still be re-offered to the SubPool by the slow path, in which case either the offer
+            //sees the retired flag or the check below sees the borrower, and the SubPool gets registered back
+            subPool.retired = true;
+            current.remove(subPool.threadId, subPool);
+            reclaimed = true;
+            subPool.flushIdle();
+            if (subPool.hasPending()) {
+                subPool.unretire();
+            }
+        }
+        //the snapshot is only copied once per scan, and only if it changed
+        if (reclaimed) {
+            refreshSubPools();
+        }
     }
 
     void allocateOrPend(SubPool<POOLABLE> subPool, Borrower<POOLABLE> borrower) {
-        if (poolConfig.allocationStrategy.getPermits(1) == 1) {
-            long start = metricsRecorder.now();
+        if (!tryStartAllocation()) {
+            //too many allocations in flight, wait for one of them to complete or for a release
+            subPool.tryPurgePending();
+            subPool.offerPending(borrower);
+            serveFromIdleCaches();
+        }
+        else if (poolConfig.allocationStrategy.getPermits(1) == 1) {
+            long start = metricsEnabled ? metricsRecorder.now() : 0L;
             poolConfig.allocator
                     //we expect the allocator will publish in the same thread or a "compatible" one
                     // (like EventLoopGroup for Netty connections), which makes it more suitable to use with Schedulers.immediate()
 //                    .publishOn(poolConfig.acquisitionScheduler())
                     .subscribe(newInstance -> {
-                                metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                                if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                                ACQUIRED.incrementAndGet(this);
                                 borrower.deliver(new AffinityPooledRef<>(this, newInstance));
+                                allocationDone();
                             },
                             e -> {
-                                metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                                if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
                                 poolConfig.allocationStrategy.returnPermits(1);
                                 borrower.fail(e);
+                                allocationDone();
                             });
         }
         else {
+            ALLOCATING.decrementAndGet(this);
+            subPool.tryPurgePending();
             //cannot create, add to pendingLocal
             subPool.offerPending(borrower);
-            //now it's just a matter of waiting for a #release
+            serveFromIdleCaches();
+            //now it's just a matter of waiting for a #release, or for a permit if the allocations are rate limited
+            scheduleAllocationRetry();
+        }
+    }
+
+    @Override
+    void retryAllocation() {
+        if (PENDING_BATCHES.get(this) > 0) {
+            serveBatches();
+        }
+        while (PENDING_COUNT.get(this) > 0 && poolConfig.allocationStrategy.estimatePermitCount() > 0 && !isDisposed()) {
+            int pending = PENDING_COUNT.get(this);
+            bestEffortAllocateOrPend();
+            if (PENDING_COUNT.get(this) >= pending) {
+                break; //no progress, eg. all the SubPools are locked or the permit went to another thread
+            }
+        }
+        //borrowers held back by anything but a missing permit are served by a release or a completing allocation
+        if (PENDING_COUNT.get(this) > 0 && poolConfig.allocationStrategy.estimatePermitCount() == 0 && !isDisposed()) {
+            scheduleAllocationRetry();
+        }
+    }
+
+    /**
+     * Test a freshly reset {@link AffinityPooledRef} against the eviction predicate, then either recycle
+     * it or destroy it.
+     *
+     * @param pooledRef the reset {@link AffinityPooledRef}
+     */
+    void maybeRecycle(AffinityPooledRef<POOLABLE> pooledRef) {
+        if (!poolConfig.evictionPredicate.test(pooledRef.poolable, pooledRef)) {
+            recycle(pooledRef);
+        }
+        else {
+            destroyPoolable(pooledRef).subscribe(); //TODO manage errors?
+
+            //simplified version of what we do in doAcquire, with the caveat that we don't try to create a SubPool
+            bestEffortAllocateOrPend();
+        }
+    }
+
+    /**
+     * Free the in-flight allocation slot and start the next allocation, if borrowers are still pending.
+     * <p>
+     * A synchronous allocator completes within {@link #allocateOrPend(SubPool, Borrower)}, so rather than recursing
+     * the thread already in this loop starts the next allocation on behalf of the nested completion.
+     */
+    @Override
+    void allocationDone() {
+        ALLOCATING.decrementAndGet(this);
+        startBatchAllocations();
+        //only look for a pending borrower if it could have been held back by the limit, to avoid reordering them
+        if (poolConfig.maxConcurrentAllocations == Integer.MAX_VALUE) {
+            return;
+        }
+        if (ALLOCATION_DONE_WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        do {
+            if (PENDING_COUNT.get(this) > 0 && poolConfig.allocationStrategy.estimatePermitCount() > 0) {
+                bestEffortAllocateOrPend();
+            }
         }
+        while (ALLOCATION_DONE_WIP.decrementAndGet(this) != 0);
+    }
+
+    /**
+     * @return the {@link SubPool} of the current thread, or null if it never acquired from this pool or if the
+     * pool has been disposed
+     */
+    @Nullable
+    SubPool<POOLABLE> currentSubPool() {
+        SubPool<POOLABLE> subPool = cachedSubPool();
+        return subPool == null || pools == TERMINATED ? null : subPool;
+    }
+
+    /**
+     * @return the {@link SubPool} cached for the current thread, or null if it never acquired from this pool
+     */
+    @Nullable
+    SubPool<POOLABLE> cachedSubPool() {
+        WeakReference<SubPool<POOLABLE>> ref = localSubPool.get();
+        return ref == null ? null : ref.get();
     }
 
     void recycle(AffinityPooledRef<POOLABLE> pooledRef) {
-        metricsRecorder.recordRecycled();
-        SubPool<POOLABLE> subPool = pools.get(Thread.currentThread().getId());
+        if (metricsEnabled) metricsRecorder.recordRecycled();
+        if (PENDING_BATCHES.get(this) > 0) {
+            //batches are served from the shared queue
+            availableElements.offer(pooledRef);
+            serveBatches();
+            slowPathRecycle();
+            return;
+        }
+        SubPool<POOLABLE> subPool = currentSubPool();
         if (subPool == null || !subPool.tryDirectRecycle(pooledRef)) {
+            //keep the resource on this thread, unless a borrower is waiting elsewhere
+            if (subPool != null && PENDING_COUNT.get(this) == 0 && subPool.offerIdle(pooledRef)) {
+                //a borrower might have pended concurrently, missing the cached resource
+                if (PENDING_COUNT.get(this) > 0) {
+                    flushIdleCaches();
+                    slowPathRecycle();
+                }
+                return;
+            }
             availableElements.offer(pooledRef);
             slowPathRecycle();
         }
     }
 
+    /**
+     * Once a borrower has pended, make sure it doesn't miss a resource that was concurrently cached in a
+     * {@link SubPool}. This pairs with the {@link #PENDING_COUNT} check in {@link #recycle(AffinityPooledRef)}.
+     */
+    void serveFromIdleCaches() {
+        if (LOCAL_IDLE.get(this) > 0) {
+            flushIdleCaches();
+            slowPathRecycle();
+        }
+    }
+
+    /**
+     * Serve the pending batches in order, each in a single pass: take as many idle resources as possible, including
+     * the ones cached in the {@link SubPool SubPools}, then get the permits to allocate the rest. If the permits fall
+     * short, the idle resources are put back in the shared queue and the batch keeps waiting, along with the ones
+     * behind it. As these resources might be needed by borrowers pending on a SubPool, this is then followed by a
+     * {@link #slowPathRecycle()}.
+     */
+    @Override
+    void serveBatches() {
+        if (BATCH_WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        boolean putBack = false;
+        for (;;) {
+            BatchBorrower<POOLABLE> batch;
+            while ((batch = peekPendingBatch()) != null) {
+                if (LOCAL_IDLE.get(this) > 0) {
+                    flushIdleCaches();
+                }
+                List<AffinityPooledRef<POOLABLE>> idle = new ArrayList<>(Math.min(batch.size, availableElements.size()));
+                AffinityPooledRef<POOLABLE> ref;
+                while (idle.size() < batch.size && (ref = availableElements.poll()) != null) {
+                    if (poolConfig.evictionPredicate.test(ref.poolable, ref)) {
+                        destroyPoolable(ref).subscribe(v -> {}, e -> logger.debug("Failed to destroy an evicted resource", e));
+                    }
+                    else {
+                        idle.add(ref);
+                    }
+                }
+                int toAllocate = batch.size - idle.size();
+                if (!tryReserveBatchPermits(toAllocate)) {
+                    for (AffinityPooledRef<POOLABLE> r : idle) {
+                        availableElements.offer(r);
+                    }
+                    putBack = true;
+                    break;
+                }
+                removePendingBatch(batch);
+                ACQUIRED.addAndGet(this, batch.size);
+                startBatch(batch, idle, toAllocate, newInstance -> new AffinityPooledRef<>(this, newInstance),
+                        () -> ACQUIRED.decrementAndGet(this));
+            }
+
+            if (BATCH_WIP.decrementAndGet(this) == 0) {
+                break;
+            }
+        }
+        if (putBack && PENDING_COUNT.get(this) > 0) {
+            slowPathRecycle();
+        }
+    }
+
     void slowPathRecycle() {
         if (SLOWPATH_WIP.getAndIncrement(this) != 0) {
             return;
         }
-        //TODO should we randomize the order of subpools to try?
         for(;;) {
             if (availableElements.peek() != null) { //do not poll immediately
                 boolean lookAtSubPools = true;
-                SubPool<POOLABLE> directMatch = pools.get(Thread.currentThread().getId());
+                SubPool<POOLABLE> directMatch = currentSubPool();
                 if (directMatch != null && directMatch.tryLockForSlowPath()) {
                     Borrower<POOLABLE> pending = directMatch.getPendingAndUnlock();
                     if (pending != null) {
@@ -182,7 +565,8 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                         AffinityPooledRef<POOLABLE> ref = availableElements.poll();
                         if (ref != null) {
                             lookAtSubPools = false;
-                            metricsRecorder.recordSlowPath();
+                            if (metricsEnabled) metricsRecorder.recordSlowPath();
+                            ACQUIRED.incrementAndGet(this);
                             pending.deliver(ref);
                         }
                         else {
@@ -195,7 +579,10 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
 
                 if (lookAtSubPools) {
                     //we only arrive at this point if there was no direct match
-                    for (SubPool<POOLABLE> subPool : pools.values()) {
+                    SubPool<POOLABLE>[] victims = subPools;
+                    int start = randomStart(victims);
+                    for (int i = 0; i < victims.length; i++) {
+                        SubPool<POOLABLE> subPool = victims[(start + i) % victims.length];
                         if (subPool.tryLockForSlowPath()) {
                             Borrower<POOLABLE> pending = subPool.getPendingAndUnlock();
                             if (pending != null) {
@@ -205,7 +592,8 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                                     //continue
                                 }
                                 else {
-                                    metricsRecorder.recordSlowPath();
+                                    if (metricsEnabled) metricsRecorder.recordSlowPath();
+                                    ACQUIRED.incrementAndGet(this);
                                     pending.deliver(ref);
                                     break; //break out of the subpool iteration
                                 }
@@ -221,23 +609,29 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         }
     }
 
+    /**
+     * Allocate on behalf of a pending borrower, preferably one that pends on the current thread's {@link SubPool}.
+     * If there is none, the other SubPools are visited from a random starting point.
+     */
     void bestEffortAllocateOrPend() {
-        SubPool<POOLABLE> directMatch = pools.get(Thread.currentThread().getId());
+        SubPool<POOLABLE> directMatch = currentSubPool();
         if (directMatch != null && directMatch.tryLockForSlowPath()) {
             Borrower<POOLABLE> pending = directMatch.getPendingAndUnlock();
             if (pending != null) {
                 allocateOrPend(directMatch, pending);
-                //return
+                return;
             }
         }
-        else {
-            for (SubPool<POOLABLE> subPool : pools.values()) {
-                if (subPool.tryLockForSlowPath()) {
-                    Borrower<POOLABLE> pending = subPool.getPendingAndUnlock();
-                    if (pending != null) {
-                        allocateOrPend(subPool, pending);
-                        return;
-                    }
+        //no borrower pending on this thread, eg. an allocation completing on the thread that started it
+        SubPool<POOLABLE>[] victims = subPools;
+        int start = randomStart(victims);
+        for (int i = 0; i < victims.length; i++) {
+            SubPool<POOLABLE> subPool = victims[(start + i) % victims.length];
+            if (subPool != directMatch && subPool.tryLockForSlowPath()) {
+                Borrower<POOLABLE> pending = subPool.getPendingAndUnlock();
+                if (pending != null) {
+                    allocateOrPend(subPool, pending);
+                    return;
                 }
             }
         }
@@ -246,10 +640,21 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
 
     @Override
     public void dispose() {
-        @SuppressWarnings("unchecked")
-        Map<Long, SubPool<POOLABLE>> toClose = POOLS.getAndSet(this, TERMINATED);
-        if (toClose != TERMINATED) {
+        disposeLater().block();
+    }
+
+    @Override
+    Mono<Void> disposeLater() {
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked")
+            Map<Long, SubPool<POOLABLE>> toClose = POOLS.getAndSet(this, TERMINATED);
+            if (toClose == TERMINATED) {
+                return Mono.empty();
+            }
+            refreshSubPools();
+            disposeTasks();
             for (SubPool<POOLABLE> subPool : toClose.values()) {
+                subPool.flushIdle();
                 Borrower<POOLABLE> pending;
                 while((pending = subPool.pollPending()) != null) {
                     pending.fail(new RuntimeException("Pool has been shut down"));
@@ -257,10 +662,12 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
             }
             toClose.clear();
 
+            List<Mono<Void>> destroys = new ArrayList<>(availableElements.size());
             while(!availableElements.isEmpty()) {
-                destroyPoolable(availableElements.poll()).block();
+                destroys.add(destroyPoolable(availableElements.poll()));
             }
-        }
+            return Mono.whenDelayError(destroys);
+        });
     }
 
     @Override
@@ -271,14 +678,79 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
 
     static abstract class SubPool<POOLABLE> {
 
+        static final int IDLE_CACHE_CAPACITY = 4;
+
         final AffinityPool<POOLABLE> parent;
+        final long                   threadId;
+        //weak so that the SubPool doesn't prevent a terminated thread from being collected
+        final WeakReference<Thread>  owner;
 
         volatile int directReleaseInProgress;
         static final AtomicIntegerFieldUpdater<SubPool> DIRECT_RELEASE_WIP = AtomicIntegerFieldUpdater.newUpdater(SubPool.class, "directReleaseInProgress");
 
+        //set once the SubPool has been removed from the parent's pools, see AffinityPool#reclaimDeadSubPools
+        volatile boolean retired;
+
+        //set once borrowers timed out that the pending structure might still hold, see AffinityPool#requestPendingCompaction
+        volatile boolean compactionRequested;
 
+        //idle resources released on the owner thread. Producer: the owner thread. Consumers: any acquiring thread
+        final Queue<AffinityPooledRef<POOLABLE>> idleCache = new MpmcArrayQueue<>(IDLE_CACHE_CAPACITY);
+
+        /**
+         * Create a SubPool owned by the current thread.
+         */
         protected SubPool(AffinityPool<POOLABLE> parent) {
             this.parent = parent;
+            Thread thread = Thread.currentThread();
+            this.threadId = thread.getId();
+            this.owner = new WeakReference<>(thread);
+        }
+
+        boolean offerIdle(AffinityPooledRef<POOLABLE> ref) {
+            if (idleCache.offer(ref)) {
+                LOCAL_IDLE.incrementAndGet(parent);
+                return true;
+            }
+            return false;
+        }
+
+        @Nullable
+        AffinityPooledRef<POOLABLE> pollIdle() {
+            AffinityPooledRef<POOLABLE> ref = idleCache.poll();
+            if (ref != null) {
+                LOCAL_IDLE.decrementAndGet(parent);
+            }
+            return ref;
+        }
+
+        void flushIdle() {
+            AffinityPooledRef<POOLABLE> ref;
+            while ((ref = pollIdle()) != null) {
+                parent.availableElements.offer(ref);
+            }
+        }
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+        /**
+         * @return true if there might be pending borrowers in the subpool
+         */
+        abstract boolean hasPending();
+
+        /**
+         * Register a retired SubPool back in the parent's pools, so that its pending borrowers get served.
+         */
+        void unretire() {
+            this.retired = false;
+            Map<Long, SubPool<POOLABLE>> current = parent.pools;
+            if (current != TERMINATED) {
+                current.putIfAbsent(threadId, this);
+                parent.refreshSubPools();
+            }
         }
 
         /**
@@ -300,12 +772,50 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         @Nullable
         abstract Borrower<POOLABLE> pollPending();
 
+        /**
+         * Drop the {@link reactor.pool.AbstractPool.Borrower#isRemoved() removed} borrowers at the head of the
+         * subpool, so that cancelled or timed out borrowers don't accumulate while nothing is polled.
+         * MUST only be called while holding the slow path lock.
+         */
+        abstract void purgePending();
+
+        /**
+         * Drop all the {@link reactor.pool.AbstractPool.Borrower#isRemoved() removed} borrowers of the subpool,
+         * wherever they are. MUST only be called while holding the slow path lock.
+         */
+        abstract void compactPending();
+
+        /**
+         * Compact the subpool if a compaction has been requested, purge its head otherwise.
+         * MUST only be called while holding the slow path lock.
+         */
+        void purgeOrCompactPending() {
+            if (compactionRequested) {
+                compactionRequested = false;
+                compactPending();
+            }
+            else {
+                purgePending();
+            }
+        }
+
+        void tryPurgePending() {
+            if (DIRECT_RELEASE_WIP.compareAndSet(this, 0, 1)) {
+                purgeOrCompactPending();
+                DIRECT_RELEASE_WIP.decrementAndGet(this);
+            }
+        }
+
         public boolean tryLockForSlowPath() {
             return DIRECT_RELEASE_WIP.compareAndSet(this, 0, 1);
         }
 
         @Nullable
         public Borrower<POOLABLE> getPendingAndUnlock() {
+            if (compactionRequested) {
+                compactionRequested = false;
+                compactPending();
+            }
             Borrower<POOLABLE> m = pollPending();
             DIRECT_RELEASE_WIP.decrementAndGet(this);
             return m;
@@ -321,7 +831,8 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
             DIRECT_RELEASE_WIP.decrementAndGet(this);
 
             if (m != null) {
-                parent.metricsRecorder.recordFastPath();
+                if (parent.metricsEnabled) parent.metricsRecorder.recordFastPath();
+                ACQUIRED.incrementAndGet(parent);
                 m.deliver(ref);
                 return true;
             }
@@ -348,19 +859,50 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                     return;
                 }
                 else if (AbstractPool.PENDING_COUNT.compareAndSet(parent, currentPending, currentPending + 1)) {
-                    this.localPendings.offer(pending);
+                    if (pending.markPending()) {
+                        this.localPendings.offer(pending);
+                        if (retired) {
+                            unretire();
+                        }
+                    }
+                    else {
+                        //removed concurrently, eg. timed out
+                        AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+                    }
                     return;
                 }
             }
         }
 
+        @Override
+        boolean hasPending() {
+            return !this.localPendings.isEmpty();
+        }
+
+        @Override
+        void purgePending() {
+            Borrower<POOLABLE> b;
+            while ((b = this.localPendings.peek()) != null && b.isRemoved()) {
+                this.localPendings.poll();
+            }
+        }
+
+        @Override
+        void compactPending() {
+            AbstractPool.compactPending(this.localPendings);
+        }
+
         @Override
         public Borrower<POOLABLE> pollPending() {
-            Borrower<POOLABLE> b = this.localPendings.poll();
-            if (b != null) {
-                AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+            Borrower<POOLABLE> b;
+            while ((b = this.localPendings.poll()) != null) {
+                if (b.markPolled()) {
+                    AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+                    return b;
+                }
+                //otherwise the borrower has been removed and uncounted already, skip it
             }
-            return b;
+            return null;
         }
 
     }
@@ -384,19 +926,50 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
                     return;
                 }
                 else if (AbstractPool.PENDING_COUNT.compareAndSet(parent, currentPending, currentPending + 1)) {
-                    this.localPendings.push(pending);
+                    if (pending.markPending()) {
+                        this.localPendings.push(pending);
+                        if (retired) {
+                            unretire();
+                        }
+                    }
+                    else {
+                        //removed concurrently, eg. timed out
+                        AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+                    }
                     return;
                 }
             }
         }
 
+        @Override
+        boolean hasPending() {
+            //the size of the TreiberStack is only an estimate, eg. popping an empty stack decrements it
+            return this.localPendings.top != null;
+        }
+
+        @Override
+        void purgePending() {
+            //noinspection StatementWithEmptyBody
+            while (this.localPendings.popIf(Borrower::isRemoved) != null) {
+            }
+        }
+
+        @Override
+        void compactPending() {
+            this.localPendings.removeIf(Borrower::isRemoved);
+        }
+
         @Override
         public Borrower<POOLABLE> pollPending() {
-            Borrower<POOLABLE> b = this.localPendings.pop();
-            if (b != null) {
-                AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+            Borrower<POOLABLE> b;
+            while ((b = this.localPendings.pop()) != null) {
+                if (b.markPolled()) {
+                    AbstractPool.PENDING_COUNT.decrementAndGet(parent);
+                    return b;
+                }
+                //otherwise the borrower has been removed and uncounted already, skip it
             }
-            return b;
+            return null;
         }
     }
 
@@ -404,23 +977,42 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
 
         final AffinityPool<T> pool;
 
+        //pre-built when there is no reset to perform, so that releasing doesn't allocate
+        @Nullable
+        final AffinityPoolNoopRecyclerMono<T> noopRecycler;
+
+        //armed by each call to release() when using the noopRecycler, which recycles at most once per arming
+        volatile int noopReleaseArmed;
+        static final AtomicIntegerFieldUpdater<AffinityPooledRef> NOOP_RELEASE_ARMED = AtomicIntegerFieldUpdater.newUpdater(
+                AffinityPooledRef.class, "noopReleaseArmed");
+
         AffinityPooledRef(AffinityPool<T> pool, T poolable) {
-            super(poolable, pool.metricsRecorder);
+            super(poolable, pool, pool.chargeWeight(poolable));
             this.pool = pool;
+            this.noopRecycler = pool.poolConfig.releaseHandler == PoolBuilder.NOOP_HANDLER ?
+                    new AffinityPoolNoopRecyclerMono<>(this) : null;
         }
 
         @Override
         public Mono<Void> release() {
             if (POOLS.get(pool) == TERMINATED) {
+                ACQUIRED.decrementAndGet(pool); //immediately clean up state
                 markReleased();
                 return pool.destroyPoolable(this);
             }
 
+            AffinityPoolNoopRecyclerMono<T> noop = this.noopRecycler;
+            if (noop != null) {
+                NOOP_RELEASE_ARMED.set(this, 1);
+                return noop;
+            }
+
             Publisher<Void> cleaner;
             try {
                 cleaner = pool.poolConfig.releaseHandler.apply(poolable);
             }
             catch (Throwable e) {
+                ACQUIRED.decrementAndGet(pool); //immediately clean up state
                 markReleased(); //TODO should this lead to destroy?
                 return Mono.error(new IllegalStateException("Couldn't apply cleaner function", e));
             }
@@ -431,21 +1023,27 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
 
         @Override
         public Mono<Void> invalidate() {
-            return pool.destroyPoolable(this);
+            return Mono.defer(() -> {
+                //immediately clean up state
+                ACQUIRED.decrementAndGet(pool);
+                return pool.destroyPoolable(this);
+            });
         }
     }
 
     static final class AffinityBorrowerMono<T> extends Mono<PooledRef<T>> {
 
         final AffinityPool<T> parent;
+        final Duration        acquireTimeout;
 
-        AffinityBorrowerMono(AffinityPool<T> pool) {
+        AffinityBorrowerMono(AffinityPool<T> pool, Duration acquireTimeout) {
             this.parent = pool;
+            this.acquireTimeout = acquireTimeout;
         }
 
         @Override
         public void subscribe(CoreSubscriber<? super PooledRef<T>> actual) {
-            Borrower<T> borrower = new Borrower<>(actual, parent);
+            Borrower<T> borrower = new Borrower<>(actual, parent, acquireTimeout);
             actual.onSubscribe(borrower);
         }
     }
@@ -469,7 +1067,7 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         @Override
         public void onSubscribe(Subscription s) {
             if (Operators.validate(upstream, s)) {
-                this.start = pool.metricsRecorder.now();
+                this.start = pool.metricsEnabled ? pool.metricsRecorder.now() : 0L;
                 this.upstream = s;
                 actual.onSubscribe(this);
             }
@@ -484,7 +1082,7 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         public void onError(Throwable throwable) {
             AffinityPooledRef<T> slot = pooledRef;
             pooledRef = null;
-            pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
+            if (pool.metricsEnabled) pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
             if (slot == null) {
                 Operators.onErrorDropped(throwable, actual.currentContext());
                 return;
@@ -498,22 +1096,14 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         public void onComplete() {
             AffinityPooledRef<T> slot = pooledRef;
             pooledRef = null;
-            pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
+            if (pool.metricsEnabled) pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
             if (slot == null) {
                 return;
             }
 
             actual.onComplete();
 
-            if (!pool.poolConfig.evictionPredicate.test(slot.poolable, slot)) {
-                pool.recycle(slot);
-            }
-            else {
-                pool.destroyPoolable(slot).subscribe(); //TODO manage errors?
-
-                //simplified version of what we do in doAcquire, with the caveat that we don't try to create a SubPool
-                pool.bestEffortAllocateOrPend();
-            }
+            pool.maybeRecycle(slot);
         }
 
         @Override
@@ -540,6 +1130,42 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
         }
     }
 
+    /**
+     * A {@link Mono} that recycles an {@link AffinityPooledRef} for which there is no reset to perform (the releaseHandler
+     * is the default NO-OP one). It is built once per {@link AffinityPooledRef} and reused for each release, avoiding
+     * allocations on the release path.
+     */
+    private static final class AffinityPoolNoopRecyclerMono<T> extends Mono<Void> implements Scannable {
+
+        final AffinityPooledRef<T> slot;
+
+        AffinityPoolNoopRecyclerMono(AffinityPooledRef<T> slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super Void> actual) {
+            AffinityPooledRef<T> slot = this.slot;
+            if (AffinityPooledRef.NOOP_RELEASE_ARMED.compareAndSet(slot, 1, 0)) {
+                ACQUIRED.decrementAndGet(slot.pool);
+                slot.markReleased();
+                if (slot.pool.metricsEnabled) slot.pool.metricsRecorder.recordResetLatency(0L);
+                Operators.complete(actual);
+                slot.pool.maybeRecycle(slot);
+            }
+            else {
+                Operators.complete(actual);
+            }
+        }
+
+        @Override
+        @Nullable
+        public Object scanUnsafe(Attr key) {
+            if (key == Attr.PREFETCH) return Integer.MAX_VALUE;
+            return null;
+        }
+    }
+
     private static final class AffinityPoolRecyclerMono<T> extends Mono<Void> implements Scannable {
 
         final Publisher<Void> source;
@@ -561,6 +1187,7 @@ final class AffinityPool<POOLABLE> extends AbstractPool<POOLABLE> {
             else {
                 AffinityPoolRecyclerInner<T> apr = new AffinityPoolRecyclerInner<>(actual, slot);
                 if (recyclerRef.compareAndSet(null, apr)) {
+                    ACQUIRED.decrementAndGet(slot.pool);
                     slot.markReleased();
                     source.subscribe(apr);
                     slot = null;
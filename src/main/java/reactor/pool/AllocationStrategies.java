@@ -15,7 +15,10 @@
  */
 package reactor.pool;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Various pre-made {@link AllocationStrategy} for internal use.
@@ -36,6 +39,11 @@ final class AllocationStrategies {
             return Integer.MAX_VALUE;
         }
 
+        @Override
+        public int permitMaximum() {
+            return Integer.MAX_VALUE;
+        }
+
         @Override
         public void returnPermits(int returned) {
             //NO-OP
@@ -75,9 +83,542 @@ final class AllocationStrategies {
             return PERMITS.get(this);
         }
 
+        @Override
+        public int permitMaximum() {
+            return max;
+        }
+
+        @Override
+        public void returnPermits(int returned) {
+            PERMITS.addAndGet(this, returned);
+        }
+    }
+
+    /**
+     * An {@link AllocationStrategy} that only grants permits that both a {@code local} and a {@code shared} strategy
+     * grant, eg. to cap each pool of a {@link KeyedPool} while sharing a global budget between them. Returning permits
+     * notifies a {@link Runnable}, so that the other users of the {@code shared} strategy can retry their allocations.
+     */
+    static final class CompositeAllocationStrategy implements AllocationStrategy {
+
+        final AllocationStrategy local;
+        final AllocationStrategy shared;
+        final Runnable           onPermitsReturned;
+
+        CompositeAllocationStrategy(AllocationStrategy local, AllocationStrategy shared) {
+            this(local, shared, () -> { });
+        }
+
+        CompositeAllocationStrategy(AllocationStrategy local, AllocationStrategy shared, Runnable onPermitsReturned) {
+            this.local = local;
+            this.shared = shared;
+            this.onPermitsReturned = onPermitsReturned;
+        }
+
+        @Override
+        public int getPermits(int desired) {
+            int fromLocal = local.getPermits(desired);
+            if (fromLocal == 0) {
+                return 0;
+            }
+            int granted = shared.getPermits(fromLocal);
+            if (granted < fromLocal) {
+                local.returnPermits(fromLocal - granted);
+            }
+            return granted;
+        }
+
+        @Override
+        public int estimatePermitCount() {
+            return Math.min(local.estimatePermitCount(), shared.estimatePermitCount());
+        }
+
+        @Override
+        public int permitMaximum() {
+            return Math.min(local.permitMaximum(), shared.permitMaximum());
+        }
+
+        @Override
+        public void returnPermits(int returned) {
+            local.returnPermits(returned);
+            shared.returnPermits(returned);
+            onPermitsReturned.run();
+        }
+
+        @Override
+        public long nanosUntilNextPermit() {
+            return Math.max(local.nanosUntilNextPermit(), shared.nanosUntilNextPermit());
+        }
+    }
+
+    /**
+     * A variant of {@link SizeBasedAllocationStrategy} that spreads the permits over per-thread stripes, backed by a
+     * shared reservoir, so that threads allocating and discarding resources concurrently don't all contend on a
+     * single counter. Permits are moved between a stripe and the reservoir in batches. A thread that finds both its
+     * stripe and the reservoir empty steals from the other stripes, so a permit cached in a stripe is never lost to
+     * other threads. The total number of permits handed out never exceeds the {@code max}.
+     * <p>
+     * For the same reason, {@link #estimatePermitCount()} only reads the reservoir and the stripe of the current
+     * thread, unless both are empty. It can thus be lower than the actual count, but only reads {@code 0} once every
+     * stripe is empty. Permits that are moved in a batch between a stripe and the reservoir are briefly counted in
+     * neither: this can only hide permits from a concurrent estimate while they are being taken by
+     * {@link #getPermits(int)} or given back by {@link #returnPermits(int)}, after which pools look for pending
+     * borrowers again anyway.
+     */
+    static final class StripedSizeBasedAllocationStrategy implements AllocationStrategy {
+
+        //each stripe is spaced out by 64 bytes to avoid false sharing
+        static final int PADDING = 16;
+
+        final int                max;
+        final int                mask;
+        final int                batch;
+        final AtomicIntegerArray stripes;
+
+        volatile int reservoir;
+        static final AtomicIntegerFieldUpdater<StripedSizeBasedAllocationStrategy> RESERVOIR = AtomicIntegerFieldUpdater.newUpdater(StripedSizeBasedAllocationStrategy.class, "reservoir");
+
+        StripedSizeBasedAllocationStrategy(int max) {
+            this(max, Runtime.getRuntime().availableProcessors());
+        }
+
+        StripedSizeBasedAllocationStrategy(int max, int stripeCount) {
+            this.max = Math.max(1, max);
+            int n = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1; //next power of 2
+            this.mask = n - 1;
+            this.batch = Math.max(1, this.max / (4 * n));
+            this.stripes = new AtomicIntegerArray((n + 1) * PADDING);
+            RESERVOIR.lazySet(this, this.max);
+        }
+
+        int stripeIndex() {
+            return (((int) Thread.currentThread().getId() & mask) + 1) * PADDING;
+        }
+
+        @Override
+        public int getPermits(int desired) {
+            if (desired < 1) return 0;
+
+            int index = stripeIndex();
+            int got = take(index, desired);
+            if (got < desired) {
+                got += refill(index, desired - got);
+            }
+            for (int i = 0; got < desired && i <= mask; i++) {
+                int other = (i + 1) * PADDING;
+                if (other != index) {
+                    got += take(other, desired - got);
+                }
+            }
+            return got;
+        }
+
+        int take(int index, int desired) {
+            for (;;) {
+                int p = stripes.get(index);
+                if (p == 0) {
+                    return 0;
+                }
+                int possible = Math.min(desired, p);
+                if (stripes.compareAndSet(index, p, p - possible)) {
+                    return possible;
+                }
+            }
+        }
+
+        /**
+         * Take {@code needed} permits from the reservoir, plus up to a batch of extra permits that are cached in
+         * the stripe at {@code index}.
+         */
+        int refill(int index, int needed) {
+            for (;;) {
+                int r = reservoir;
+                if (r == 0) {
+                    return 0;
+                }
+                int possible = Math.min(needed + batch - 1, r);
+                if (RESERVOIR.compareAndSet(this, r, r - possible)) {
+                    if (possible > needed) {
+                        stripes.addAndGet(index, possible - needed);
+                        return needed;
+                    }
+                    return possible;
+                }
+            }
+        }
+
+        @Override
+        public int estimatePermitCount() {
+            int count = reservoir + stripes.get(stripeIndex());
+            if (count > 0) {
+                return count;
+            }
+            for (int i = 0; i <= mask; i++) {
+                count += stripes.get((i + 1) * PADDING);
+            }
+            return count;
+        }
+
+        @Override
+        public int permitMaximum() {
+            return max;
+        }
+
+        @Override
+        public void returnPermits(int returned) {
+            int index = stripeIndex();
+            int p = stripes.addAndGet(index, returned);
+            //spill what exceeds a batch back into the reservoir, so that idle stripes don't hoard permits
+            if (p > 2 * batch) {
+                int excess = take(index, p - batch);
+                if (excess > 0) {
+                    RESERVOIR.addAndGet(this, excess);
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link SizeBasedAllocationStrategy} that additionally limits the rate at which permits are handed out, as a
+     * token bucket of {@code burst} tokens refilled every {@code emissionIntervalNanos}. This is implemented with the
+     * generic cell rate algorithm (GCRA), which only needs to track the theoretical arrival time of the next permit.
+     * <p>
+     * Returned permits replenish the size budget only: an allocation that has been made still counts against the rate.
+     */
+    static final class RateLimitedAllocationStrategy implements AllocationStrategy {
+
+        final int  max;
+        final int  burst;
+        final long emissionIntervalNanos;
+
+        volatile int permits;
+        static final AtomicIntegerFieldUpdater<RateLimitedAllocationStrategy> PERMITS = AtomicIntegerFieldUpdater.newUpdater(RateLimitedAllocationStrategy.class, "permits");
+
+        //theoretical arrival time of the next permit, as per System.nanoTime()
+        volatile long tat;
+        static final AtomicLongFieldUpdater<RateLimitedAllocationStrategy> TAT = AtomicLongFieldUpdater.newUpdater(RateLimitedAllocationStrategy.class, "tat");
+
+        RateLimitedAllocationStrategy(int max, long emissionIntervalNanos, int burst) {
+            this.max = Math.max(1, max);
+            this.burst = Math.max(1, burst);
+            this.emissionIntervalNanos = Math.max(1L, emissionIntervalNanos);
+            this.tat = System.nanoTime() - this.burst * this.emissionIntervalNanos;
+            PERMITS.lazySet(this, this.max);
+        }
+
+        @Override
+        public int getPermits(int desired) {
+            if (desired < 1) return 0;
+
+            int sized;
+            for (;;) {
+                int p = permits;
+                sized = Math.min(desired, p);
+                if (sized == 0) {
+                    return 0;
+                }
+                if (PERMITS.compareAndSet(this, p, p - sized)) {
+                    break;
+                }
+            }
+            int granted = consumeTokens(sized);
+            if (granted < sized) {
+                PERMITS.addAndGet(this, sized - granted);
+            }
+            return granted;
+        }
+
+        int consumeTokens(int desired) {
+            for (;;) {
+                long now = System.nanoTime();
+                long t = tat;
+                long from = t - now < 0 ? now : t;
+                int available = tokens(now, from);
+                int granted = Math.min(desired, available);
+                if (granted == 0) {
+                    return 0;
+                }
+                if (TAT.compareAndSet(this, t, from + granted * emissionIntervalNanos)) {
+                    return granted;
+                }
+            }
+        }
+
+        int tokens(long now, long from) {
+            return (int) Math.min(burst, (now + burst * emissionIntervalNanos - from) / emissionIntervalNanos);
+        }
+
+        @Override
+        public int estimatePermitCount() {
+            long now = System.nanoTime();
+            long t = tat;
+            return Math.min(permits, tokens(now, t - now < 0 ? now : t));
+        }
+
+        @Override
+        public int permitMaximum() {
+            return max;
+        }
+
         @Override
         public void returnPermits(int returned) {
             PERMITS.addAndGet(this, returned);
         }
+
+        @Override
+        public long nanosUntilNextPermit() {
+            if (permits <= 0) {
+                return 0L; //can only be replenished by returnPermits
+            }
+            //a token is available once now + (burst - 1) * interval has caught up with the theoretical arrival time
+            return Math.max(1L, tat - (burst - 1) * emissionIntervalNanos - System.nanoTime());
+        }
+    }
+
+    /**
+     * An {@link AllocationStrategy} with a limit that adapts to the health of the backend, following an AIMD
+     * (additive increase, multiplicative decrease) scheme: the limit grows by one once a full limit's worth of
+     * allocations or pending acquires succeeded under the latency threshold, and is halved whenever an allocation
+     * fails or exceeds that threshold (at most once per threshold period, so that a burst of slow allocations doesn't
+     * collapse it at once). The limit stays between {@code minSize} and {@code maxSize}.
+     * <p>
+     * As allocations can only happen below the limit, the demand also makes it grow: an allocation that succeeds
+     * under the latency threshold while all the permits are in use grows the limit by one, unless it has been lowered
+     * within the last threshold period. The limit thus only grows from the events the strategy is fed, by at most one
+     * step per healthy allocation, and never outgrows what the backend has proven to handle.
+     * <p>
+     * The strategy is fed by the allocation and pending events of the {@link PoolMetricsRecorder}, through the
+     * recorder returned by {@link #feedFrom(PoolMetricsRecorder)}. Lowering the limit doesn't destroy live resources,
+     * it only prevents new allocations until enough permits have been returned.
+     */
+    static final class AdaptiveAllocationStrategy implements AllocationStrategy {
+
+        static final double BACKOFF_RATIO = 0.5d;
+
+        final int  minSize;
+        final int  maxSize;
+        final long latencyThresholdNanos;
+
+        volatile int limit;
+        static final AtomicIntegerFieldUpdater<AdaptiveAllocationStrategy> LIMIT = AtomicIntegerFieldUpdater.newUpdater(AdaptiveAllocationStrategy.class, "limit");
+
+        volatile int inUse;
+        static final AtomicIntegerFieldUpdater<AdaptiveAllocationStrategy> IN_USE = AtomicIntegerFieldUpdater.newUpdater(AdaptiveAllocationStrategy.class, "inUse");
+
+        volatile int successes;
+        static final AtomicIntegerFieldUpdater<AdaptiveAllocationStrategy> SUCCESSES = AtomicIntegerFieldUpdater.newUpdater(AdaptiveAllocationStrategy.class, "successes");
+
+        volatile long lastDecrease;
+        static final AtomicLongFieldUpdater<AdaptiveAllocationStrategy> LAST_DECREASE = AtomicLongFieldUpdater.newUpdater(AdaptiveAllocationStrategy.class, "lastDecrease");
+
+        AdaptiveAllocationStrategy(int minSize, int maxSize, long latencyThresholdNanos) {
+            this.minSize = Math.max(1, minSize);
+            this.maxSize = Math.max(this.minSize, maxSize);
+            this.latencyThresholdNanos = latencyThresholdNanos;
+            this.lastDecrease = System.nanoTime() - latencyThresholdNanos;
+            LIMIT.lazySet(this, this.minSize);
+        }
+
+        @Override
+        public int getPermits(int desired) {
+            if (desired < 1) return 0;
+
+            for (;;) {
+                int u = inUse;
+                int possible = Math.min(desired, limit - u);
+                if (possible <= 0) {
+                    return 0;
+                }
+                if (IN_USE.compareAndSet(this, u, u + possible)) {
+                    return possible;
+                }
+            }
+        }
+
+        @Override
+        public int estimatePermitCount() {
+            return Math.max(0, limit - inUse);
+        }
+
+        @Override
+        public int permitMaximum() {
+            return maxSize;
+        }
+
+        @Override
+        public void returnPermits(int returned) {
+            IN_USE.addAndGet(this, -returned);
+        }
+
+        /**
+         * The limit only grows from the events the strategy is fed, which the pool follows with a new attempt anyway.
+         *
+         * @return {@literal 1} if a permit is still available, {@literal 0} otherwise
+         */
+        @Override
+        public long nanosUntilNextPermit() {
+            return inUse < limit ? 1L : 0L; //lost a race for a permit that is still there
+        }
+
+        void onAllocationSuccess(long latencyNanos) {
+            if (latencyNanos > latencyThresholdNanos) {
+                decrease();
+                return;
+            }
+            onSuccess();
+            growIfSaturated();
+        }
+
+        void onPendingSuccess(long latencyNanos) {
+            //a slow acquire only means the demand exceeds the resources, the backend isn't to blame
+            if (latencyNanos <= latencyThresholdNanos) {
+                onSuccess();
+            }
+        }
+
+        void onSuccess() {
+            int l = limit;
+            int s = SUCCESSES.incrementAndGet(this);
+            if (s >= l && l < maxSize && SUCCESSES.compareAndSet(this, s, 0)) {
+                LIMIT.compareAndSet(this, l, l + 1);
+            }
+        }
+
+        /**
+         * Grow the limit by one if all the permits are in use, as the demand exceeds it, unless the backend has been
+         * considered degraded within the last threshold period.
+         */
+        void growIfSaturated() {
+            int l = limit;
+            if (inUse >= l && l < maxSize && System.nanoTime() - lastDecrease >= latencyThresholdNanos) {
+                LIMIT.compareAndSet(this, l, l + 1);
+            }
+        }
+
+        void onAllocationFailure() {
+            decrease();
+        }
+
+        void decrease() {
+            long now = System.nanoTime();
+            long last = lastDecrease;
+            if (now - last < latencyThresholdNanos || !LAST_DECREASE.compareAndSet(this, last, now)) {
+                return;
+            }
+            for (;;) {
+                int l = limit;
+                int decreased = Math.max(minSize, (int) (l * BACKOFF_RATIO));
+                if (decreased == l || LIMIT.compareAndSet(this, l, decreased)) {
+                    SUCCESSES.set(this, 0);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Wrap a {@link PoolMetricsRecorder} so that the allocation events it receives also feed this strategy.
+         *
+         * @param delegate the {@link PoolMetricsRecorder} to forward all events to
+         * @return the wrapping {@link PoolMetricsRecorder}
+         */
+        PoolMetricsRecorder feedFrom(PoolMetricsRecorder delegate) {
+            return new FeedingRecorder(this, delegate);
+        }
+    }
+
+    /**
+     * A {@link PoolMetricsRecorder} that forwards every event to a delegate, feeding the allocation and pending events
+     * to an {@link AdaptiveAllocationStrategy} on the way.
+     */
+    static final class FeedingRecorder implements PoolMetricsRecorder {
+
+        final AdaptiveAllocationStrategy strategy;
+        final PoolMetricsRecorder        delegate;
+        final TimeUnit                   timeUnit;
+
+        FeedingRecorder(AdaptiveAllocationStrategy strategy, PoolMetricsRecorder delegate) {
+            this.strategy = strategy;
+            this.delegate = delegate;
+            this.timeUnit = delegate.timeUnit();
+        }
+
+        @Override
+        public long now() {
+            return delegate.now();
+        }
+
+        @Override
+        public long measureTime(long startTime) {
+            return delegate.measureTime(startTime);
+        }
+
+        @Override
+        public TimeUnit timeUnit() {
+            return timeUnit;
+        }
+
+        @Override
+        public void recordAllocationSuccessAndLatency(long latency) {
+            strategy.onAllocationSuccess(timeUnit.toNanos(latency));
+            delegate.recordAllocationSuccessAndLatency(latency);
+        }
+
+        @Override
+        public void recordAllocationFailureAndLatency(long latency) {
+            strategy.onAllocationFailure();
+            delegate.recordAllocationFailureAndLatency(latency);
+        }
+
+        @Override
+        public void recordPendingSuccessAndLatency(long latency) {
+            strategy.onPendingSuccess(timeUnit.toNanos(latency));
+            delegate.recordPendingSuccessAndLatency(latency);
+        }
+
+        @Override
+        public void recordPendingSuccessAndLatency(long latency, boolean fastPath) {
+            strategy.onPendingSuccess(timeUnit.toNanos(latency));
+            delegate.recordPendingSuccessAndLatency(latency, fastPath);
+        }
+
+        @Override
+        public void recordPendingFailureAndLatency(long latency) {
+            delegate.recordPendingFailureAndLatency(latency);
+        }
+
+        @Override
+        public void recordResetLatency(long latency) {
+            delegate.recordResetLatency(latency);
+        }
+
+        @Override
+        public void recordDestroyLatency(long latency) {
+            delegate.recordDestroyLatency(latency);
+        }
+
+        @Override
+        public void recordRecycled() {
+            delegate.recordRecycled();
+        }
+
+        @Override
+        public void recordLifetimeDuration(long timeSinceAllocation) {
+            delegate.recordLifetimeDuration(timeSinceAllocation);
+        }
+
+        @Override
+        public void recordIdleTime(long idleTime) {
+            delegate.recordIdleTime(idleTime);
+        }
+
+        @Override
+        public void recordSlowPath() {
+            delegate.recordSlowPath();
+        }
+
+        @Override
+        public void recordFastPath() {
+            delegate.recordFastPath();
+        }
     }
 }
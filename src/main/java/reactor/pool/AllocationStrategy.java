@@ -43,10 +43,36 @@ public interface AllocationStrategy {
      */
     int estimatePermitCount();
 
+    /**
+     * The maximum number of permits this strategy can ever have handed out at the same time, or
+     * {@link Integer#MAX_VALUE} if unbounded. The {@link Pool} uses this at construction to size its internal
+     * structures. Defaults to the {@link #estimatePermitCount()}, which is only correct for strategies that start
+     * with all their permits available.
+     *
+     * @return the maximum number of permits that can be held at once
+     */
+    default int permitMaximum() {
+        return estimatePermitCount();
+    }
+
     /**
      * Update the strategy to indicate that N resources were discarded from the {@link Pool}, potentially leaving space
      * for N new ones to be allocated. Users MUST ensure that this method isn't called with a value greater than the
      * number of held permits it has.
      */
     void returnPermits(int returned);
+
+    /**
+     * Indicate how long until a new permit is expected to become available without any permit being
+     * {@link #returnPermits(int) returned}, eg. for a strategy that limits the rate of allocations. A {@link Pool}
+     * that has pending borrowers but couldn't get a permit uses this to retry the allocation later.
+     * <p>
+     * Defaults to {@literal 0}, meaning that permits only become available by being returned.
+     *
+     * @return a positive number of nanoseconds after which a new permit is expected, or {@literal 0} if permits only
+     * come back through {@link #returnPermits(int)}
+     */
+    default long nanosUntilNextPermit() {
+        return 0L;
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.annotation.Nullable;
+
+/**
+ * A reactive pool of objects partitioned by key, where each key gets its own {@link Pool} lazily created on the
+ * first acquire for that key. All the per-key pools can share a global size budget, in addition to their own limit.
+ *
+ * @author Simon Baslé
+ * @see KeyedPoolBuilder
+ */
+public interface KeyedPool<K, POOLABLE> extends Disposable {
+
+    /**
+     * Manually acquire a {@code POOLABLE} from the pool of the given {@code key} upon subscription, creating that
+     * pool if needed, and become responsible for its release.
+     *
+     * @param key the key to acquire a resource for
+     * @return a {@link Mono}, each subscription to which represents an individual act of acquiring a pooled object and
+     * manually managing its lifecycle from there on
+     * @see Pool#acquire()
+     */
+    Mono<PooledRef<POOLABLE>> acquire(K key);
+
+    /**
+     * Acquire a {@code POOLABLE} object from the pool of the given {@code key} upon subscription and declaratively use
+     * it, automatically releasing the object back to the pool once the derived usage pipeline terminates or is cancelled.
+     *
+     * @param key the key to acquire a resource for
+     * @param scopeFunction the {@link Function} to apply to the {@link Mono} delivering the POOLABLE to instantiate and
+     *                      trigger a processing pipeline around it.
+     * @return a {@link Flux}, each subscription to which represents an individual act of acquiring a pooled object,
+     * processing it as declared in {@code scopeFunction} and automatically releasing it.
+     * @see Pool#acquireInScope(Function)
+     */
+    default <V> Flux<V> acquireInScope(K key, Function<Mono<POOLABLE>, Publisher<V>> scopeFunction) {
+        return Flux.usingWhen(acquire(key),
+                slot -> scopeFunction.apply(Mono.justOrEmpty(slot.poolable())),
+                PooledRef::release,
+                PooledRef::release);
+    }
+
+    /**
+     * Get the {@link PoolMetrics} of the pool of the given {@code key}, if that pool currently exists.
+     *
+     * @param key the key of the pool
+     * @return the {@link PoolMetrics} of the key's pool, or null if there is no pool for that key
+     */
+    @Nullable
+    PoolMetrics metrics(K key);
+
+    /**
+     * Return the number of keys that currently have a pool.
+     *
+     * @return the number of live per-key pools
+     */
+    int keyCount();
+}
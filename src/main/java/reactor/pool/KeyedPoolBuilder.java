@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+
+/**
+ * A builder for {@link KeyedPool}. Each per-key {@link Pool} is built by a {@link PoolBuilder}, which can be
+ * customized through {@link #perKeyPool(Consumer)}.
+ *
+ * @author Simon Baslé
+ */
+@SuppressWarnings("WeakerAccess")
+public class KeyedPoolBuilder<K, T> {
+
+    /**
+     * Start building a {@link KeyedPool} by describing how new objects are to be asynchronously allocated for a given
+     * key. The {@link Publisher} derived for a key is subscribed to each time a new resource is needed for that key.
+     *
+     * @param allocator the {@link Function} deriving the asynchronous creator of poolable resources for a key
+     * @param <K> the type of keys
+     * @param <T> the type of resource created and recycled by the {@link KeyedPool}
+     * @return a builder of {@link KeyedPool}
+     * @see PoolBuilder#from(Publisher)
+     */
+    public static <K, T> KeyedPoolBuilder<K, T> from(Function<? super K, ? extends Publisher<? extends T>> allocator) {
+        return new KeyedPoolBuilder<>(allocator);
+    }
+
+    final Function<? super K, ? extends Publisher<? extends T>> allocator;
+
+    Consumer<PoolBuilder<T>> perKeyConfigurer = builder -> { };
+    AllocationStrategy       perKeyStrategy   = AllocationStrategies.UNBOUNDED;
+    AllocationStrategy       sharedStrategy   = AllocationStrategies.UNBOUNDED;
+    int                      maxIdleKeys      = Integer.MAX_VALUE;
+
+    KeyedPoolBuilder(Function<? super K, ? extends Publisher<? extends T>> allocator) {
+        this.allocator = Objects.requireNonNull(allocator, "allocator");
+    }
+
+    /**
+     * Customize the {@link PoolBuilder} of each per-key {@link Pool}, eg. to set a release handler or an eviction
+     * predicate. The sizing of the per-key pools is set by {@link #sizeMaxPerKey(int)} and {@link #sizeMaxTotal(int)}
+     * instead, and overrides any {@link PoolBuilder#allocationStrategy(AllocationStrategy) allocation strategy} set here.
+     *
+     * @param configurer the {@link Consumer} applied to each per-key {@link PoolBuilder}
+     * @return this {@link KeyedPool} builder
+     */
+    public KeyedPoolBuilder<K, T> perKeyPool(Consumer<PoolBuilder<T>> configurer) {
+        this.perKeyConfigurer = Objects.requireNonNull(configurer, "configurer");
+        return this;
+    }
+
+    /**
+     * Let the {@link Pool} of each key allocate at most {@code max} resources.
+     * Defaults to no per-key limit.
+     *
+     * @param max the maximum number of live resources per key
+     * @return this {@link KeyedPool} builder
+     */
+    public KeyedPoolBuilder<K, T> sizeMaxPerKey(int max) {
+        this.perKeyStrategy = new AllocationStrategies.SizeBasedAllocationStrategy(max);
+        return this;
+    }
+
+    /**
+     * Let the {@link KeyedPool} allocate at most {@code max} resources across all keys. When a key needs to allocate
+     * while that budget is exhausted, the least recently used key that has only idle resources is closed to free
+     * some budget. Defaults to no global limit.
+     *
+     * @param max the maximum number of live resources across all keys
+     * @return this {@link KeyedPool} builder
+     */
+    public KeyedPoolBuilder<K, T> sizeMaxTotal(int max) {
+        this.sharedStrategy = new AllocationStrategies.SizeBasedAllocationStrategy(max);
+        return this;
+    }
+
+    /**
+     * Keep at most {@code maxIdleKeys} keys that have neither acquired resources nor pending borrowers. Beyond that,
+     * the least recently used idle keys are closed, destroying their idle resources. This is checked whenever the pool
+     * of a new key is created. Defaults to no limit.
+     *
+     * @param maxIdleKeys the maximum number of idle keys to keep
+     * @return this {@link KeyedPool} builder
+     */
+    public KeyedPoolBuilder<K, T> maxIdleKeys(int maxIdleKeys) {
+        if (maxIdleKeys < 0) {
+            throw new IllegalArgumentException("maxIdleKeys must be >= 0");
+        }
+        this.maxIdleKeys = maxIdleKeys;
+        return this;
+    }
+
+    /**
+     * Build the {@link KeyedPool}.
+     *
+     * @return the {@link KeyedPool}
+     */
+    public KeyedPool<K, T> build() {
+        return new SimpleKeyedPool<>(this);
+    }
+
+    //invoked by the KeyedPool for each new key, onPermitsReturned being notified whenever the key gives back budget
+    AbstractPool<T> buildPool(K key, Runnable onPermitsReturned) {
+        PoolBuilder<T> builder = PoolBuilder.from(allocator.apply(key));
+        perKeyConfigurer.accept(builder);
+        AllocationStrategy local = perKeyStrategy instanceof AllocationStrategies.SizeBasedAllocationStrategy
+                ? new AllocationStrategies.SizeBasedAllocationStrategy(((AllocationStrategies.SizeBasedAllocationStrategy) perKeyStrategy).max)
+                : perKeyStrategy;
+        return builder.allocationStrategy(new AllocationStrategies.CompositeAllocationStrategy(local, sharedStrategy, onPermitsReturned))
+                      .buildPool();
+    }
+}
@@ -0,0 +1,696 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.jctools.queues.MpscLinkedQueue8;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.Loggers;
+import reactor.util.annotation.Nullable;
+import reactor.util.concurrent.Queues;
+
+/**
+ * A {@link Pool} in which each resource can be lent to up to {@link DefaultPoolConfig#maxConcurrentLeases} borrowers
+ * at once. Each {@link PooledRef} is a lease of a shared {@link MultiplexedSlot}, and pending borrowers are served
+ * in FIFO order by the least loaded slot. New resources are only allocated when all the live slots are saturated,
+ * taking into account the borrowers that the allocations already in flight will be able to serve.
+ * <p>
+ * The slots are only ever lent from the non-blocking drain loop, which owns the list of slots. Other threads
+ * communicate new resources through an MPSC queue, and returned leases through the lease count of each slot.
+ *
+ * @author Simon Baslé
+ */
+final class MultiplexedPool<POOLABLE> extends AbstractPool<POOLABLE> {
+
+    private static final Queue TERMINATED = Queues.empty().get();
+
+    final int maxConcurrentLeases;
+
+    //only accessed by the thread that currently owns the drain loop
+    final List<MultiplexedSlot<POOLABLE>> slots;
+
+    //resources allocated outside of the drain loop, to be added to the slots by the drain loop
+    final Queue<MultiplexedSlot<POOLABLE>> newSlots;
+
+    volatile Queue<Borrower<POOLABLE>>                                       pending;
+    private static final AtomicReferenceFieldUpdater<MultiplexedPool, Queue> PENDING = AtomicReferenceFieldUpdater.newUpdater(
+            MultiplexedPool.class, Queue.class, "pending");
+
+    //the number of live resources, leased or not
+    volatile int                                                    size;
+    private static final AtomicIntegerFieldUpdater<MultiplexedPool> SIZE = AtomicIntegerFieldUpdater.newUpdater(
+            MultiplexedPool.class, "size");
+
+    //the number of resources that have at least one lease
+    volatile int                                                    acquired;
+    private static final AtomicIntegerFieldUpdater<MultiplexedPool> ACQUIRED = AtomicIntegerFieldUpdater.newUpdater(
+            MultiplexedPool.class, "acquired");
+
+    volatile int                                                    wip;
+    private static final AtomicIntegerFieldUpdater<MultiplexedPool> WIP = AtomicIntegerFieldUpdater.newUpdater(
+            MultiplexedPool.class, "wip");
+
+    //completes once the slots that were idle when the pool was disposed have been destroyed, see #disposeLater()
+    final MonoProcessor<Void> idleSlotsDestroyed = MonoProcessor.create();
+
+    //only accessed by the thread that currently owns the drain loop
+    boolean idleSlotsDestroying;
+
+    MultiplexedPool(DefaultPoolConfig<POOLABLE> poolConfig) {
+        super(poolConfig, Loggers.getLogger(MultiplexedPool.class));
+        this.maxConcurrentLeases = poolConfig.maxConcurrentLeases;
+        this.slots = new ArrayList<>();
+        this.newSlots = new MpscLinkedQueue8<>();
+        this.pending = new MpscLinkedQueue8<>(); //unbounded MPSC
+
+        initialAllocations();
+        ensureMinIdle();
+        scheduleEvictionInBackground();
+    }
+
+    @Override
+    public Mono<PooledRef<POOLABLE>> acquire() {
+        return new MultiplexedBorrowerMono<>(this, Duration.ZERO); //the mono is unknown to the pool until requested
+    }
+
+    @Override
+    public Mono<PooledRef<POOLABLE>> acquire(Duration timeout) {
+        if (isNegativeTimeout(timeout)) {
+            return Mono.error(new IllegalArgumentException("timeout must be >= 0"));
+        }
+        return new MultiplexedBorrowerMono<>(this, timeout); //the mono is unknown to the pool until requested
+    }
+
+    @Override
+    void doAcquire(Borrower<POOLABLE> borrower) {
+        if (isDisposed()) {
+            borrower.fail(new RuntimeException("Pool has been shut down"));
+            return;
+        }
+        if (pendingOffer(borrower)) {
+            drain();
+        }
+        ensureMinIdle();
+    }
+
+    boolean pendingOffer(Borrower<POOLABLE> borrower) {
+        int maxPending = poolConfig.maxPending;
+        for (;;) {
+            int currentPending = PENDING_COUNT.get(this);
+            if (maxPending >= 0 && currentPending == maxPending) {
+                borrower.fail(new IllegalStateException("Pending acquire queue has reached its maximum size of " + maxPending));
+                return false;
+            }
+            else if (PENDING_COUNT.compareAndSet(this, currentPending, currentPending + 1)) {
+                if (borrower.markPending()) {
+                    this.pending.offer(borrower); //unbounded
+                }
+                else {
+                    //removed concurrently, eg. timed out
+                    PENDING_COUNT.decrementAndGet(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    @Nullable
+    Borrower<POOLABLE> pendingPoll() {
+        Queue<Borrower<POOLABLE>> q = this.pending;
+        Borrower<POOLABLE> b;
+        while ((b = q.poll()) != null) {
+            if (b.markPolled()) {
+                PENDING_COUNT.decrementAndGet(this);
+                return b;
+            }
+            //otherwise the borrower has been removed and uncounted already, skip it
+        }
+        return null;
+    }
+
+    void pendingPurge() {
+        Queue<Borrower<POOLABLE>> q = this.pending;
+        Borrower<POOLABLE> b;
+        while ((b = q.peek()) != null && b.isRemoved()) {
+            q.poll();
+        }
+    }
+
+    @Override
+    boolean elementOffer(POOLABLE element) {
+        SIZE.incrementAndGet(this);
+        return newSlots.offer(new MultiplexedSlot<>(this, element));
+    }
+
+    @Override
+    public int idleSize() {
+        return Math.max(0, SIZE.get(this) - ACQUIRED.get(this));
+    }
+
+    @Override
+    public int acquiredSize() {
+        return ACQUIRED.get(this);
+    }
+
+    @Override
+    void drain() {
+        if (WIP.getAndIncrement(this) == 0) {
+            drainLoop();
+        }
+    }
+
+    @Override
+    void evictInBackground() {
+        //the slots are only accessed by the drain loop, so the reaper needs to take ownership of it
+        if (WIP.getAndIncrement(this) == 0) {
+            List<MultiplexedSlot<POOLABLE>> slots = this.slots;
+            for (int i = slots.size() - 1; i >= 0 && !isDisposed(); i--) {
+                MultiplexedSlot<POOLABLE> slot = slots.get(i);
+                if (slot.leases == 0 && slot.resetState == MultiplexedSlot.CLEAN
+                        && poolConfig.evictionPredicate.test(slot.poolable, slot)) {
+                    removeSlot(i);
+                    destroySlot(slot).subscribe(v -> {}, e -> logger.debug("Failed to destroy an evicted resource", e));
+                }
+            }
+            //serve the borrowers that might have pended in the meantime, and go on allocating if eviction made room
+            drainLoop();
+        }
+        ensureMinIdle();
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+
+        for (;;) {
+            addNewSlots();
+
+            if (isDisposed()) {
+                destroyIdleSlots();
+            }
+            else {
+                while (PENDING_COUNT.get(this) > 0) {
+                    MultiplexedSlot<POOLABLE> slot = leastLoadedSlot();
+                    if (slot == null) {
+                        if (!allocateForPending()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    //only the drain loop increments the leases, so the slot can't have been saturated in the meantime.
+                    //its last lease might have been returned since it was picked though, in which case the resource
+                    //is about to be accounted for as released, reset or destroyed and can't be lent until it is CLEAN
+                    int previousLeases = MultiplexedSlot.LEASES.getAndIncrement(slot);
+                    if (previousLeases == 0) {
+                        if (slot.resetState != MultiplexedSlot.CLEAN || slot.invalidated || slot.destroyed == 1) {
+                            MultiplexedSlot.LEASES.decrementAndGet(slot);
+                            continue;
+                        }
+                        slot.resetState = MultiplexedSlot.LEASED;
+                    }
+                    if (slot.invalidated) {
+                        //invalidated through another lease since it was picked: the resource is destroyed once its
+                        //last lease is returned, which might now be this one
+                        returnLease(slot).subscribe(v -> {}, e -> logger.debug("Failed to destroy an invalidated resource", e));
+                        continue;
+                    }
+                    Borrower<POOLABLE> borrower = pendingPoll();
+                    if (borrower == null) {
+                        if (previousLeases == 0) {
+                            //nobody else holds the slot, so it can't have been released in the meantime
+                            slot.resetState = MultiplexedSlot.CLEAN;
+                            MultiplexedSlot.LEASES.decrementAndGet(slot);
+                        }
+                        else {
+                            returnLease(slot).subscribe(v -> {}, e -> logger.debug("Failed to reset a returned resource", e));
+                        }
+                        break;
+                    }
+                    if (previousLeases == 0) {
+                        ACQUIRED.incrementAndGet(this);
+                    }
+                    MultiplexedPooledRef<POOLABLE> lease = new MultiplexedPooledRef<>(slot);
+                    poolConfig.acquisitionScheduler.schedule(() -> borrower.deliver(lease));
+                }
+                if (pendingCompactionRequested()) {
+                    compactPending(this.pending);
+                }
+                else {
+                    pendingPurge();
+                }
+            }
+
+            missed = WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Add the resources allocated outside of the drain loop to the slots.
+     * MUST only be called by the thread that currently owns the drain loop.
+     */
+    private void addNewSlots() {
+        MultiplexedSlot<POOLABLE> added;
+        while ((added = newSlots.poll()) != null) {
+            slots.add(added);
+        }
+    }
+
+    /**
+     * Find the slot with the least leases that can still be lent, dropping the slots that have been destroyed and
+     * destroying the unleased slots that are invalidated or match the eviction predicate along the way.
+     * MUST only be called by the thread that currently owns the drain loop.
+     *
+     * @return the least loaded slot, or null if all the slots are saturated
+     */
+    @Nullable
+    private MultiplexedSlot<POOLABLE> leastLoadedSlot() {
+        //allocations can complete synchronously from within the drain loop
+        addNewSlots();
+        List<MultiplexedSlot<POOLABLE>> slots = this.slots;
+        MultiplexedSlot<POOLABLE> best = null;
+        for (int i = slots.size() - 1; i >= 0; i--) {
+            MultiplexedSlot<POOLABLE> slot = slots.get(i);
+            int leases = slot.leases;
+            if (slot.destroyed == 1) {
+                removeSlot(i);
+            }
+            else if (leases == 0 && slot.resetState != MultiplexedSlot.CLEAN) {
+                //the last lease has just been returned and the release is being accounted for or the resource
+                //reset: the releasing thread will make it available again, or destroy it
+                continue;
+            }
+            else if (leases == 0 && (slot.invalidated || poolConfig.evictionPredicate.test(slot.poolable, slot))) {
+                //unleased slots can't be leased concurrently, as only the drain loop lends them
+                removeSlot(i);
+                destroySlot(slot).subscribe(v -> {}, e -> logger.debug("Failed to destroy an invalidated or evicted resource", e));
+            }
+            else if (!slot.invalidated && leases < maxConcurrentLeases && (best == null || leases < best.leases)) {
+                best = slot;
+                if (leases == 0) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Start an allocation on behalf of the next pending borrower, unless the allocations already in flight will be
+     * able to serve all the pending borrowers. The new resource is leased to that borrower, then made available to
+     * the others once the allocation terminates.
+     * MUST only be called by the thread that currently owns the drain loop.
+     *
+     * @return true if the drain loop should go on serving pending borrowers
+     */
+    private boolean allocateForPending() {
+        int pendingCount = PENDING_COUNT.get(this);
+        //each allocation in flight delivers to one borrower, then can serve the others once added to the slots
+        if ((long) ALLOCATING.get(this) * maxConcurrentLeases >= pendingCount) {
+            return false;
+        }
+        if (poolConfig.allocationStrategy.estimatePermitCount() == 0) {
+            scheduleAllocationRetry();
+            return false;
+        }
+        if (!tryStartAllocation()) {
+            return false;
+        }
+        //the permit is obtained before polling, so that a borrower is never dropped for lack of permit
+        if (poolConfig.allocationStrategy.getPermits(1) != 1) {
+            ALLOCATING.decrementAndGet(this);
+            scheduleAllocationRetry();
+            return false;
+        }
+        Borrower<POOLABLE> borrower = pendingPoll(); //shouldn't be null
+        if (borrower == null || borrower.get()) {
+            poolConfig.allocationStrategy.returnPermits(1);
+            ALLOCATING.decrementAndGet(this);
+            return borrower != null;
+        }
+        long start = metricsEnabled ? metricsRecorder.now() : 0L;
+        Mono<POOLABLE> allocator = poolConfig.allocator;
+        Scheduler s = poolConfig.acquisitionScheduler;
+        if (s != Schedulers.immediate()) {
+            allocator = allocator.publishOn(s);
+        }
+        allocator.subscribe(newInstance -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                    MultiplexedSlot<POOLABLE> slot = new MultiplexedSlot<>(this, newInstance);
+                    slot.leases = 1;
+                    slot.resetState = MultiplexedSlot.LEASED;
+                    SIZE.incrementAndGet(this);
+                    ACQUIRED.incrementAndGet(this);
+                    newSlots.offer(slot);
+                    borrower.deliver(new MultiplexedPooledRef<>(slot));
+                },
+                e -> {
+                    if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                    poolConfig.allocationStrategy.returnPermits(1);
+                    borrower.fail(e);
+                    allocationDone();
+                },
+                this::allocationDone);
+        return true;
+    }
+
+    /**
+     * Free the in-flight allocation slot and let the drain loop add the new resource and serve more borrowers.
+     */
+    @Override
+    void allocationDone() {
+        ALLOCATING.decrementAndGet(this);
+        startBatchAllocations();
+        drain();
+    }
+
+    /**
+     * Destroy all the unleased slots once the pool has been disposed, the leased ones being destroyed when their
+     * last lease is returned. The first invocation completes {@link #idleSlotsDestroyed} once the slots that were
+     * idle have been destroyed.
+     * MUST only be called by the thread that currently owns the drain loop.
+     */
+    private void destroyIdleSlots() {
+        List<MultiplexedSlot<POOLABLE>> slots = this.slots;
+        List<Mono<Void>> destroys = new ArrayList<>();
+        for (int i = slots.size() - 1; i >= 0; i--) {
+            MultiplexedSlot<POOLABLE> slot = slots.get(i);
+            if (slot.destroyed == 1) {
+                removeSlot(i);
+            }
+            else if (slot.leases == 0 && slot.resetState == MultiplexedSlot.CLEAN) {
+                removeSlot(i);
+                destroys.add(destroySlot(slot));
+            }
+        }
+        if (!idleSlotsDestroying) {
+            idleSlotsDestroying = true;
+            Mono.whenDelayError(destroys).subscribe(idleSlotsDestroyed);
+        }
+        else {
+            for (Mono<Void> destroy : destroys) {
+                destroy.subscribe(v -> {}, e -> logger.debug("Failed to destroy an idle resource", e));
+            }
+        }
+    }
+
+    private void removeSlot(int index) {
+        //the order of the slots doesn't matter, so the last one takes the place of the removed one
+        List<MultiplexedSlot<POOLABLE>> slots = this.slots;
+        MultiplexedSlot<POOLABLE> last = slots.remove(slots.size() - 1);
+        if (index < slots.size()) {
+            slots.set(index, last);
+        }
+    }
+
+    /**
+     * Destroy the resource of a slot, at most once. The drain loop drops the destroyed slots from its list.
+     *
+     * @param slot the slot to destroy
+     * @return the destroy {@link Mono}, which MUST be subscribed immediately
+     */
+    Mono<Void> destroySlot(MultiplexedSlot<POOLABLE> slot) {
+        if (MultiplexedSlot.DESTROYED.compareAndSet(slot, 0, 1)) {
+            SIZE.decrementAndGet(this);
+            return destroyPoolable(slot);
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * Return a lease of a slot. Once the last lease of a slot is returned, the resource goes through the
+     * {@link DefaultPoolConfig#releaseHandler} if one of its leases has been released since the last reset. The
+     * resource is destroyed instead if the slot has been invalidated or the pool disposed. Otherwise the slot can be
+     * lent again to pending borrowers.
+     *
+     * @param slot the slot to return a lease of
+     * @return a {@link Mono} resetting or destroying the resource if needed, which MUST be subscribed immediately
+     */
+    Mono<Void> returnLease(MultiplexedSlot<POOLABLE> slot) {
+        if (MultiplexedSlot.LEASES.decrementAndGet(slot) != 0) {
+            if (!slot.invalidated) {
+                if (metricsEnabled) metricsRecorder.recordRecycled();
+            }
+            drain();
+            return Mono.empty();
+        }
+        if (!slot.invalidated && !isDisposed()
+                && MultiplexedSlot.RESET_STATE.compareAndSet(slot, MultiplexedSlot.DIRTY, MultiplexedSlot.RESETTING)) {
+            return resetSlot(slot);
+        }
+        return slotReleased(slot);
+    }
+
+    /**
+     * Apply the {@link DefaultPoolConfig#releaseHandler} to the resource of a slot whose last lease has been
+     * returned, then make it available again. The drain loop doesn't lend the slot in the meantime.
+     *
+     * @param slot the slot to reset
+     * @return a {@link Mono} resetting the resource, which MUST be subscribed immediately
+     */
+    private Mono<Void> resetSlot(MultiplexedSlot<POOLABLE> slot) {
+        Mono<Void> cleaner;
+        try {
+            cleaner = Mono.from(poolConfig.releaseHandler.apply(slot.poolable));
+        }
+        catch (Throwable e) {
+            slot.invalidated = true;
+            return slotReleased(slot)
+                    .then(Mono.error(new IllegalStateException("Couldn't apply cleaner function", e)));
+        }
+        return cleaner.onErrorResume(e -> {
+                          slot.invalidated = true;
+                          return slotReleased(slot).then(Mono.error(e));
+                      })
+                      .then(Mono.defer(() -> slotReleased(slot)));
+    }
+
+    /**
+     * Account for a slot that doesn't have any lease anymore, destroying its resource if it has been invalidated or
+     * if the pool has been disposed.
+     *
+     * @param slot the slot that isn't leased anymore
+     * @return a {@link Mono} destroying the resource if needed, which MUST be subscribed immediately
+     */
+    private Mono<Void> slotReleased(MultiplexedSlot<POOLABLE> slot) {
+        //the drain loop doesn't lend the slot until it is CLEAN, so the release is accounted for before it can be
+        //leased again
+        ACQUIRED.decrementAndGet(this);
+        slot.markReleased();
+        if (slot.invalidated || isDisposed()) {
+            Mono<Void> destroy = destroySlot(slot);
+            drain();
+            return destroy;
+        }
+        if (metricsEnabled) metricsRecorder.recordRecycled();
+        //from there on the drain loop can lend the slot again, or destroy it if evicted
+        slot.resetState = MultiplexedSlot.CLEAN;
+        drain();
+        return Mono.empty();
+    }
+
+    @Override
+    public void dispose() {
+        disposeLater().block();
+    }
+
+    @Override
+    Mono<Void> disposeLater() {
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked")
+            Queue<Borrower<POOLABLE>> q = PENDING.getAndSet(this, TERMINATED);
+            if (q == TERMINATED) {
+                return Mono.empty();
+            }
+            disposeTasks();
+            while(!q.isEmpty()) {
+                q.poll().fail(new RuntimeException("Pool has been shut down"));
+            }
+            //the drain loop destroys the idle slots once it sees the pool disposed, be it on this thread or on the
+            //one currently owning it
+            drain();
+            return idleSlotsDestroyed;
+        });
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return PENDING.get(this) == TERMINATED;
+    }
+
+    /**
+     * A resource shared by several {@link MultiplexedPooledRef leases}, which also holds the metadata of the resource.
+     * It is never exposed to borrowers, so it can only be released or invalidated through one of its leases.
+     */
+    static final class MultiplexedSlot<T> extends AbstractPooledRef<T> {
+
+        final MultiplexedPool<T> pool;
+
+        //the number of borrowers currently holding this resource, only incremented by the drain loop
+        volatile int leases;
+        static final AtomicIntegerFieldUpdater<MultiplexedSlot> LEASES = AtomicIntegerFieldUpdater.newUpdater(
+                MultiplexedSlot.class, "leases");
+
+        volatile int destroyed;
+        static final AtomicIntegerFieldUpdater<MultiplexedSlot> DESTROYED = AtomicIntegerFieldUpdater.newUpdater(
+                MultiplexedSlot.class, "destroyed");
+
+        //once invalidated, the slot isn't lent anymore and is destroyed when its last lease is returned
+        volatile boolean invalidated;
+
+        static final int CLEAN     = 0;
+        static final int LEASED    = 1;
+        static final int DIRTY     = 2;
+        static final int RESETTING = 3;
+
+        //CLEAN once the slot is unleased and its release has been accounted for, LEASED while it is lent. DIRTY once a
+        //lease has been released since the last reset, in which case the resource goes through the releaseHandler
+        //when the last lease is returned. The drain loop doesn't lend an unleased slot that isn't CLEAN
+        volatile int resetState;
+        static final AtomicIntegerFieldUpdater<MultiplexedSlot> RESET_STATE = AtomicIntegerFieldUpdater.newUpdater(
+                MultiplexedSlot.class, "resetState");
+
+        MultiplexedSlot(MultiplexedPool<T> pool, T poolable) {
+            super(poolable, pool, pool.chargeWeight(poolable));
+            this.pool = pool;
+        }
+
+        @Override
+        public Mono<Void> release() {
+            return Mono.error(new UnsupportedOperationException("A multiplexed resource is released through its leases"));
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            return Mono.error(new UnsupportedOperationException("A multiplexed resource is invalidated through its leases"));
+        }
+    }
+
+    /**
+     * The {@link PooledRef} delivered to a borrower, representing one lease of a {@link MultiplexedSlot}. It can be
+     * released or invalidated at most once, and its {@link #metadata()} is the one of the shared resource.
+     */
+    static final class MultiplexedPooledRef<T> extends AbstractPooledRef<T> {
+
+        final MultiplexedSlot<T> slot;
+
+        volatile int returned;
+        static final AtomicIntegerFieldUpdater<MultiplexedPooledRef> RETURNED = AtomicIntegerFieldUpdater.newUpdater(
+                MultiplexedPooledRef.class, "returned");
+
+        MultiplexedPooledRef(MultiplexedSlot<T> slot) {
+            super(slot.poolable, slot.pool);
+            this.slot = slot;
+        }
+
+        @Override
+        int markAcquired() {
+            return slot.markAcquired();
+        }
+
+        @Override
+        void markReleased() {
+            //the slot is marked released once its last lease is returned
+        }
+
+        @Override
+        public PooledRefMetadata metadata() {
+            return slot;
+        }
+
+        @Override
+        public int acquireCount() {
+            return slot.acquireCount();
+        }
+
+        @Override
+        public long lifeTime() {
+            return slot.lifeTime();
+        }
+
+        @Override
+        public long lifeTimeNanos() {
+            return slot.lifeTimeNanos();
+        }
+
+        @Override
+        public long idleTime() {
+            return slot.idleTime();
+        }
+
+        @Override
+        public long idleTimeNanos() {
+            return slot.idleTimeNanos();
+        }
+
+        @Override
+        public Mono<Void> release() {
+            return Mono.defer(() -> {
+                if (!RETURNED.compareAndSet(this, 0, 1)) {
+                    return Mono.empty();
+                }
+                MultiplexedPool<T> pool = slot.pool;
+                if (pool.poolConfig.releaseHandler != PoolBuilder.NOOP_HANDLER) {
+                    //other borrowers might still use the resource, so it is only reset once the last lease is returned
+                    slot.resetState = MultiplexedSlot.DIRTY;
+                }
+                return pool.returnLease(slot);
+            });
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            return Mono.defer(() -> {
+                if (!RETURNED.compareAndSet(this, 0, 1)) {
+                    return Mono.empty();
+                }
+                slot.invalidated = true;
+                return slot.pool.returnLease(slot);
+            });
+        }
+    }
+
+    static final class MultiplexedBorrowerMono<T> extends Mono<PooledRef<T>> {
+
+        final MultiplexedPool<T> parent;
+        final Duration           acquireTimeout;
+
+        MultiplexedBorrowerMono(MultiplexedPool<T> pool, Duration acquireTimeout) {
+            this.parent = pool;
+            this.acquireTimeout = acquireTimeout;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super PooledRef<T>> actual) {
+            Objects.requireNonNull(actual, "subscribing with null");
+            Borrower<T> borrower = new Borrower<>(actual, parent, acquireTimeout);
+            actual.onSubscribe(borrower);
+        }
+    }
+}
@@ -28,33 +28,49 @@ final class NoOpPoolMetricsRecorder implements PoolMetricsRecorder {
 
     }
 
+    @Override
+    public boolean isNoOp() {
+        return true;
+    }
+
     @Override
     public long now() {
-        return 0L;
+        //the clock is still needed for idle and lifetime eviction, even if nothing is recorded
+        return System.currentTimeMillis();
     }
 
     @Override
     public long measureTime(long startTimeMillis) {
-        return 0;
+        return System.currentTimeMillis() - startTimeMillis;
+    }
+
+    @Override
+    public void recordAllocationSuccessAndLatency(long latency) {
+
+    }
+
+    @Override
+    public void recordAllocationFailureAndLatency(long latency) {
+
     }
 
     @Override
-    public void recordAllocationSuccessAndLatency(long latencyMs) {
+    public void recordPendingSuccessAndLatency(long latency) {
 
     }
 
     @Override
-    public void recordAllocationFailureAndLatency(long latencyMs) {
+    public void recordPendingFailureAndLatency(long latency) {
 
     }
 
     @Override
-    public void recordResetLatency(long latencyMs) {
+    public void recordResetLatency(long latency) {
 
     }
 
     @Override
-    public void recordDestroyLatency(long latencyMs) {
+    public void recordDestroyLatency(long latency) {
 
     }
 
@@ -64,12 +80,12 @@ final class NoOpPoolMetricsRecorder implements PoolMetricsRecorder {
     }
 
     @Override
-    public void recordIdleTime(long millisecondsIdle) {
+    public void recordIdleTime(long idleTime) {
 
     }
 
     @Override
-    public void recordLifetimeDuration(long millisecondsSinceAllocation) {
+    public void recordLifetimeDuration(long timeSinceAllocation) {
 
     }
 
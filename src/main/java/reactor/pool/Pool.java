@@ -19,7 +19,14 @@ import org.reactivestreams.Publisher;
 import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.annotation.Nullable;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 /**
@@ -52,6 +59,78 @@ public interface Pool<POOLABLE> extends Disposable {
      */
     Mono<PooledRef<POOLABLE>> acquire();
 
+    /**
+     * Manually acquire a {@code POOLABLE} from the pool upon subscription and become responsible for its release,
+     * like {@link #acquire()}, but fail with a {@link TimeoutException} if no resource could be delivered within
+     * the given {@code timeout}. A {@link Duration#ZERO} timeout is the same as {@link #acquire()}, and a negative
+     * timeout is rejected with an {@link IllegalArgumentException}.
+     * <p>
+     * Implementations SHOULD prefer this over {@link Mono#timeout(Duration)} applied to {@link #acquire()}, as they
+     * can remove timed out borrowers from their pending structures and avoid scheduling one task per acquire.
+     *
+     * @param timeout the maximum duration to wait for a resource to be delivered
+     * @return a {@link Mono}, each subscription to which represents an individual act of acquiring a pooled object and
+     * manually managing its lifecycle from there on
+     * @see #acquire()
+     */
+    default Mono<PooledRef<POOLABLE>> acquire(Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout");
+        if (timeout.isNegative()) {
+            return Mono.error(new IllegalArgumentException("timeout must be >= 0"));
+        }
+        if (timeout.isZero()) {
+            return acquire();
+        }
+        return acquire().timeout(timeout);
+    }
+
+    /**
+     * Manually acquire {@code n} {@code POOLABLE} upon subscription and become responsible for their release, like
+     * {@link #acquire()}.
+     * <p>
+     * The default implementation merges {@code n} individual {@link #acquire()}: the resulting {@link Flux} emits each
+     * {@link PooledRef} as soon as it is acquired, then completes once all of them have been. If one of the acquires
+     * fails, the {@link Flux} fails and the {@link PooledRef} already emitted stay with the subscriber, which remains
+     * responsible for releasing them. Concurrent batches can thus each hold part of the resources they need while
+     * waiting for the rest.
+     * <p>
+     * Implementations can offer stronger guarantees, eg. the pools built by {@link PoolBuilder} other than the
+     * {@link PoolBuilder#multiplex(int) multiplexed} ones acquire the whole batch at once or not at all.
+     *
+     * @param n the number of resources to acquire, at least {@code 1}
+     * @return a {@link Flux}, each subscription to which represents an individual act of acquiring {@code n} pooled
+     * objects and manually managing their lifecycle from there on
+     * @see #acquire()
+     */
+    default Flux<PooledRef<POOLABLE>> acquire(int n) {
+        if (n < 1) {
+            return Flux.error(new IllegalArgumentException("n must be >= 1"));
+        }
+        return Flux.range(0, n).flatMap(i -> acquire(), n);
+    }
+
+    /**
+     * Release a batch of {@link PooledRef} previously acquired from this pool upon subscription, as if calling
+     * {@link PooledRef#release()} on each of them. The resulting {@link Mono} completes once all of them have been
+     * released, or fails with the first error once all the releases have terminated.
+     * <p>
+     * Implementations can take advantage of the batch, eg. running the release handlers concurrently and serving
+     * the pending borrowers once for the whole batch. The default implementation simply subscribes to all the
+     * individual {@link PooledRef#release()} at once.
+     *
+     * @param refs the {@link PooledRef} to release
+     * @return a {@link Mono} releasing the whole batch upon subscription
+     */
+    default Mono<Void> releaseAll(Collection<? extends PooledRef<POOLABLE>> refs) {
+        return Mono.defer(() -> {
+            List<Mono<Void>> releases = new ArrayList<>(refs.size());
+            for (PooledRef<POOLABLE> ref : refs) {
+                releases.add(ref.release());
+            }
+            return Mono.whenDelayError(releases);
+        });
+    }
+
     /**
      * Acquire a {@code POOLABLE} object from the pool upon subscription and declaratively use it, automatically releasing
      * the object back to the pool once the derived usage pipeline terminates or is cancelled. This acquire-use-and-release
@@ -77,4 +156,35 @@ public interface Pool<POOLABLE> extends Disposable {
                 PooledRef::release);
     }
 
+    /**
+     * Get a {@link PoolMetrics} view of this pool, which can be polled for the current number of acquired, idle and
+     * pending resources, among other gauges.
+     * <p>
+     * This returns {@code null} only for the {@link Pool} implementations that don't override it, as the default
+     * implementation returns {@code null} so that existing implementations keep compiling. The pools built by
+     * {@link PoolBuilder} always return a {@link PoolMetrics}, so callers need to check for {@code null} only when
+     * handed an arbitrary {@link Pool}.
+     *
+     * @return the {@link PoolMetrics} of this pool, or {@code null} if this {@link Pool} implementation doesn't
+     * override this method
+     */
+    @Nullable
+    default PoolMetrics metrics() {
+        return null;
+    }
+
+    /**
+     * Allocate the initial resources of the pool that haven't been allocated yet, upon subscription. Depending on
+     * the configuration, the allocations are performed concurrently and the resulting {@link Mono} completes once
+     * they are all idle in the pool, emitting the number of resources that were added. Subscribing to it again
+     * retries the allocations that previously failed, and emits {@code 0} once there is nothing left to warm up.
+     * <p>
+     * Implementations that allocate their initial resources on construction return a {@link Mono} of {@code 0}.
+     *
+     * @return a {@link Mono} that allocates the pending initial resources and emits how many were added to the pool
+     */
+    default Mono<Integer> warmup() {
+        return Mono.just(0);
+    }
+
 }
@@ -18,9 +18,12 @@ package reactor.pool;
 import java.time.Duration;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 import org.reactivestreams.Publisher;
 
@@ -28,6 +31,7 @@ import reactor.core.Disposable;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import reactor.util.annotation.Nullable;
 
 /**
  * A builder for {@link Pool}.
@@ -60,14 +64,25 @@ public class PoolBuilder<T> {
 
     boolean                                isThreadAffinity     = true;
     boolean                                isLifo               = false;
+    int                                    maxConcurrentLeases  = 1;
     int                                    initialSize          = 0;
+    int                                    warmupParallelism    = 0;
+    int                                    minIdle              = 0;
+    int                                    maxAllocating        = Integer.MAX_VALUE;
     int                                    maxPending           = -1;
     AllocationStrategy                     allocationStrategy   = AllocationStrategies.UNBOUNDED;
+    //creates a stateful allocationStrategy anew for each built pool, if set
+    @Nullable
+    Supplier<AllocationStrategy>           allocationStrategyFactory = null;
     Function<T, ? extends Publisher<Void>> releaseHandler       = noopHandler();
     Function<T, ? extends Publisher<Void>> destroyHandler       = noopHandler();
     BiPredicate<T, PooledRefMetadata>      evictionPredicate    = neverPredicate();
+    @Nullable
+    ToIntFunction<? super T>               weigher              = null;
     Scheduler                              acquisitionScheduler = Schedulers.immediate();
     PoolMetricsRecorder                    metricsRecorder      = NoOpPoolMetricsRecorder.INSTANCE;
+    Duration                               evictionInterval     = Duration.ZERO;
+    Scheduler                              evictionScheduler    = Schedulers.parallel();
 
     PoolBuilder(Mono<T> allocator) {
         this.allocator = allocator;
@@ -132,7 +147,34 @@ public class PoolBuilder<T> {
     }
 
     /**
-     * How many resources the {@link Pool} should allocate upon creation.
+     * Let each resource be lent to up to {@code maxConcurrentLeases} borrowers at once, eg. for connections that
+     * multiplex concurrent requests. Pending {@link Pool#acquire()} {@link Mono Monos} are served by the least loaded
+     * resource, and a new resource is only allocated once all the live ones are saturated.
+     * <p>
+     * Each {@link PooledRef} is then a distinct lease of the shared resource: the releaseHandler is applied once the
+     * last lease of the resource has been returned, if any of its leases has been released since the previous reset,
+     * and the resource isn't lent in the meantime. A resource that is invalidated through one of its leases is not
+     * lent anymore and is destroyed once its last lease has been returned. Such a pool serves pending borrowers in
+     * FIFO order, and takes precedence over {@link #threadAffinity(boolean) thread affinity} and
+     * {@link #lifo(boolean) LIFO} ordering. Its {@link Pool#acquire(int)} doesn't reserve the batch in a single pass,
+     * but merges individual {@link Pool#acquire()}.
+     * <p>
+     * Defaults to {@code 1}, ie. each resource is lent to a single borrower at a time.
+     *
+     * @param maxConcurrentLeases the maximum number of borrowers that can concurrently hold the same resource
+     * @return a builder of {@link Pool} with multiplexed resources
+     */
+    public PoolBuilder<T> multiplex(int maxConcurrentLeases) {
+        if (maxConcurrentLeases < 1) {
+            throw new IllegalArgumentException("maxConcurrentLeases must be >= 1");
+        }
+        this.maxConcurrentLeases = maxConcurrentLeases;
+        return this;
+    }
+
+    /**
+     * How many resources the {@link Pool} should allocate upon creation, or upon {@link Pool#warmup()} if
+     * {@link #asyncWarmup(int)} is used.
      * This parameter MAY be ignored by some implementations (although they should state so in their documentation).
      * <p>
      * Defaults to {@code 0}.
@@ -148,6 +190,65 @@ public class PoolBuilder<T> {
         return this;
     }
 
+    /**
+     * Defer the allocation of the {@link #initialSize(int) initial resources} to {@link Pool#warmup()}, rather than
+     * sequentially blocking on each of them in the {@link Pool} constructor. Once subscribed, the warmup allocates up
+     * to {@code parallelism} resources concurrently. Note that the initial resources are NOT allocated until
+     * {@link Pool#warmup()} is explicitly subscribed to.
+     * <p>
+     * Defaults to {@code 0}, which allocates the initial resources in the constructor.
+     *
+     * @param parallelism the maximum number of concurrent allocations during {@link Pool#warmup()}
+     * @return this {@link Pool} builder
+     */
+    public PoolBuilder<T> asyncWarmup(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be >= 1");
+        }
+        this.warmupParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * How many idle resources the {@link Pool} should try to maintain ahead of demand. Whenever the number of idle
+     * resources drops below {@code minIdle} (eg. because of acquisitions or evictions), the pool allocates new ones in
+     * the background, as long as the {@link AllocationStrategy} and the
+     * {@link #maxConcurrentAllocations(int) maximum concurrent allocations} permit it. This moves the allocation
+     * latency off the {@link Pool#acquire()} path.
+     * <p>
+     * Defaults to {@code 0}.
+     *
+     * @param minIdle the number of idle resources to maintain
+     * @return this {@link Pool} builder
+     */
+    public PoolBuilder<T> minIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("minIdle must be >= 0");
+        }
+        this.minIdle = minIdle;
+        return this;
+    }
+
+    /**
+     * Limit how many allocations can be in flight at the same time on behalf of {@link Pool#acquire() borrowers},
+     * independently of how many resources the {@link AllocationStrategy} permits overall. Excess borrowers stay
+     * pending until one of the in-flight allocations completes or a resource is released. This prevents a burst
+     * of borrowers on an empty pool from triggering as many simultaneous allocations against the backend.
+     * <p>
+     * The {@link #minIdle(int) minimum idle} allocations also count against that limit, but not the
+     * {@link #initialSize(int) initial} ones. Defaults to no limit.
+     *
+     * @param maxConcurrentAllocations the maximum number of allocations in flight at the same time
+     * @return this {@link Pool} builder
+     */
+    public PoolBuilder<T> maxConcurrentAllocations(int maxConcurrentAllocations) {
+        if (maxConcurrentAllocations < 1) {
+            throw new IllegalArgumentException("maxConcurrentAllocations must be >= 1");
+        }
+        this.maxAllocating = maxConcurrentAllocations;
+        return this;
+    }
+
     /**
      * Limits in how many resources can be allocated and managed by the {@link Pool} are driven by the
      * provided {@link AllocationStrategy}.
@@ -162,6 +263,7 @@ public class PoolBuilder<T> {
      */
     public PoolBuilder<T> allocationStrategy(AllocationStrategy allocationStrategy) {
         this.allocationStrategy = Objects.requireNonNull(allocationStrategy, "allocationStrategy");
+        this.allocationStrategyFactory = null;
         return this;
     }
 
@@ -176,6 +278,78 @@ public class PoolBuilder<T> {
 		return allocationStrategy(new AllocationStrategies.SizeBasedAllocationStrategy(max));
 	}
 
+	/**
+	 * Let the {@link Pool} allocate at most {@code max} resources, like {@link #sizeMax(int)}, but spread the
+	 * permits over per-thread stripes backed by a shared reservoir instead of a single counter. This reduces
+	 * contention when many threads acquire and release concurrently (eg. a {@link #threadAffinity(boolean) thread
+	 * affinity} pool on a host with many cores), at the cost of a less accurate
+	 * {@link AllocationStrategy#estimatePermitCount()}, which ignores the permits cached by other threads unless it
+	 * would otherwise read {@code 0}.
+	 *
+	 * @param max the maximum number of live resources to keep in the pool
+	 * @return this {@link Pool} builder
+	 */
+	public PoolBuilder<T> sizeMaxStriped(int max) {
+		return allocationStrategy(new AllocationStrategies.StripedSizeBasedAllocationStrategy(max));
+	}
+
+	/**
+	 * Let the {@link Pool} allocate at most {@code max} resources, like {@link #sizeMax(int)}, and additionally limit
+	 * the rate of allocations to {@code allocationsPerSecond}, with bursts of up to {@code burst} allocations. This
+	 * protects the backend from a storm of simultaneous allocations, eg. when many pools refill after a failover.
+	 * Borrowers that can't get an allocation permit because of the rate stay pending, and the allocation is retried
+	 * once the next permit is expected, on the {@link #evictInBackground(Duration, Scheduler) eviction Scheduler}.
+	 * <p>
+	 * Note that the {@link #initialSize(int)} is also subject to the rate, so only the first {@code burst} initial
+	 * resources are allocated when the pool is built.
+	 *
+	 * @param max the maximum number of live resources to keep in the pool
+	 * @param allocationsPerSecond the sustained rate of allocations
+	 * @param burst the maximum number of allocations that can be made at once
+	 * @return this {@link Pool} builder
+	 */
+	public PoolBuilder<T> sizeMaxRateLimited(int max, int allocationsPerSecond, int burst) {
+		if (allocationsPerSecond < 1) {
+			throw new IllegalArgumentException("allocationsPerSecond must be >= 1");
+		}
+		return allocationStrategy(new AllocationStrategies.RateLimitedAllocationStrategy(max,
+				TimeUnit.SECONDS.toNanos(1) / allocationsPerSecond, burst));
+	}
+
+	/**
+	 * Let the {@link Pool} allocate between {@code minSize} and {@code maxSize} resources, adapting the actual limit
+	 * to the health of the backend: the limit grows additively while allocations and pending acquires succeed faster
+	 * than the {@code allocationLatencyThreshold}, or when borrowers are pending while all the permits are in use (by
+	 * at most one step per allocation faster than that threshold), and shrinks multiplicatively when allocations fail
+	 * or are slower than that. The limit starts at {@code minSize}.
+	 * <p>
+	 * The strategy is fed from the allocation and pending events of the pool's
+	 * {@link #metricsRecorder(PoolMetricsRecorder)}, which still receives all the events. Shrinking the limit doesn't
+	 * destroy live resources, it only prevents new allocations until enough resources have been discarded. Each
+	 * {@link Pool} built by this builder gets its own limit.
+	 *
+	 * @param minSize the lower bound of the limit, and its initial value
+	 * @param maxSize the upper bound of the limit
+	 * @param allocationLatencyThreshold the allocation latency above which the backend is considered degraded
+	 * @return this {@link Pool} builder
+	 */
+	public PoolBuilder<T> sizeAdaptive(int minSize, int maxSize, Duration allocationLatencyThreshold) {
+		if (minSize < 0) {
+			throw new IllegalArgumentException("minSize must be >= 0");
+		}
+		if (maxSize < minSize) {
+			throw new IllegalArgumentException("maxSize must be >= minSize");
+		}
+		Objects.requireNonNull(allocationLatencyThreshold, "allocationLatencyThreshold");
+		if (allocationLatencyThreshold.isNegative() || allocationLatencyThreshold.isZero()) {
+			throw new IllegalArgumentException("allocationLatencyThreshold must be positive");
+		}
+		long thresholdNanos = allocationLatencyThreshold.toNanos();
+		sizeUnbounded();
+		this.allocationStrategyFactory = () -> new AllocationStrategies.AdaptiveAllocationStrategy(minSize, maxSize, thresholdNanos);
+		return this;
+	}
+
 	/**
 	 * Let the {@link Pool} allocate new resources when no idle resource is available, without limit.
 	 * <p>
@@ -203,6 +377,29 @@ public class PoolBuilder<T> {
         return this;
     }
 
+    /**
+     * Weigh each newly allocated resource, so that the {@link AllocationStrategy} limits the total weight of the live
+     * resources rather than their number: a resource holds as many permits as its weight, which are all returned
+     * once it is destroyed. For example, {@code sizeMax(64 * 1024 * 1024)} combined with a weigher of
+     * {@code ByteBuffer::capacity} caps a pool of buffers to 64MB.
+     * <p>
+     * As the weight is only known once the resource has been allocated, an allocation is started with a single permit
+     * and the rest of the weight is claimed afterwards. If the strategy cannot grant all of it, the resource is still
+     * used and the shortfall is recouped from the permits of the next destroyed resources before they are returned to
+     * the strategy: the total weight can exceed the limit by the weight of the resources allocated while the budget is
+     * nearly exhausted, but no other resource is allocated until it is back under the limit. Weights lower than
+     * {@code 1} count as {@code 1}.
+     * <p>
+     * Defaults to none, ie. each resource holds a single permit.
+     *
+     * @param weigher the {@link ToIntFunction} giving the weight of a resource, in permits
+     * @return this {@link Pool} builder
+     */
+    public PoolBuilder<T> weigher(ToIntFunction<? super T> weigher) {
+        this.weigher = Objects.requireNonNull(weigher, "weigher");
+        return this;
+    }
+
     /**
      * Provide a {@link Function handler} that will derive a destroy {@link Publisher} whenever a resource isn't fit for
      * usage anymore (either through eviction, manual invalidation, or because something went wrong with it).
@@ -223,8 +420,8 @@ public class PoolBuilder<T> {
      * This can happen whenever a resource is {@link PooledRef#release() released} back to the {@link Pool} (after
      * it was processed by the {@link #releaseHandler(Function)}), but also when being {@link Pool#acquire() acquired}
      * from the pool (triggering a second pass if the object is found to be unfit, eg. it has been idle for too long).
-     * Finally, some pool implementations MAY implement a reaper thread mechanism that detect idle resources through
-     * this predicate and destroy them.
+     * Finally, a reaper task can be configured through {@link #evictInBackground(Duration)}, which detects idle
+     * resources through this predicate and destroys them.
      * <p>
      * Defaults to never evicting (a {@link BiPredicate} that always returns false).
      *
@@ -244,7 +441,8 @@ public class PoolBuilder<T> {
      * {@link Duration} (inclusive).
      * Such a predicate could be used to evict too idle objects when next encountered by an {@link Pool#acquire()}.
      *
-     * @param maxIdleTime the {@link Duration} after which an object should not be passed to a borrower, but destroyed (resolution: ms)
+     * @param maxIdleTime the {@link Duration} after which an object should not be passed to a borrower, but destroyed
+     * (resolution: the {@link PoolMetricsRecorder#timeUnit() time unit} of the metrics recorder, ms by default)
      * @return this {@link Pool} builder
      * @see #evictionPredicate(BiPredicate)
      */
@@ -252,6 +450,50 @@ public class PoolBuilder<T> {
         return evictionPredicate(idlePredicate(maxIdleTime));
     }
 
+    /**
+     * Periodically walk the idle resources of the {@link Pool} in the background, every {@code evictionInterval},
+     * and destroy the ones that match the {@link #evictionPredicate(BiPredicate) eviction predicate}. This allows
+     * a quiet pool to get rid of idle or expired resources, without having to wait for the next
+     * {@link Pool#acquire()} to encounter them. The periodic task runs on {@link Schedulers#parallel()}.
+     * <p>
+     * Defaults to {@link Duration#ZERO}, which disables background eviction.
+     *
+     * @param evictionInterval the interval between two background eviction runs, or {@link Duration#ZERO} to disable
+     * @return this {@link Pool} builder
+     * @see #evictInBackground(Duration, Scheduler)
+     */
+    public PoolBuilder<T> evictInBackground(Duration evictionInterval) {
+        return evictInBackground(evictionInterval, Schedulers.parallel());
+    }
+
+    /**
+     * Periodically walk the idle resources of the {@link Pool} in the background, every {@code evictionInterval},
+     * and destroy the ones that match the {@link #evictionPredicate(BiPredicate) eviction predicate}. This allows
+     * a quiet pool to get rid of idle or expired resources, without having to wait for the next
+     * {@link Pool#acquire()} to encounter them. The periodic task runs on the provided {@link Scheduler}, which
+     * MUST support {@link Scheduler#schedulePeriodically(Runnable, long, long, TimeUnit) periodic tasks}.
+     * <p>
+     * That {@link Scheduler} is also used to retry the allocations that the {@link AllocationStrategy} postpones
+     * (see {@link AllocationStrategy#nanosUntilNextPermit()}) and to time out the {@link Pool#acquire(Duration)},
+     * as per its clock, even if background eviction is disabled.
+     * <p>
+     * Defaults to {@link Duration#ZERO}, which disables background eviction.
+     *
+     * @param evictionInterval the interval between two background eviction runs, or {@link Duration#ZERO} to disable
+     * @param reaperTaskScheduler the {@link Scheduler} on which to run the background eviction
+     * @return this {@link Pool} builder
+     * @see #evictInBackground(Duration)
+     */
+    public PoolBuilder<T> evictInBackground(Duration evictionInterval, Scheduler reaperTaskScheduler) {
+        Objects.requireNonNull(evictionInterval, "evictionInterval");
+        if (evictionInterval.isNegative()) {
+            throw new IllegalArgumentException("evictionInterval must be positive or zero");
+        }
+        this.evictionInterval = evictionInterval;
+        this.evictionScheduler = Objects.requireNonNull(reaperTaskScheduler, "reaperTaskScheduler");
+        return this;
+    }
+
     /**
      * Provide a {@link Scheduler} that can optionally be used by a {@link Pool} to deliver its resources in a more
      * deterministic (albeit potentially less efficient) way, thread-wise. Other implementations MAY completely ignore
@@ -284,7 +526,15 @@ public class PoolBuilder<T> {
      * @return the {@link Pool}
      */
     public Pool<T> build() {
+        return buildPool();
+    }
+
+    //exposes the AbstractPool type for the benefit of KeyedPool
+    AbstractPool<T> buildPool() {
         AbstractPool.DefaultPoolConfig<T> config = buildConfig();
+        if (maxConcurrentLeases > 1) {
+            return new MultiplexedPool<>(config);
+        }
         if (isThreadAffinity) {
             return new AffinityPool<>(config);
         }
@@ -296,16 +546,40 @@ public class PoolBuilder<T> {
 
     //kept package-private for the benefit of tests
     AbstractPool.DefaultPoolConfig<T> buildConfig() {
+        AllocationStrategy strategy = allocationStrategyFactory == null ? allocationStrategy : allocationStrategyFactory.get();
+        PoolMetricsRecorder recorder = feedAdaptiveStrategies(strategy, metricsRecorder);
         return new AbstractPool.DefaultPoolConfig<>(allocator,
                 initialSize,
-                allocationStrategy,
+                warmupParallelism,
+                minIdle,
+                maxAllocating,
+                strategy,
                 maxPending,
                 releaseHandler,
                 destroyHandler,
                 evictionPredicate,
                 acquisitionScheduler,
-                metricsRecorder,
-                isLifo);
+                recorder,
+                isLifo,
+                evictionInterval,
+                evictionScheduler,
+                maxConcurrentLeases,
+                weigher);
+    }
+
+    /**
+     * Wrap the {@link PoolMetricsRecorder} so that it feeds the {@link AllocationStrategies.AdaptiveAllocationStrategy}
+     * that the strategy is or is composed of, if any.
+     */
+    static PoolMetricsRecorder feedAdaptiveStrategies(AllocationStrategy strategy, PoolMetricsRecorder recorder) {
+        if (strategy instanceof AllocationStrategies.AdaptiveAllocationStrategy) {
+            return ((AllocationStrategies.AdaptiveAllocationStrategy) strategy).feedFrom(recorder);
+        }
+        if (strategy instanceof AllocationStrategies.CompositeAllocationStrategy) {
+            AllocationStrategies.CompositeAllocationStrategy composite = (AllocationStrategies.CompositeAllocationStrategy) strategy;
+            return feedAdaptiveStrategies(composite.shared, feedAdaptiveStrategies(composite.local, recorder));
+        }
+        return recorder;
     }
 
     @SuppressWarnings("unchecked")
@@ -319,7 +593,7 @@ public class PoolBuilder<T> {
     }
 
     static <T> BiPredicate<T, PooledRefMetadata> idlePredicate(Duration maxIdleTime) {
-        return (poolable, meta) -> meta.idleTime() >= maxIdleTime.toMillis();
+        return (poolable, meta) -> meta.idleTimeNanos() >= maxIdleTime.toNanos();
     }
 
     static final Function<?, Mono<Void>> NOOP_HANDLER    = it -> Mono.empty();
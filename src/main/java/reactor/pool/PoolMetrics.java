@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+/**
+ * A read-only view of the current state of a {@link Pool}, as gauges that are cheap to read (no locking).
+ * The values are point-in-time snapshots that might already be stale when read, and are not consistent with
+ * each other.
+ * <p>
+ * As opposed to {@link PoolMetricsRecorder}, which receives events, this is meant to be polled (eg. for autoscaling
+ * decisions or saturation dashboards).
+ *
+ * @author Simon Baslé
+ * @see Pool#metrics()
+ */
+public interface PoolMetrics {
+
+    /**
+     * Measure the current number of resources that have been successfully {@link Pool#acquire() acquired} and are
+     * in active use.
+     *
+     * @return the number of acquired resources
+     */
+    int acquiredSize();
+
+    /**
+     * Measure the current number of allocated resources in the {@link Pool}, acquired or idle.
+     *
+     * @return the total number of allocated resources managed by the {@link Pool}
+     */
+    int allocatedSize();
+
+    /**
+     * Measure the current number of idle resources in the {@link Pool}.
+     *
+     * @return the number of idle resources
+     */
+    int idleSize();
+
+    /**
+     * Measure the current number of "pending" {@link Pool#acquire() acquire Monos} in the {@link Pool}, waiting
+     * for a resource to become available.
+     *
+     * @return the number of pending acquire
+     */
+    int pendingAcquireSize();
+
+    /**
+     * Estimate how many more resources the {@link AllocationStrategy} of the {@link Pool} currently permits to
+     * allocate, or {@link Integer#MAX_VALUE} if unbounded.
+     *
+     * @return an estimate of the remaining allocation permits
+     * @see AllocationStrategy#estimatePermitCount()
+     */
+    int remainingPermits();
+
+    /**
+     * Get the maximum number of pending {@link Pool#acquire() acquire Monos} the {@link Pool} accepts before
+     * failing them, or {@link Integer#MAX_VALUE} if unbounded.
+     *
+     * @return the maximum number of pending acquire
+     */
+    int maxPendingAcquireSize();
+}
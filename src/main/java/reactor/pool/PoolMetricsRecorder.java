@@ -15,53 +15,117 @@
  */
 package reactor.pool;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * An interface representing ways for {@link Pool} to collect instrumentation data.
  * Some methods are pool-implementation specific.
  * <p>
- * Additionally wraps the concept of a clock, with {@link #now()} to get the current time with milliseconds
- * resolution and {@link #measureTime(long)} to get the elapsed time.
+ * Additionally wraps the concept of a clock, with {@link #now()} to get the current time and {@link #measureTime(long)}
+ * to get the elapsed time. The resolution of that clock is given by {@link #timeUnit()}, which defaults to
+ * milliseconds: all the latencies and durations passed to the {@code record} methods are expressed in that same unit.
  *
  * @author Simon Baslé
  */
 public interface PoolMetricsRecorder {
 
     /**
-     * Get a starting time with milliseconds resolution.
+     * Get a starting time, with a resolution of {@link #timeUnit()}.
      */
     long now();
 
     /**
-     * Get the elapsed time in milliseconds between {@link #now()} and the given starting time.
+     * Get the elapsed time in {@link #timeUnit()} between {@link #now()} and the given starting time.
+     *
+     * @param startTime the starting time initially obtained via {@link #now()}
+     * @return the elapsed time in {@link #timeUnit()}
+     */
+    long measureTime(long startTime);
+
+    /**
+     * The {@link TimeUnit} of this recorder's clock, ie. of the values returned by {@link #now()} and
+     * {@link #measureTime(long)}, and of every latency and duration passed to the {@code record} methods.
+     * Defaults to {@link TimeUnit#MILLISECONDS}.
+     * <p>
+     * A recorder can return {@link TimeUnit#NANOSECONDS} along with a {@link System#nanoTime()} based clock in order
+     * to capture sub-millisecond latencies. {@link PooledRefMetadata#lifeTime()} and {@link PooledRefMetadata#idleTime()}
+     * remain expressed in milliseconds either way.
+     *
+     * @return the {@link TimeUnit} of this recorder's clock
+     */
+    default TimeUnit timeUnit() {
+        return TimeUnit.MILLISECONDS;
+    }
+
+    /**
+     * Indicate that this recorder discards every measurement, which the {@link Pool} checks once at construction
+     * in order to skip reading the clock and calling the {@code record} methods altogether. Defaults to {@code false}.
+     * <p>
+     * The clock is still used to track the {@link PooledRefMetadata#lifeTime() life time} and
+     * {@link PooledRefMetadata#idleTime() idle time} of resources if the pool has an eviction predicate. Otherwise,
+     * neither is tracked and both always read as {@literal 0}.
      *
-     * @param startTimeMillis the starting time initially obtained via {@link #now()}
-     * @return the elapsed time in milliseconds
+     * @return {@code true} if this recorder ignores all the measurements
      */
-    long measureTime(long startTimeMillis);
+    default boolean isNoOp() {
+        return false;
+    }
 
     /**
      * Record a latency for successful allocation. Implies incrementing an allocation success counter as well.
-     * @param latencyMs the latency in milliseconds
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
      */
-    void recordAllocationSuccessAndLatency(long latencyMs);
+    void recordAllocationSuccessAndLatency(long latency);
 
     /**
      * Record a latency for failed allocation. Implies incrementing an allocation failure counter as well.
-     * @param latencyMs the latency in milliseconds
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
+     */
+    void recordAllocationFailureAndLatency(long latency);
+
+    /**
+     * Record the latency of a successful {@link Pool#acquire() acquisition}, ie. the time the borrower waited between
+     * its request and the delivery of a resource. Implies incrementing a pending success counter as well.
+     * <p>
+     * This covers both acquisitions served immediately and the ones that had to wait for a resource to be allocated
+     * or released. Override {@link #recordPendingSuccessAndLatency(long, boolean)} to tell them apart.
+     * Defaults to ignoring the measurement.
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
+     */
+    default void recordPendingSuccessAndLatency(long latency) {
+    }
+
+    /**
+     * Record the latency of a successful {@link Pool#acquire() acquisition}, as the {@link Pool} reports it, telling
+     * apart the acquisitions that took the fast path, ie. were immediately served an idle resource, from the ones
+     * that had to go through the pending borrowers. Defaults to {@link #recordPendingSuccessAndLatency(long)}.
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
+     * @param fastPath {@code true} if the acquisition was served by the fast path
+     */
+    default void recordPendingSuccessAndLatency(long latency, boolean fastPath) {
+        recordPendingSuccessAndLatency(latency);
+    }
+
+    /**
+     * Record the latency of a failed {@link Pool#acquire() acquisition}, ie. the time the borrower waited between
+     * its request and the error (eg. an allocation failure or a timeout). Implies incrementing a pending failure
+     * counter as well. Defaults to ignoring the measurement.
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
      */
-    void recordAllocationFailureAndLatency(long latencyMs);
+    default void recordPendingFailureAndLatency(long latency) {
+    }
 
     /**
      * Record a latency for resetting a resource to a reusable state. Implies incrementing a counter as well.
-     * @param latencyMs the latency in milliseconds
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
      */
-    void recordResetLatency(long latencyMs);
+    void recordResetLatency(long latency);
 
     /**
      * Record a latency for destroying a resource. Implies incrementing a counter as well.
-     * @param latencyMs the latency in milliseconds
+     * @param latency the latency in {@link #timeUnit()}, milliseconds by default
      */
-    void recordDestroyLatency(long latencyMs);
+    void recordDestroyLatency(long latency);
 
     /**
      * Record the fact that a resource was recycled, ie it was reset and tested for reuse.
@@ -69,16 +133,16 @@ public interface PoolMetricsRecorder {
     void recordRecycled();
 
     /**
-     * Record the number of milliseconds a pooled object has been live (ie. time between allocation and destruction).
-     * @param millisecondsSinceAllocation the number of milliseconds since the object was allocated, at the time is is destroyed
+     * Record the time a pooled object has been live (ie. time between allocation and destruction), in {@link #timeUnit()}.
+     * @param timeSinceAllocation the time since the object was allocated, at the time is is destroyed
      */
-    void recordLifetimeDuration(long millisecondsSinceAllocation);
+    void recordLifetimeDuration(long timeSinceAllocation);
 
     /**
-     * Record the number of milliseconds an object had been idle when it gets pulled from the pool and passed to a borrower.
-     * @param millisecondsIdle the number of milliseconds an object that was just acquired had previously been idle.
+     * Record the time an object had been idle when it gets pulled from the pool and passed to a borrower, in {@link #timeUnit()}.
+     * @param idleTime the time an object that was just acquired had previously been idle.
      */
-    void recordIdleTime(long millisecondsIdle);
+    void recordIdleTime(long idleTime);
 
     /**
      * Record the fact that a {@link Pool} has a slow path of recycling and just used it.
@@ -16,6 +16,7 @@
 
 package reactor.pool;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -45,6 +46,17 @@ public interface PooledRefMetadata {
 	 */
 	long lifeTime();
 
+	/**
+	 * Returns the age of the {@link PooledRef}, like {@link #lifeTime()} but in nanoseconds. The actual resolution
+	 * depends on the {@link PoolMetricsRecorder#timeUnit() clock} of the {@link Pool}, and defaults to converting
+	 * {@link #lifeTime()}.
+	 *
+	 * @return the age (time since allocation) of the underlying object in nanoseconds
+	 */
+	default long lifeTimeNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(lifeTime());
+	}
+
 	/**
 	 * Returns the wall-clock number of milliseconds since the reference was last released (or allocated, if it was
 	 * never released). Can be used on resources that are not currently acquired to detect idle resources.
@@ -68,4 +80,16 @@ public interface PooledRefMetadata {
 	 * Another possibility is to use a reaper thread that actively removes idle resources from the available set (but that would need some more synchronization).s
 	 */
 	long idleTime();
+
+	/**
+	 * Returns the time since the reference was last released (or allocated, if it was never released), like
+	 * {@link #idleTime()} but in nanoseconds. The actual resolution depends on the
+	 * {@link PoolMetricsRecorder#timeUnit() clock} of the {@link Pool}, and defaults to converting {@link #idleTime()}.
+	 * A {@link PooledRef} that is currently acquired is required to return {@literal 0L}.
+	 *
+	 * @return the number of nanoseconds since the reference was last released (or allocated, if it was never released)
+	 */
+	default long idleTimeNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(idleTime());
+	}
 }
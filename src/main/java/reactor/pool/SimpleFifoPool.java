@@ -15,11 +15,14 @@
  */
 package reactor.pool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.jctools.queues.MpscLinkedQueue8;
 
+import reactor.core.publisher.Mono;
 import reactor.util.concurrent.Queues;
 
 /**
@@ -41,6 +44,8 @@ final class SimpleFifoPool<POOLABLE> extends SimplePool<POOLABLE> {
     public SimpleFifoPool(DefaultPoolConfig<POOLABLE> poolConfig) {
         super(poolConfig);
         this.pending = new MpscLinkedQueue8<>(); //unbounded MPSC
+        ensureMinIdle();
+        scheduleEvictionInBackground();
     }
 
     @Override
@@ -53,7 +58,13 @@ final class SimpleFifoPool<POOLABLE> extends SimplePool<POOLABLE> {
                 return false;
             }
             else if (PENDING_COUNT.compareAndSet(this, currentPending, currentPending + 1)) {
-                this.pending.offer(pending); //unbounded
+                if (pending.markPending()) {
+                    this.pending.offer(pending); //unbounded
+                }
+                else {
+                    //removed concurrently, eg. timed out
+                    PENDING_COUNT.decrementAndGet(this);
+                }
                 return true;
             }
         }
@@ -62,24 +73,55 @@ final class SimpleFifoPool<POOLABLE> extends SimplePool<POOLABLE> {
     @Override
     Borrower<POOLABLE> pendingPoll() {
         Queue<Borrower<POOLABLE>> q = this.pending;
-        Borrower<POOLABLE> b = q.poll();
-        if (b != null) PENDING_COUNT.decrementAndGet(this);
-        return b;
+        Borrower<POOLABLE> b;
+        while ((b = q.poll()) != null) {
+            if (b.markPolled()) {
+                PENDING_COUNT.decrementAndGet(this);
+                return b;
+            }
+            //otherwise the borrower has been removed and uncounted already, skip it
+        }
+        return null;
+    }
+
+    @Override
+    void pendingPurge() {
+        Queue<Borrower<POOLABLE>> q = this.pending;
+        Borrower<POOLABLE> b;
+        while ((b = q.peek()) != null && b.isRemoved()) {
+            q.poll();
+        }
+    }
+
+    @Override
+    void pendingCompact() {
+        compactPending(this.pending);
     }
 
     @Override
     public void dispose() {
-        @SuppressWarnings("unchecked")
-        Queue<Borrower<POOLABLE>> q = PENDING.getAndSet(this, TERMINATED);
-        if (q != TERMINATED) {
+        disposeLater().block();
+    }
+
+    @Override
+    Mono<Void> disposeLater() {
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked")
+            Queue<Borrower<POOLABLE>> q = PENDING.getAndSet(this, TERMINATED);
+            if (q == TERMINATED) {
+                return Mono.empty();
+            }
+            disposeTasks();
             while(!q.isEmpty()) {
                 q.poll().fail(new RuntimeException("Pool has been shut down"));
             }
 
+            List<Mono<Void>> destroys = new ArrayList<>(elements.size());
             while (!elements.isEmpty()) {
-                destroyPoolable(elements.poll()).block();
+                destroys.add(destroyPoolable(elements.poll()));
             }
-        }
+            return Mono.whenDelayError(destroys);
+        });
     }
 
     @Override
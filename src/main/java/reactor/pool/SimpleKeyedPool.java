@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import reactor.core.publisher.Mono;
+import reactor.util.Logger;
+import reactor.util.Loggers;
+import reactor.util.annotation.Nullable;
+
+/**
+ * The {@link KeyedPool} built by {@link KeyedPoolBuilder}: a map of lazily created per-key {@link AbstractPool},
+ * each of which uses a {@link AllocationStrategies.CompositeAllocationStrategy} so that they draw from the same
+ * shared budget. Budget is reclaimed by closing the least recently used keys that have no acquired resources
+ * and no pending borrowers. Whenever a key gives back budget, the keys with pending borrowers retry their allocation.
+ *
+ * @author Simon Baslé
+ */
+final class SimpleKeyedPool<K, POOLABLE> implements KeyedPool<K, POOLABLE> {
+
+    static final Logger LOGGER = Loggers.getLogger(SimpleKeyedPool.class);
+
+    final KeyedPoolBuilder<K, POOLABLE>  builder;
+    final Map<K, KeyEntry<POOLABLE>>     pools;
+
+    volatile boolean disposed;
+
+    volatile int                                                    rebalanceWip;
+    static final AtomicIntegerFieldUpdater<SimpleKeyedPool> REBALANCE_WIP = AtomicIntegerFieldUpdater.newUpdater(
+            SimpleKeyedPool.class, "rebalanceWip");
+
+    SimpleKeyedPool(KeyedPoolBuilder<K, POOLABLE> builder) {
+        this.builder = builder;
+        this.pools = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public Mono<PooledRef<POOLABLE>> acquire(K key) {
+        return Mono.defer(() -> {
+            if (disposed) {
+                return Mono.error(new RuntimeException("Pool has been shut down"));
+            }
+            KeyEntry<POOLABLE> entry = entryFor(key);
+            if (entry == null) {
+                return Mono.error(new RuntimeException("Pool has been shut down"));
+            }
+            entry.lastUsed = System.nanoTime();
+            AbstractPool<POOLABLE> pool = entry.pool;
+            //counted before looking for budget, so that a key released concurrently either is seen idle here or sees
+            //this key acquiring, see #onRelease()
+            KeyEntry.ACQUIRING.incrementAndGet(entry);
+            if (pool.idleSize() == 0 && builder.sharedStrategy.estimatePermitCount() == 0) {
+                evictLeastRecentlyUsedIdleKey(entry, true);
+            }
+            return pool.acquire()
+                       .<PooledRef<POOLABLE>>map(ref -> new KeyedPooledRef<>(this, ref))
+                       .onErrorResume(e -> pool.isDisposed() && !disposed, e -> acquire(key))
+                       .doFinally(signal -> KeyEntry.ACQUIRING.decrementAndGet(entry));
+        });
+    }
+
+    @Nullable
+    KeyEntry<POOLABLE> entryFor(K key) {
+        for (;;) {
+            KeyEntry<POOLABLE> entry = pools.get(key);
+            if (entry == null) {
+                KeyEntry<POOLABLE> created = new KeyEntry<>(builder.buildPool(key, this::rebalance));
+                entry = pools.putIfAbsent(key, created);
+                if (entry == null) {
+                    if (disposed) {
+                        pools.remove(key, created);
+                        closeKey(created);
+                        return null;
+                    }
+                    evictIdleKeys(created);
+                    return created;
+                }
+                closeKey(created);
+            }
+            if (!entry.pool.isDisposed()) {
+                return entry;
+            }
+            pools.remove(key, entry);
+        }
+    }
+
+    /**
+     * Close the least recently used idle keys in excess of {@link KeyedPoolBuilder#maxIdleKeys(int)}.
+     *
+     * @param exclude the entry that must not be closed, ie. the one being acquired from
+     */
+    void evictIdleKeys(KeyEntry<POOLABLE> exclude) {
+        int idleKeys = 0;
+        for (KeyEntry<POOLABLE> entry : pools.values()) {
+            if (entry != exclude && entry.isIdle()) {
+                idleKeys++;
+            }
+        }
+        while (idleKeys-- > builder.maxIdleKeys) {
+            if (!evictLeastRecentlyUsedIdleKey(exclude, false)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Close the least recently used key that has neither acquired resources nor pending borrowers, which gives
+     * the permits of its idle resources back to the shared budget.
+     *
+     * @param exclude the entry that must not be closed, ie. the one being acquired from
+     * @param holdingBudget true to only consider keys that hold idle resources, ie. that can free some budget
+     * @return true if a key was closed
+     */
+    boolean evictLeastRecentlyUsedIdleKey(KeyEntry<POOLABLE> exclude, boolean holdingBudget) {
+        K lruKey = null;
+        KeyEntry<POOLABLE> lru = null;
+        for (Map.Entry<K, KeyEntry<POOLABLE>> e : pools.entrySet()) {
+            KeyEntry<POOLABLE> entry = e.getValue();
+            if (entry != exclude && entry.isIdle() && (!holdingBudget || entry.pool.idleSize() > 0)
+                    && (lru == null || entry.lastUsed - lru.lastUsed < 0)) {
+                lruKey = e.getKey();
+                lru = entry;
+            }
+        }
+        if (lru != null && pools.remove(lruKey, lru)) {
+            closeKey(lru);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Dispose the pool of a key that has been removed, without blocking: this is called from within acquires and
+     * releases, so the idle resources are destroyed asynchronously. The budget they give back triggers a
+     * {@link #rebalance()}.
+     *
+     * @param entry the removed entry to close
+     */
+    void closeKey(KeyEntry<POOLABLE> entry) {
+        entry.pool.disposeLater()
+                  .subscribe(v -> {}, e -> LOGGER.debug("Failed to destroy the idle resources of a closed key", e));
+    }
+
+    /**
+     * Called each time a resource goes back to one of the per-key pools. If the shared budget is exhausted, the keys
+     * being acquired from might be starved of it, so free some budget from the idle keys.
+     */
+    void onRelease() {
+        if (builder.sharedStrategy.estimatePermitCount() == 0) {
+            rebalance();
+        }
+    }
+
+    /**
+     * Called each time one of the per-key pools gives back permits to the shared budget, or that budget is exhausted
+     * while a resource is released. Let the keys being acquired from retry their allocation, attempting to free some
+     * budget from the idle keys first if there is none left. Closing such a key gives back budget in turn, in which
+     * case the keys are visited once more rather than recursively.
+     */
+    void rebalance() {
+        if (REBALANCE_WIP.getAndIncrement(this) != 0) {
+            return;
+        }
+        int missed = 1;
+        for (;;) {
+            for (KeyEntry<POOLABLE> entry : pools.values()) {
+                if (entry.acquiring > 0) {
+                    if (builder.sharedStrategy.estimatePermitCount() == 0) {
+                        evictLeastRecentlyUsedIdleKey(entry, true);
+                    }
+                    entry.pool.retryAllocation();
+                }
+            }
+
+            missed = REBALANCE_WIP.addAndGet(this, -missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public PoolMetrics metrics(K key) {
+        KeyEntry<POOLABLE> entry = pools.get(key);
+        return entry == null ? null : entry.pool.metrics();
+    }
+
+    @Override
+    public int keyCount() {
+        return pools.size();
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        for (K key : pools.keySet()) {
+            KeyEntry<POOLABLE> entry = pools.remove(key);
+            if (entry != null) {
+                entry.pool.dispose();
+            }
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    static final class KeyEntry<POOLABLE> {
+
+        final AbstractPool<POOLABLE> pool;
+
+        volatile long lastUsed;
+
+        //the acquires in progress on this key, pending or not
+        volatile int                                             acquiring;
+        static final AtomicIntegerFieldUpdater<KeyEntry> ACQUIRING = AtomicIntegerFieldUpdater.newUpdater(
+                KeyEntry.class, "acquiring");
+
+        KeyEntry(AbstractPool<POOLABLE> pool) {
+            this.pool = pool;
+            this.lastUsed = System.nanoTime();
+        }
+
+        boolean isIdle() {
+            return acquiring == 0 && pool.acquiredSize() == 0 && pool.pendingAcquireSize() == 0;
+        }
+    }
+
+    static final class KeyedPooledRef<POOLABLE> implements PooledRef<POOLABLE> {
+
+        final SimpleKeyedPool<?, POOLABLE> keyedPool;
+        final PooledRef<POOLABLE>          delegate;
+
+        KeyedPooledRef(SimpleKeyedPool<?, POOLABLE> keyedPool, PooledRef<POOLABLE> delegate) {
+            this.keyedPool = keyedPool;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public POOLABLE poolable() {
+            return delegate.poolable();
+        }
+
+        @Override
+        public Mono<Void> release() {
+            return delegate.release().doOnTerminate(keyedPool::onRelease);
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            return delegate.invalidate().doOnTerminate(keyedPool::onRelease);
+        }
+
+        @Override
+        public PooledRefMetadata metadata() {
+            return delegate.metadata();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -16,8 +16,12 @@
 
 package reactor.pool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import reactor.core.publisher.Mono;
+
 /**
  * This implementation is based on MPSC queues for idle resources and a {@link TreiberStack}
  * for pending {@link Pool#acquire()} Monos, resulting in serving pending borrowers in LIFO order.
@@ -37,6 +41,8 @@ final class SimpleLifoPool<POOLABLE> extends SimplePool<POOLABLE> {
     public SimpleLifoPool(DefaultPoolConfig<POOLABLE> poolConfig) {
         super(poolConfig);
         this.pending = new TreiberStack<>(); //unbounded
+        ensureMinIdle();
+        scheduleEvictionInBackground();
     }
 
     @Override
@@ -49,7 +55,13 @@ final class SimpleLifoPool<POOLABLE> extends SimplePool<POOLABLE> {
                 return false;
             }
             else if (PENDING_COUNT.compareAndSet(this, currentPending, currentPending + 1)) {
-                this.pending.push(pending); //unbounded
+                if (pending.markPending()) {
+                    this.pending.push(pending); //unbounded
+                }
+                else {
+                    //removed concurrently, eg. timed out
+                    PENDING_COUNT.decrementAndGet(this);
+                }
                 return true;
             }
         }
@@ -58,25 +70,55 @@ final class SimpleLifoPool<POOLABLE> extends SimplePool<POOLABLE> {
     @Override
     Borrower<POOLABLE> pendingPoll() {
         TreiberStack<Borrower<POOLABLE>> q = this.pending;
-        Borrower<POOLABLE> b = q.pop();
-        if (b != null) PENDING_COUNT.decrementAndGet(this);
-        return b;
+        Borrower<POOLABLE> b;
+        while ((b = q.pop()) != null) {
+            if (b.markPolled()) {
+                PENDING_COUNT.decrementAndGet(this);
+                return b;
+            }
+            //otherwise the borrower has been removed and uncounted already, skip it
+        }
+        return null;
+    }
+
+    @Override
+    void pendingPurge() {
+        TreiberStack<Borrower<POOLABLE>> q = this.pending;
+        //noinspection StatementWithEmptyBody
+        while (q.popIf(Borrower::isRemoved) != null) {
+        }
+    }
+
+    @Override
+    void pendingCompact() {
+        this.pending.removeIf(Borrower::isRemoved);
     }
 
     @Override
     public void dispose() {
-        @SuppressWarnings("unchecked")
-        TreiberStack<Borrower<POOLABLE>> q = PENDING.getAndSet(this, TERMINATED);
-        if (q != TERMINATED) {
+        disposeLater().block();
+    }
+
+    @Override
+    Mono<Void> disposeLater() {
+        return Mono.defer(() -> {
+            @SuppressWarnings("unchecked")
+            TreiberStack<Borrower<POOLABLE>> q = PENDING.getAndSet(this, TERMINATED);
+            if (q == TERMINATED) {
+                return Mono.empty();
+            }
+            disposeTasks();
             Borrower<POOLABLE> p;
             while((p = q.pop()) != null) {
                 p.fail(new RuntimeException("Pool has been shut down"));
             }
 
+            List<Mono<Void>> destroys = new ArrayList<>(elements.size());
             while (!elements.isEmpty()) {
-                destroyPoolable(elements.poll()).block();
+                destroys.add(destroyPoolable(elements.poll()));
             }
-        }
+            return Mono.whenDelayError(destroys);
+        });
     }
 
     @Override
@@ -15,8 +15,13 @@
  */
 package reactor.pool;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -27,6 +32,7 @@ import org.reactivestreams.Subscription;
 
 import reactor.core.CoreSubscriber;
 import reactor.core.Scannable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Operators;
 import reactor.core.scheduler.Scheduler;
@@ -45,6 +51,9 @@ import reactor.util.annotation.Nullable;
  *     <li>any thread on which an {@link Pool#acquire()} {@link Mono} was subscribed</li>
  * </ul>
  * For a more deterministic approach, the {@link PoolBuilder#acquisitionScheduler(Scheduler)} property of the builder can be used.
+ * <p>
+ * When no borrower is pending and an idle resource is available, {@link Pool#acquire()} takes a fast path that
+ * doesn't register the borrower in the pending structure.
  *
  * @author Simon Baslé
  */
@@ -63,27 +72,16 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
 
     SimplePool(DefaultPoolConfig<POOLABLE> poolConfig) {
         super(poolConfig, Loggers.getLogger(SimplePool.class));
-        int maxSize = poolConfig.allocationStrategy.estimatePermitCount();
-        if (maxSize == Integer.MAX_VALUE) {
+        int maxSize = poolConfig.allocationStrategy.permitMaximum();
+        //with a weigher, the permits don't bound the number of resources
+        if (maxSize == Integer.MAX_VALUE || poolConfig.weigher != null) {
             this.elements = new MpscLinkedQueue8<>();
         }
         else {
             this.elements = new MpscArrayQueue<>(Math.max(2, maxSize));
         }
 
-        int initSize = poolConfig.allocationStrategy.getPermits(poolConfig.initialSize);
-        for (int i = 0; i < initSize; i++) {
-            long start = metricsRecorder.now();
-            try {
-                POOLABLE poolable = Objects.requireNonNull(poolConfig.allocator.block(), "allocator returned null in constructor");
-                metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
-                elements.offer(new QueuePooledRef<>(this, poolable)); //the pool slot won't access this pool instance until after it has been constructed
-            }
-            catch (Throwable e) {
-                metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
-                throw e;
-            }
-        }
+        initialAllocations();
     }
 
     /**
@@ -98,9 +96,47 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
      */
     abstract boolean pendingOffer(Borrower<POOLABLE> pending);
 
+    /**
+     * Drop the {@link reactor.pool.AbstractPool.Borrower#isRemoved() removed} borrowers at the head of the pending
+     * structure, so that cancelled or timed out borrowers don't accumulate while nothing is polled.
+     * MUST only be called by the thread that currently owns the drain loop.
+     */
+    abstract void pendingPurge();
+
+    /**
+     * Drop all the {@link reactor.pool.AbstractPool.Borrower#isRemoved() removed} borrowers from the pending
+     * structure, wherever they are, once a compaction has been {@link #requestPendingCompaction() requested}.
+     * MUST only be called by the thread that currently owns the drain loop.
+     */
+    abstract void pendingCompact();
+
     @Override
     public Mono<PooledRef<POOLABLE>> acquire() {
-        return new QueueBorrowerMono<>(this); //the mono is unknown to the pool until requested
+        return new QueueBorrowerMono<>(this, Duration.ZERO); //the mono is unknown to the pool until requested
+    }
+
+    @Override
+    public Mono<PooledRef<POOLABLE>> acquire(Duration timeout) {
+        if (isNegativeTimeout(timeout)) {
+            return Mono.error(new IllegalArgumentException("timeout must be >= 0"));
+        }
+        return new QueueBorrowerMono<>(this, timeout); //the mono is unknown to the pool until requested
+    }
+
+    /**
+     * Acquire {@code n} {@code POOLABLE} at once upon subscription. The batch is reserved in a single pass: either
+     * the idle resources and the permits to allocate the rest cover the {@code n} resources, or nothing is reserved
+     * and the batch waits for resources to be released. The resulting {@link Flux} thus emits the {@code n}
+     * {@link PooledRef} then completes, or fails without emitting any of them. Cancelling the
+     * {@link org.reactivestreams.Subscription} translates to a {@link PooledRef#release() release} of the
+     * {@code POOLABLE} that haven't been emitted yet.
+     *
+     * @param n the number of resources to acquire, at least {@code 1}
+     * @return a {@link Flux} acquiring the {@code n} resources at once upon subscription
+     */
+    @Override
+    public Flux<PooledRef<POOLABLE>> acquire(int n) {
+        return batchAcquire(n);
     }
 
     @Override
@@ -110,8 +146,74 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
             return;
         }
 
+        //fast path: nobody is pending so there is no fairness to preserve, try to grab an idle resource directly.
+        //elements is single consumer, so this is only attempted if we can take ownership of the drain loop.
+        if (PENDING_COUNT.get(this) == 0 && WIP.compareAndSet(this, 0, 1)) {
+            QueuePooledRef<POOLABLE> slot = pollIdle();
+            //other threads might have tried to drain in the meantime, in which case we run the loop on their behalf
+            if (WIP.decrementAndGet(this) != 0) {
+                drainLoop();
+            }
+
+            if (slot != null) {
+                ACQUIRED.incrementAndGet(this);
+                if (metricsEnabled) metricsRecorder.recordFastPath();
+                Scheduler s = poolConfig.acquisitionScheduler;
+                if (s == Schedulers.immediate()) {
+                    borrower.deliver(slot, true);
+                }
+                else {
+                    s.schedule(() -> borrower.deliver(slot, true));
+                }
+                ensureMinIdle();
+                return;
+            }
+        }
+
         pendingOffer(borrower);
         drain();
+        ensureMinIdle();
+    }
+
+    /**
+     * Poll the next idle resource, destroying the ones that the eviction predicate rejects along the way.
+     * MUST only be called by the thread that currently owns the drain loop.
+     *
+     * @return an idle resource fit for delivery, or null if none
+     */
+    @Nullable
+    private QueuePooledRef<POOLABLE> pollIdle() {
+        QueuePooledRef<POOLABLE> slot;
+        while ((slot = elements.poll()) != null) {
+            if (!poolConfig.evictionPredicate.test(slot.poolable, slot)) {
+                return slot;
+            }
+            destroyPoolable(slot).subscribe(v -> {}, e -> logger.debug("Failed to destroy an evicted resource", e));
+        }
+        return null;
+    }
+
+    @Override
+    void evictInBackground() {
+        //elements is single consumer, so the reaper needs to take ownership of the drain loop
+        if (WIP.getAndIncrement(this) == 0) {
+            //only look at the elements that are idle at the start of the run, which are re-offered at the tail
+            for (int toTest = elements.size(); toTest > 0 && !isDisposed(); toTest--) {
+                QueuePooledRef<POOLABLE> slot = elements.poll();
+                if (slot == null) {
+                    break;
+                }
+                if (poolConfig.evictionPredicate.test(slot.poolable, slot)) {
+                    destroyPoolable(slot).subscribe(v -> {}, e -> logger.debug("Failed to destroy an evicted resource", e));
+                }
+                else {
+                    elements.offer(slot);
+                }
+            }
+            //serve the borrowers that might have pended in the meantime, and go on allocating if eviction made room
+            drainLoop();
+        }
+        ensureMinIdle();
     }
 
     @Override
@@ -120,27 +222,137 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
     }
 
     @Override
-    int idleSize() {
+    public int idleSize() {
         return elements.size();
     }
 
+    @Override
+    public int acquiredSize() {
+        return ACQUIRED.get(this);
+    }
+
     @SuppressWarnings("WeakerAccess")
     final void maybeRecycleAndDrain(QueuePooledRef<POOLABLE> poolSlot) {
+        if (maybeRecycle(poolSlot)) {
+            drain();
+        }
+    }
+
+    /**
+     * Test a freshly reset {@link QueuePooledRef} against the eviction predicate, then either offer it back to the
+     * idle resources or destroy it, without serving the pending borrowers.
+     *
+     * @param poolSlot the reset {@link QueuePooledRef}
+     * @return true if the pool hasn't been disposed, in which case the caller is expected to {@link #drain()}
+     */
+    private boolean maybeRecycle(QueuePooledRef<POOLABLE> poolSlot) {
         if (!isDisposed()) {
             if (!poolConfig.evictionPredicate.test(poolSlot.poolable, poolSlot)) {
-                metricsRecorder.recordRecycled();
+                if (metricsEnabled) metricsRecorder.recordRecycled();
                 elements.offer(poolSlot);
             }
             else {
                 destroyPoolable(poolSlot).subscribe(); //TODO manage errors?
             }
-            drain();
-        }
-        else {
-            destroyPoolable(poolSlot).subscribe(); //TODO manage errors?
+            return true;
         }
+        destroyPoolable(poolSlot).subscribe(); //TODO manage errors?
+        return false;
+    }
+
+    /**
+     * Release a batch of resources with a single pass of the drain loop: the resources that need no reset are
+     * immediately offered back, the release handlers of the others run concurrently, and the pending borrowers are
+     * served once all of them have terminated. The references that don't come from this pool go through their
+     * regular {@link PooledRef#release()}. Cancelling the returned {@link Mono} doesn't interrupt the releases.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Mono<Void> releaseAll(Collection<? extends PooledRef<POOLABLE>> refs) {
+        return Mono.defer(() -> {
+            List<Mono<Void>> releases = new ArrayList<>();
+            boolean noop = poolConfig.releaseHandler == PoolBuilder.NOOP_HANDLER;
+            for (PooledRef<POOLABLE> ref : refs) {
+                if (!(ref instanceof QueuePooledRef) || ((QueuePooledRef<POOLABLE>) ref).pool != this || isDisposed()) {
+                    releases.add(ref.release());
+                    continue;
+                }
+                QueuePooledRef<POOLABLE> slot = (QueuePooledRef<POOLABLE>) ref;
+                if (noop) {
+                    slot.markReleased();
+                    ACQUIRED.decrementAndGet(this);
+                    if (metricsEnabled) metricsRecorder.recordResetLatency(0L);
+                    maybeRecycle(slot);
+                    continue;
+                }
+                Publisher<Void> cleaner;
+                try {
+                    cleaner = poolConfig.releaseHandler.apply(slot.poolable);
+                }
+                catch (Throwable e) {
+                    ACQUIRED.decrementAndGet(this); //immediately clean up state
+                    slot.markReleased();
+                    releases.add(Mono.error(new IllegalStateException("Couldn't apply cleaner function", e)));
+                    continue;
+                }
+                long start = metricsEnabled ? metricsRecorder.now() : 0L;
+                releases.add(Mono.from(cleaner)
+                                 .doOnSubscribe(s -> slot.markReleased())
+                                 .onErrorResume(e -> {
+                                     ACQUIRED.decrementAndGet(this);
+                                     if (metricsEnabled) metricsRecorder.recordResetLatency(metricsRecorder.measureTime(start));
+                                     destroyPoolable(slot).subscribe(v -> {}, ex -> logger.debug("Failed to destroy a resource that couldn't be reset", ex));
+                                     return Mono.error(e);
+                                 })
+                                 .then(Mono.<Void>fromRunnable(() -> {
+                                     ACQUIRED.decrementAndGet(this);
+                                     if (metricsEnabled) metricsRecorder.recordResetLatency(metricsRecorder.measureTime(start));
+                                     maybeRecycle(slot);
+                                 })));
+            }
+            if (releases.isEmpty()) {
+                drain();
+                return Mono.empty();
+            }
+            //the releases are subscribed independently of the returned Mono, which only signals their termination:
+            //cancelling it mustn't interrupt a reset halfway, which would leak the slot
+            return Mono.create(sink -> {
+                AtomicInteger remaining = new AtomicInteger(releases.size());
+                AtomicReference<Throwable> firstError = new AtomicReference<>();
+                Runnable releaseDone = () -> {
+                    if (remaining.decrementAndGet() == 0) {
+                        drain();
+                        Throwable error = firstError.get();
+                        if (error != null) {
+                            sink.error(error);
+                        }
+                        else {
+                            sink.success();
+                        }
+                    }
+                };
+                for (Mono<Void> release : releases) {
+                    release.subscribe(v -> {}, e -> {
+                        firstError.compareAndSet(null, e);
+                        releaseDone.run();
+                    }, releaseDone);
+                }
+            });
+        });
+    }
+
+    /**
+     * Free the in-flight allocation slot and let the drain loop start the next allocation, if borrowers are still
+     * pending.
+     */
+    @Override
+    void allocationDone() {
+        ALLOCATING.decrementAndGet(this);
+        startBatchAllocations();
+        drain();
     }
 
+    @Override
     void drain() {
         if (WIP.getAndIncrement(this) == 0) {
             drainLoop();
@@ -151,35 +363,52 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
         int missed = 1;
 
         for (;;) {
+            if (PENDING_BATCHES.get(this) > 0) {
+                drainBatches();
+            }
+
             int availableCount = elements.size();
             int pendingCount = PENDING_COUNT.get(this);
             int permits = poolConfig.allocationStrategy.estimatePermitCount();
 
             if (availableCount == 0) {
-                if (pendingCount > 0 && permits > 0) {
-                    final Borrower<POOLABLE> borrower = pendingPoll(); //shouldn't be null
-                    if (borrower == null) {
-                        continue;
-                    }
-                    ACQUIRED.incrementAndGet(this);
-                    if (borrower.get() || poolConfig.allocationStrategy.getPermits(1) != 1) {
-                        ACQUIRED.decrementAndGet(this);
-                        continue;
+                //excess borrowers stay pending until an allocation completes or a resource is released
+                if (pendingCount > 0 && permits == 0) {
+                    scheduleAllocationRetry();
+                }
+                else if (pendingCount > 0 && tryStartAllocation()) {
+                    //the permit is obtained before polling, so that a borrower is never dropped for lack of permit
+                    if (poolConfig.allocationStrategy.getPermits(1) != 1) {
+                        ALLOCATING.decrementAndGet(this);
+                        scheduleAllocationRetry();
                     }
-                    long start = metricsRecorder.now();
-                    Mono<POOLABLE> allocator = poolConfig.allocator;
-                    Scheduler s = poolConfig.acquisitionScheduler;
-                    if (s != Schedulers.immediate())  {
-                        allocator = allocator.publishOn(s);
+                    else {
+                        final Borrower<POOLABLE> borrower = pendingPoll(); //shouldn't be null
+                        if (borrower == null || borrower.get()) {
+                            poolConfig.allocationStrategy.returnPermits(1);
+                            ALLOCATING.decrementAndGet(this);
+                            continue;
+                        }
+                        ACQUIRED.incrementAndGet(this);
+                        long start = metricsEnabled ? metricsRecorder.now() : 0L;
+                        Mono<POOLABLE> allocator = poolConfig.allocator;
+                        Scheduler s = poolConfig.acquisitionScheduler;
+                        if (s != Schedulers.immediate()) {
+                            allocator = allocator.publishOn(s);
+                        }
+                        allocator.subscribe(newInstance -> {
+                                    if (metricsEnabled) metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start));
+                                    borrower.deliver(new QueuePooledRef<>(this, newInstance));
+                                },
+                                e -> {
+                                    if (metricsEnabled) metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
+                                    ACQUIRED.decrementAndGet(this);
+                                    poolConfig.allocationStrategy.returnPermits(1);
+                                    borrower.fail(e);
+                                    allocationDone();
+                                },
+                                this::allocationDone);
                     }
-                    allocator.subscribe(newInstance -> borrower.deliver(new QueuePooledRef<>(this, newInstance)),
-                                    e -> {
-                                        metricsRecorder.recordAllocationFailureAndLatency(metricsRecorder.measureTime(start));
-                                        ACQUIRED.decrementAndGet(this);
-                                        poolConfig.allocationStrategy.returnPermits(1);
-                                        borrower.fail(e);
-                                    },
-                                    () -> metricsRecorder.recordAllocationSuccessAndLatency(metricsRecorder.measureTime(start)));
                 }
             }
             else if (pendingCount > 0) {
@@ -200,9 +429,17 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
                     continue;
                 }
                 ACQUIRED.incrementAndGet(this);
+                if (metricsEnabled) metricsRecorder.recordSlowPath();
                 poolConfig.acquisitionScheduler.schedule(() -> inner.deliver(slot));
             }
 
+            if (pendingCompactionRequested()) {
+                pendingCompact();
+            }
+            else {
+                pendingPurge();
+            }
+
             missed = WIP.addAndGet(this, -missed);
             if (missed == 0) {
                 break;
@@ -210,13 +447,52 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
         }
     }
 
+    /**
+     * Serve the pending batches in order, each in a single pass: take as many idle resources as possible, then get
+     * the permits to allocate the rest. If the permits fall short, the idle resources are put back and the batch
+     * keeps waiting, along with the ones behind it.
+     * MUST only be called by the thread that currently owns the drain loop.
+     */
+    private void drainBatches() {
+        BatchBorrower<POOLABLE> batch;
+        while ((batch = peekPendingBatch()) != null) {
+            List<QueuePooledRef<POOLABLE>> idle = new ArrayList<>(Math.min(batch.size, elements.size()));
+            QueuePooledRef<POOLABLE> slot;
+            while (idle.size() < batch.size && (slot = pollIdle()) != null) {
+                idle.add(slot);
+            }
+            int toAllocate = batch.size - idle.size();
+            if (!tryReserveBatchPermits(toAllocate)) {
+                for (QueuePooledRef<POOLABLE> ref : idle) {
+                    elements.offer(ref);
+                }
+                return;
+            }
+            removePendingBatch(batch);
+            ACQUIRED.addAndGet(this, batch.size);
+            startBatch(batch, idle, toAllocate, newInstance -> new QueuePooledRef<>(this, newInstance),
+                    () -> ACQUIRED.decrementAndGet(this));
+        }
+    }
+
     static final class QueuePooledRef<T> extends AbstractPooledRef<T> {
 
         final SimplePool<T> pool;
 
+        //pre-built when there is no reset to perform, so that releasing doesn't allocate
+        @Nullable
+        final QueuePoolNoopRecyclerMono<T> noopRecycler;
+
+        //armed by each call to release() when using the noopRecycler, which recycles at most once per arming
+        volatile int noopReleaseArmed;
+        static final AtomicIntegerFieldUpdater<QueuePooledRef> NOOP_RELEASE_ARMED = AtomicIntegerFieldUpdater.newUpdater(
+                QueuePooledRef.class, "noopReleaseArmed");
+
         QueuePooledRef(SimplePool<T> pool, T poolable) {
-            super(poolable, pool.metricsRecorder);
+            super(poolable, pool, pool.chargeWeight(poolable));
             this.pool = pool;
+            this.noopRecycler = pool.poolConfig.releaseHandler == PoolBuilder.NOOP_HANDLER ?
+                    new QueuePoolNoopRecyclerMono<>(this) : null;
         }
 
         @Override
@@ -227,6 +503,12 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
                 return pool.destroyPoolable(this);
             }
 
+            QueuePoolNoopRecyclerMono<T> noop = this.noopRecycler;
+            if (noop != null) {
+                NOOP_RELEASE_ARMED.set(this, 1);
+                return noop;
+            }
+
             Publisher<Void> cleaner;
             try {
                 cleaner = pool.poolConfig.releaseHandler.apply(poolable);
@@ -253,15 +535,17 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
     static final class QueueBorrowerMono<T> extends Mono<PooledRef<T>> {
 
         final SimplePool<T> parent;
+        final Duration      acquireTimeout;
 
-        QueueBorrowerMono(SimplePool<T> pool) {
+        QueueBorrowerMono(SimplePool<T> pool, Duration acquireTimeout) {
             this.parent = pool;
+            this.acquireTimeout = acquireTimeout;
         }
 
         @Override
         public void subscribe(CoreSubscriber<? super PooledRef<T>> actual) {
             Objects.requireNonNull(actual, "subscribing with null");
-            Borrower<T> borrower = new Borrower<>(actual, parent);
+            Borrower<T> borrower = new Borrower<>(actual, parent, acquireTimeout);
             actual.onSubscribe(borrower);
         }
     }
@@ -291,7 +575,7 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
             if (Operators.validate(upstream, s)) {
                 this.upstream = s;
                 actual.onSubscribe(this);
-                this.start = pool.metricsRecorder.now();
+                this.start = pool.metricsEnabled ? pool.metricsRecorder.now() : 0L;
             }
         }
 
@@ -316,7 +600,7 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
             }
 
             //TODO should we separate reset errors?
-            pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
+            if (pool.metricsEnabled) pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
 
             pool.destroyPoolable(slot).subscribe(); //TODO manage errors?
             pool.drain();
@@ -338,7 +622,7 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
                 ACQUIRED.decrementAndGet(pool);
             }
 
-            pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
+            if (pool.metricsEnabled) pool.metricsRecorder.recordResetLatency(pool.metricsRecorder.measureTime(start));
 
             pool.maybeRecycleAndDrain(slot);
             actual.onComplete();
@@ -372,6 +656,40 @@ abstract class SimplePool<POOLABLE> extends AbstractPool<POOLABLE> {
         }
     }
 
+    /**
+     * A {@link Mono} that recycles a {@link QueuePooledRef} for which there is no reset to perform (the releaseHandler
+     * is the default NO-OP one). It is built once per {@link QueuePooledRef} and reused for each release, avoiding
+     * allocations on the release path.
+     */
+    private static final class QueuePoolNoopRecyclerMono<T> extends Mono<Void> implements Scannable {
+
+        final QueuePooledRef<T> slot;
+
+        QueuePoolNoopRecyclerMono(QueuePooledRef<T> slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void subscribe(CoreSubscriber<? super Void> actual) {
+            QueuePooledRef<T> slot = this.slot;
+            if (QueuePooledRef.NOOP_RELEASE_ARMED.compareAndSet(slot, 1, 0)) {
+                SimplePool<T> pool = slot.pool;
+                slot.markReleased();
+                ACQUIRED.decrementAndGet(pool);
+                if (pool.metricsEnabled) pool.metricsRecorder.recordResetLatency(0L);
+                pool.maybeRecycleAndDrain(slot);
+            }
+            Operators.complete(actual);
+        }
+
+        @Override
+        @Nullable
+        public Object scanUnsafe(Attr key) {
+            if (key == Attr.PREFETCH) return Integer.MAX_VALUE;
+            return null;
+        }
+    }
+
     private static final class QueuePoolRecyclerMono<T> extends Mono<Void> implements Scannable {
 
         final Publisher<Void> source;
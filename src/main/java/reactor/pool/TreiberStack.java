@@ -17,6 +17,7 @@
 package reactor.pool;
 
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
 import reactor.util.annotation.NonNull;
 import reactor.util.annotation.Nullable;
@@ -43,6 +44,11 @@ class TreiberStack<T> {
 				return null;
 			}
 
+			@Override
+			public T popIf(Predicate<? super T> predicate) {
+				return null;
+			}
+
 			@Override
 			public int size() {
 				return 0;
@@ -95,6 +101,54 @@ class TreiberStack<T> {
 		return oldHead.item;
 	}
 
+	/**
+	 * Pop the top of the stack only if it matches the given {@link Predicate}.
+	 *
+	 * @param predicate the {@link Predicate} the top of the stack must match to be popped
+	 * @return the popped item, or null if the stack is empty or its top doesn't match
+	 */
+	@Nullable
+	public T popIf(Predicate<? super T> predicate) {
+		Node<T> oldHead;
+		for(;;) {
+			oldHead = top;
+			if (oldHead == null || !predicate.test(oldHead.item)) {
+				return null;
+			}
+			if (TOP.compareAndSet(this, oldHead, oldHead.next)) {
+				size--;
+				return oldHead.item;
+			}
+		}
+	}
+
+	/**
+	 * Unlink all the items that match the given {@link Predicate}, wherever they are in the stack. This is safe
+	 * with concurrent {@link #push(Object) pushes}, but MUST NOT run concurrently with pops.
+	 *
+	 * @param predicate the {@link Predicate} the items to remove match
+	 */
+	public void removeIf(Predicate<? super T> predicate) {
+		//noinspection StatementWithEmptyBody
+		while (popIf(predicate) != null) {
+		}
+		//the nodes below the top are only ever unlinked by the pops, so these can be walked safely
+		Node<T> previous = top;
+		if (previous == null) {
+			return;
+		}
+		Node<T> node;
+		while ((node = previous.next) != null) {
+			if (predicate.test(node.item)) {
+				previous.next = node.next;
+				size--;
+			}
+			else {
+				previous = node;
+			}
+		}
+	}
+
 	public int size() {
 		return size;
 	}
@@ -15,6 +15,7 @@
  */
 package reactor.pool;
 
+import java.lang.ref.WeakReference;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
@@ -49,6 +50,7 @@ import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.pool.AbstractPool.DefaultPoolConfig;
 import reactor.pool.TestUtils.PoolableTest;
+import reactor.test.publisher.TestPublisher;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
@@ -171,6 +173,318 @@ class AffinityPoolTest {
         }
     }
 
+    @Test
+    void subPoolIsCachedPerThread() throws InterruptedException, ExecutionException {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                      .threadAffinity(true)
+                                                                      .sizeMax(2)
+                                                                      .buildConfig());
+            assertThat(pool.currentSubPool()).as("before acquire").isNull();
+
+            pool.acquire().block().release().block();
+            AffinityPool.SubPool<String> subPool = pool.currentSubPool();
+            assertThat(subPool).as("after acquire").isNotNull();
+            assertThat(pool.pools).as("registered").containsValue(subPool);
+
+            pool.acquire().block().release().block();
+            assertThat(pool.currentSubPool()).as("same thread reuses the slot").isSameAs(subPool);
+            assertThat(pool.pools).as("no new SubPool").hasSize(1);
+
+            AffinityPool.SubPool<String> otherSubPool = other.submit(() -> {
+                pool.acquire().block().release().block();
+                return pool.currentSubPool();
+            }).get();
+            assertThat(otherSubPool).as("other thread").isNotNull().isNotSameAs(subPool);
+            assertThat(pool.pools).hasSize(2);
+
+            pool.dispose();
+            assertThat(pool.currentSubPool()).as("after dispose").isNull();
+        }
+        finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    void disposedPoolNotRetainedByThreadCachedSubPool() {
+        WeakReference<AffinityPool<String>> poolRef = acquireReleaseAndDispose();
+
+        await().atMost(5, TimeUnit.SECONDS)
+               .pollInterval(50, TimeUnit.MILLISECONDS)
+               .untilAsserted(() -> {
+                   System.gc();
+                   assertThat(poolRef.get()).as("pool collected").isNull();
+               });
+    }
+
+    private static WeakReference<AffinityPool<String>> acquireReleaseAndDispose() {
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                  .threadAffinity(true)
+                                                                  .sizeMax(1)
+                                                                  .buildConfig());
+        pool.acquire().block().release().block();
+        assertThat(pool.currentSubPool()).as("SubPool cached for this thread").isNotNull();
+        pool.dispose();
+        return new WeakReference<>(pool);
+    }
+
+    @Test
+    void subPoolsOfDeadThreadsAreReclaimed() throws InterruptedException {
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                  .threadAffinity(true)
+                                                                  .sizeMax(1)
+                                                                  .buildConfig());
+        for (int i = 0; i < 4 * AffinityPool.RECLAIM_INTERVAL; i++) {
+            Thread t = new Thread(() -> pool.acquire().block().release().block());
+            t.start();
+            t.join();
+        }
+        assertThat(pool.pools.size()).as("reclaimed every few registrations")
+                                     .isLessThanOrEqualTo(AffinityPool.RECLAIM_INTERVAL);
+
+        pool.acquire().block().release().block();
+        pool.reclaimDeadSubPools();
+        assertThat(pool.pools).as("only the live thread").hasSize(1)
+                              .containsKey(Thread.currentThread().getId());
+    }
+
+    @Test
+    void subPoolOfDeadThreadKeptWhileBorrowerPending() throws InterruptedException {
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                  .threadAffinity(true)
+                                                                  .sizeMax(1)
+                                                                  .buildConfig());
+        PooledRef<String> held = pool.acquire().block();
+        assertThat(held).isNotNull();
+
+        AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+        Thread t = new Thread(() -> pool.acquire().subscribe(pending::set));
+        t.start();
+        t.join();
+        assertThat(pool.pendingAcquireSize()).as("pending from dead thread").isOne();
+
+        pool.reclaimDeadSubPools();
+        assertThat(pool.pools).as("dead thread SubPool kept").hasSize(2);
+
+        held.release().block();
+        assertThat(pending.get()).as("pending served").isNotNull();
+
+        pool.reclaimDeadSubPools();
+        assertThat(pool.pools).as("dead thread SubPool reclaimed").hasSize(1)
+                              .containsKey(Thread.currentThread().getId());
+    }
+
+    @Test
+    void lifoSubPoolOfDeadThreadKeptWhileBorrowerPending() throws InterruptedException {
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                  .threadAffinity(true)
+                                                                  .lifo(true)
+                                                                  .sizeMax(1)
+                                                                  .buildConfig());
+        AtomicReference<PooledRef<String>> held = new AtomicReference<>();
+        AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+        Thread t = new Thread(() -> {
+            //each release looks for a pending borrower in the still empty stack of this thread's SubPool
+            for (int i = 0; i < 3; i++) {
+                pool.acquire().block().release().block();
+            }
+            held.set(pool.acquire().block());
+            pool.acquire().subscribe(pending::set);
+        });
+        t.start();
+        t.join();
+        assertThat(held.get()).as("held").isNotNull();
+        assertThat(pool.pendingAcquireSize()).as("pending from dead thread").isOne();
+
+        pool.reclaimDeadSubPools();
+        assertThat(pool.pools).as("dead thread SubPool kept").hasSize(1)
+                              .containsKey(t.getId());
+
+        held.get().release().block();
+        assertThat(pending.get()).as("pending served").isNotNull();
+    }
+
+    @Test
+    void synchronousAllocationsServePendingBorrowersWithoutRecursion() {
+        TestPublisher<String> firstAllocation = TestPublisher.create();
+        AtomicInteger allocated = new AtomicInteger();
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.defer(() -> allocated.incrementAndGet() == 1
+                                                                          ? firstAllocation.mono()
+                                                                          : Mono.just("foo")))
+                                                                  .maxConcurrentAllocations(1)
+                                                                  .buildConfig());
+        AtomicInteger served = new AtomicInteger();
+        pool.acquire().subscribe(ref -> served.incrementAndGet());
+        //the first allocation holds the only in-flight slot, so these borrowers pend
+        for (int i = 0; i < 10_000; i++) {
+            pool.acquire().subscribe(ref -> served.incrementAndGet());
+        }
+        assertThat(pool.pendingAcquireSize()).as("pending").isEqualTo(10_000);
+
+        //each allocation now completes synchronously and starts the next one
+        firstAllocation.emit("foo");
+
+        assertThat(served).as("all served").hasValue(10_001);
+        assertThat(pool.pendingAcquireSize()).as("pending after").isZero();
+    }
+
+    @Test
+    void allocationDoneServesBorrowerPendingOnAnotherThread() throws InterruptedException, ExecutionException {
+        ExecutorService threadA = Executors.newSingleThreadExecutor();
+        ExecutorService threadB = Executors.newSingleThreadExecutor();
+        TestPublisher<String> firstAllocation = TestPublisher.create();
+        AtomicInteger allocated = new AtomicInteger();
+        try {
+            AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.defer(() -> allocated.incrementAndGet() == 1
+                                                                              ? firstAllocation.mono()
+                                                                              : Mono.just("bar")))
+                                                                      .maxConcurrentAllocations(1)
+                                                                      .buildConfig());
+            AtomicReference<String> servedA = new AtomicReference<>();
+            AtomicReference<String> servedB = new AtomicReference<>();
+            threadA.submit(() -> pool.acquire().subscribe(ref -> servedA.set(ref.poolable()))).get();
+            //the allocation of thread A holds the only in-flight slot, so the borrower of thread B pends
+            threadB.submit(() -> pool.acquire().subscribe(ref -> servedB.set(ref.poolable()))).get();
+            assertThat(pool.pendingAcquireSize()).as("pending").isOne();
+
+            //the allocation completes on thread A, whose SubPool has no pending borrower
+            threadA.submit(() -> firstAllocation.emit("foo")).get();
+
+            assertThat(servedA.get()).as("thread A").isEqualTo("foo");
+            assertThat(servedB.get()).as("thread B").isEqualTo("bar");
+            assertThat(pool.pendingAcquireSize()).as("pending after").isZero();
+        }
+        finally {
+            threadA.shutdownNow();
+            threadB.shutdownNow();
+        }
+    }
+
+    @Test
+    void idleResourceStaysOnReleasingThread() throws InterruptedException, ExecutionException {
+        ExecutorService thread1 = Executors.newSingleThreadExecutor();
+        ExecutorService thread2 = Executors.newSingleThreadExecutor();
+        AtomicInteger allocated = new AtomicInteger();
+        try {
+            AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+                                                                      .threadAffinity(true)
+                                                                      .sizeMax(2)
+                                                                      .buildConfig());
+            PooledRef<String> ref1 = thread1.submit(() -> pool.acquire().block()).get();
+            PooledRef<String> ref2 = thread2.submit(() -> pool.acquire().block()).get();
+            thread1.submit(() -> ref1.release().block()).get();
+            thread2.submit(() -> ref2.release().block()).get();
+
+            assertThat(pool.idleSize()).as("idle").isEqualTo(2);
+            assertThat(pool.availableElements).as("cached per thread, not shared").isEmpty();
+
+            for (int i = 0; i < 10; i++) {
+                assertThat(thread1.submit(() -> {
+                    PooledRef<String> ref = pool.acquire().block();
+                    ref.release().block();
+                    return ref.poolable();
+                }).get()).as("thread1 round " + i).isEqualTo(ref1.poolable());
+                assertThat(thread2.submit(() -> {
+                    PooledRef<String> ref = pool.acquire().block();
+                    ref.release().block();
+                    return ref.poolable();
+                }).get()).as("thread2 round " + i).isEqualTo(ref2.poolable());
+            }
+            assertThat(allocated).as("no extra allocation").hasValue(2);
+        }
+        finally {
+            thread1.shutdownNow();
+            thread2.shutdownNow();
+        }
+    }
+
+    @Test
+    void idleResourceCachedOnOtherThreadIsStolen() throws InterruptedException, ExecutionException {
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        AtomicInteger allocated = new AtomicInteger();
+        try {
+            AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+                                                                      .threadAffinity(true)
+                                                                      .sizeMax(2)
+                                                                      .buildConfig());
+            other.submit(() -> pool.acquire().block().release().block()).get();
+            assertThat(pool.localIdle).as("cached on other thread").isOne();
+
+            PooledRef<String> ref = pool.acquire().block();
+
+            assertThat(ref).isNotNull();
+            assertThat(ref.poolable()).as("stolen").isEqualTo("foo1");
+            assertThat(allocated).as("no extra allocation").hasValue(1);
+            assertThat(pool.idleSize()).as("idle").isZero();
+        }
+        finally {
+            other.shutdownNow();
+        }
+    }
+
+    @Test
+    void subPoolsSnapshotFollowsRegistrations() throws InterruptedException {
+        AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                  .threadAffinity(true)
+                                                                  .sizeMax(1)
+                                                                  .buildConfig());
+        assertThat(pool.subPools).as("initially").isEmpty();
+
+        pool.acquire().block().release().block();
+        assertThat(pool.subPools).as("after acquire").containsExactly(pool.currentSubPool());
+
+        Thread t = new Thread(() -> pool.acquire().block().release().block());
+        t.start();
+        t.join();
+        assertThat(pool.subPools).as("with other thread").hasSize(2);
+
+        pool.reclaimDeadSubPools();
+        assertThat(pool.subPools).as("after reclaim").containsExactly(pool.currentSubPool());
+
+        pool.dispose();
+        assertThat(pool.subPools).as("after dispose").isEmpty();
+    }
+
+    @Test
+    void slowPathStartsFromRandomSubPool() throws InterruptedException, ExecutionException {
+        int threadCount = 4;
+        ExecutorService[] threads = new ExecutorService[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = Executors.newSingleThreadExecutor();
+        }
+        try {
+            Map<String, Integer> firstServed = new HashMap<>();
+            for (int round = 0; round < 20; round++) {
+                AffinityPool<String> pool = new AffinityPool<>(PoolBuilder.from(Mono.just("foo"))
+                                                                          .threadAffinity(true)
+                                                                          .sizeMax(1)
+                                                                          .buildConfig());
+                PooledRef<String> held = pool.acquire().block();
+                assertThat(held).isNotNull();
+
+                AtomicReference<String> winner = new AtomicReference<>();
+                for (int i = 0; i < threadCount; i++) {
+                    String name = "thread" + i;
+                    threads[i].submit(() -> pool.acquire().subscribe(ref -> winner.compareAndSet(null, name), e -> {})).get();
+                }
+                assertThat(pool.pendingAcquireSize()).isEqualTo(threadCount);
+
+                held.release().block();
+                assertThat(winner.get()).as("served in round " + round).isNotNull();
+                firstServed.merge(winner.get(), 1, Integer::sum);
+                pool.dispose();
+            }
+            assertThat(firstServed.size()).as("distinct SubPools served first: " + firstServed).isGreaterThan(1);
+        }
+        finally {
+            for (ExecutorService thread : threads) {
+                thread.shutdownNow();
+            }
+        }
+    }
+
     @Nested
     @DisplayName("Tests around the acquire() manual mode of acquiring")
     @SuppressWarnings("ClassCanBeStatic")
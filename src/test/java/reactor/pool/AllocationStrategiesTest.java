@@ -19,6 +19,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.junit.jupiter.api.DisplayName;
@@ -29,11 +31,15 @@ import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import reactor.pool.AllocationStrategies.AdaptiveAllocationStrategy;
+import reactor.pool.AllocationStrategies.RateLimitedAllocationStrategy;
 import reactor.pool.AllocationStrategies.SizeBasedAllocationStrategy;
+import reactor.pool.AllocationStrategies.StripedSizeBasedAllocationStrategy;
 import reactor.util.Logger;
 import reactor.util.Loggers;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * @author Simon Baslé
@@ -250,6 +256,326 @@ class AllocationStrategiesTest {
         }
     }
 
+    @DisplayName("allocatingMaxStriped")
+    @Nested
+    class AllocatingMaxStripedTest {
+
+        @Test
+        void zeroMaxGivesOnePermit() {
+            AllocationStrategy test = new StripedSizeBasedAllocationStrategy(0, 4);
+
+            assertThat(test.estimatePermitCount()).isOne();
+        }
+
+        @Test
+        void getPermitsDesired() {
+            AllocationStrategy test = new StripedSizeBasedAllocationStrategy(10, 4);
+
+            assertThat(test.getPermits(100)).as("desired 100").isEqualTo(10);
+            assertThat(test.getPermits(1)).as("desired 1 more").isZero();
+            assertThat(test.estimatePermitCount()).isZero();
+        }
+
+        @Test
+        void getPermitDesiredZeroOrNegative() {
+            AllocationStrategy test = new StripedSizeBasedAllocationStrategy(1, 4);
+
+            assertThat(test.getPermits(0)).as("zero").isZero();
+            assertThat(test.getPermits(-1)).as("negative").isZero();
+        }
+
+        @Test
+        void batchCachedInStripeCountsTowardsEstimate() {
+            StripedSizeBasedAllocationStrategy test = new StripedSizeBasedAllocationStrategy(100, 2);
+
+            assertThat(test.batch).as("batch").isGreaterThan(1);
+            assertThat(test.getPermits(1)).isOne();
+            assertThat(test.reservoir).as("reservoir").isEqualTo(100 - test.batch);
+            assertThat(test.estimatePermitCount()).as("estimate").isEqualTo(99);
+        }
+
+        @Test
+        void stealsPermitsCachedInOtherStripes() throws InterruptedException {
+            StripedSizeBasedAllocationStrategy test = new StripedSizeBasedAllocationStrategy(100, 2);
+            int[] gotByOther = new int[1];
+            Thread other = new Thread(() -> {
+                //leaves a batch minus one permits cached in the other thread's stripe
+                gotByOther[0] = test.getPermits(1);
+            });
+            other.start();
+            other.join();
+
+            assertThat(gotByOther[0]).isOne();
+            assertThat(test.getPermits(1000)).as("remaining permits").isEqualTo(99);
+            assertThat(test.estimatePermitCount()).isZero();
+        }
+
+        @Test
+        void estimateReadsOtherStripesOnlyWhenLocalOnesAreEmpty() throws InterruptedException {
+            StripedSizeBasedAllocationStrategy test = new StripedSizeBasedAllocationStrategy(100, 2);
+            int[] otherStripe = new int[1];
+            Thread other = new Thread(() -> {
+                otherStripe[0] = test.stripeIndex();
+                test.getPermits(1);
+            });
+            other.start();
+            other.join();
+            assumeTrue(otherStripe[0] != test.stripeIndex(), "threads mapped to distinct stripes");
+            int cachedByOther = test.batch - 1;
+
+            assertThat(test.estimatePermitCount()).as("reservoir only").isEqualTo(99 - cachedByOther);
+
+            assertThat(test.getPermits(99 - cachedByOther)).isEqualTo(99 - cachedByOther);
+            assertThat(test.reservoir).as("reservoir").isZero();
+            assertThat(test.estimatePermitCount()).as("cached by other thread").isEqualTo(cachedByOther);
+        }
+
+        @Test
+        void returnPermitsSpillsToReservoir() {
+            StripedSizeBasedAllocationStrategy test = new StripedSizeBasedAllocationStrategy(100, 2);
+
+            assertThat(test.getPermits(100)).isEqualTo(100);
+            test.returnPermits(100);
+
+            assertThat(test.reservoir).as("reservoir").isEqualTo(100 - test.batch);
+            assertThat(test.estimatePermitCount()).as("estimate").isEqualTo(100);
+        }
+
+        @ParameterizedTest(name = "{0} workers")
+        @ValueSource(ints = {5, 10, 20})
+        @Tag("race")
+        void racePermitsRandomNeverExceedsMax(int workerCount) throws InterruptedException {
+            final AllocationStrategy test = new StripedSizeBasedAllocationStrategy(10, 8);
+
+            AtomicInteger inUse = new AtomicInteger();
+            AtomicInteger maxInUse = new AtomicInteger();
+            LongAdder counter = new LongAdder();
+            CountDownLatch latch = new CountDownLatch(100_000);
+            ExecutorService es = Executors.newFixedThreadPool(workerCount);
+
+            for (int i = 0; i < 100_000; i++) {
+                es.submit(() -> {
+                    int got = test.getPermits(ThreadLocalRandom.current().nextInt(1, 4));
+                    int current = inUse.addAndGet(got);
+                    maxInUse.accumulateAndGet(current, Math::max);
+                    counter.add(got);
+                    inUse.addAndGet(-got);
+                    test.returnPermits(got);
+                    latch.countDown();
+                });
+            }
+
+            assertThat(latch.await(10, TimeUnit.SECONDS)).as("latch").isTrue();
+            es.shutdown();
+
+            assertThat(counter.sum()).as("permits acquired").isPositive();
+            assertThat(maxInUse.get()).as("max permits in use").isLessThanOrEqualTo(10);
+            assertThat(test.estimatePermitCount()).as("end permit count estimate").isBetween(1, 10);
+            assertThat(test.getPermits(1000)).as("end permit count").isEqualTo(10);
+        }
+    }
+
+    @DisplayName("rateLimited")
+    @Nested
+    class RateLimitedTest {
+
+        final long interval = TimeUnit.MILLISECONDS.toNanos(50);
+
+        @Test
+        void burstIsGrantedAtOnce() {
+            AllocationStrategy test = new RateLimitedAllocationStrategy(10, interval, 3);
+
+            assertThat(test.estimatePermitCount()).as("estimate").isEqualTo(3);
+            assertThat(test.getPermits(5)).as("burst").isEqualTo(3);
+            assertThat(test.getPermits(1)).as("rate limited").isZero();
+            assertThat(test.nanosUntilNextPermit()).as("next permit").isBetween(1L, interval);
+        }
+
+        @Test
+        void tokensRefillAtRate() throws InterruptedException {
+            AllocationStrategy test = new RateLimitedAllocationStrategy(10, interval, 1);
+
+            assertThat(test.getPermits(1)).as("first").isOne();
+            assertThat(test.getPermits(1)).as("second immediately").isZero();
+
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(test.nanosUntilNextPermit()) + 10);
+
+            assertThat(test.getPermits(1)).as("second after interval").isOne();
+        }
+
+        @Test
+        void sizeLimitStillApplies() {
+            AllocationStrategy test = new RateLimitedAllocationStrategy(2, interval, 5);
+
+            assertThat(test.getPermits(5)).as("capped by max").isEqualTo(2);
+            assertThat(test.estimatePermitCount()).as("estimate").isZero();
+            assertThat(test.nanosUntilNextPermit()).as("only refilled by returns").isZero();
+        }
+
+        @Test
+        void returnPermitsOnlyRefundsSize() {
+            AllocationStrategy test = new RateLimitedAllocationStrategy(2, interval, 2);
+
+            assertThat(test.getPermits(2)).isEqualTo(2);
+            test.returnPermits(2);
+
+            assertThat(test.getPermits(2)).as("tokens not refunded").isZero();
+            assertThat(test.estimatePermitCount()).as("estimate").isZero();
+        }
+    }
+
+    @DisplayName("adaptive")
+    @Nested
+    class AdaptiveTest {
+
+        final long threshold = TimeUnit.MILLISECONDS.toNanos(100);
+
+        @Test
+        void startsAtMinSize() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(2, 10, threshold);
+
+            assertThat(test.estimatePermitCount()).isEqualTo(2);
+            assertThat(test.getPermits(5)).as("capped by limit").isEqualTo(2);
+            assertThat(test.getPermits(1)).as("none left").isZero();
+        }
+
+        @Test
+        void growsAdditivelyOnFastAllocations() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(2, 4, threshold);
+
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("after 1 success").isEqualTo(2);
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("after 2 successes").isEqualTo(3);
+
+            for (int i = 0; i < 100; i++) {
+                test.onAllocationSuccess(1);
+            }
+            assertThat(test.limit).as("capped by maxSize").isEqualTo(4);
+        }
+
+        @Test
+        void growsOnDemandAtTheLimit() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(4, 5, threshold);
+
+            assertThat(test.getPermits(3)).isEqualTo(3);
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("not grown below the limit").isEqualTo(4);
+
+            assertThat(test.getPermits(1)).isOne();
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("grown once all the permits are in use").isEqualTo(5);
+
+            assertThat(test.getPermits(1)).isOne();
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("capped by maxSize").isEqualTo(5);
+        }
+
+        @Test
+        void nextPermitQueryDoesntGrow() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(2, 10, threshold);
+
+            assertThat(test.nanosUntilNextPermit()).as("permit available").isOne();
+            assertThat(test.getPermits(2)).isEqualTo(2);
+            for (int i = 0; i < 10; i++) {
+                assertThat(test.nanosUntilNextPermit()).as("no permit").isZero();
+            }
+            assertThat(test.limit).as("not grown by queries").isEqualTo(2);
+        }
+
+        @Test
+        void slowAllocationDoesntGrowOnDemand() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(2, 10, threshold);
+            assertThat(test.getPermits(2)).isEqualTo(2);
+
+            test.onAllocationSuccess(threshold + 1);
+
+            assertThat(test.limit).as("not grown on demand").isEqualTo(2);
+            assertThat(test.nanosUntilNextPermit()).as("no permit").isZero();
+        }
+
+        @Test
+        void demandDoesntGrowWhileBackingOff() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(1, 10, threshold);
+            test.limit = 4;
+            assertThat(test.getPermits(4)).isEqualTo(4);
+
+            test.onAllocationFailure();
+            assertThat(test.limit).as("halved").isEqualTo(2);
+
+            test.onAllocationSuccess(1);
+            assertThat(test.limit).as("not grown while backing off").isEqualTo(2);
+        }
+
+        @Test
+        void growsOnFastPendingAcquires() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(2, 10, threshold);
+
+            test.onPendingSuccess(threshold + 1);
+            test.onPendingSuccess(threshold + 1);
+            assertThat(test.limit).as("slow acquires neither grow nor shrink").isEqualTo(2);
+
+            test.onPendingSuccess(1);
+            test.onPendingSuccess(1);
+            assertThat(test.limit).as("grown").isEqualTo(3);
+        }
+
+        @Test
+        void shrinksMultiplicativelyOnFailure() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(1, 100, threshold);
+            test.limit = 80;
+
+            test.onAllocationFailure();
+            assertThat(test.limit).as("halved").isEqualTo(40);
+        }
+
+        @Test
+        void shrinksOnSlowAllocationAtMostOncePerThreshold() throws InterruptedException {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(10, 100, threshold);
+            test.limit = 80;
+
+            test.onAllocationSuccess(threshold + 1);
+            test.onAllocationSuccess(threshold + 1);
+            assertThat(test.limit).as("single decrease in burst").isEqualTo(40);
+
+            Thread.sleep(150);
+            test.onAllocationFailure();
+            test.onAllocationFailure();
+            assertThat(test.limit).as("halved again").isEqualTo(20);
+        }
+
+        @Test
+        void lowerLimitDoesntGoBelowPermitsInUse() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(1, 10, threshold);
+            test.limit = 8;
+            assertThat(test.getPermits(8)).isEqualTo(8);
+
+            test.onAllocationFailure();
+
+            assertThat(test.estimatePermitCount()).as("no permit").isZero();
+            test.returnPermits(5);
+            assertThat(test.estimatePermitCount()).as("after return").isOne();
+        }
+
+        @Test
+        void feedingRecorderForwardsAndFeeds() {
+            AdaptiveAllocationStrategy test = new AdaptiveAllocationStrategy(1, 10, threshold);
+            TestUtils.InMemoryPoolMetrics delegate = new TestUtils.InMemoryPoolMetrics();
+            PoolMetricsRecorder recorder = test.feedFrom(delegate);
+
+            recorder.recordAllocationSuccessAndLatency(1);
+            assertThat(test.limit).as("limit grown").isEqualTo(2);
+            assertThat(delegate.getAllocationSuccessCount()).as("forwarded").isOne();
+
+            recorder.recordAllocationFailureAndLatency(1);
+            assertThat(test.limit).as("limit shrunk").isOne();
+            assertThat(delegate.getAllocationErrorCount()).as("failure forwarded").isOne();
+
+            recorder.recordPendingSuccessAndLatency(1);
+            assertThat(test.limit).as("limit grown by pending acquire").isEqualTo(2);
+        }
+    }
+
     @DisplayName("unbounded")
     @Nested
     @SuppressWarnings("ClassCanBeStatic")
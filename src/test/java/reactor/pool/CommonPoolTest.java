@@ -26,6 +26,7 @@ import java.util.FormatterClosedException;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -39,6 +40,8 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import reactor.core.Disposable;
 import reactor.core.Disposables;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.SignalType;
 import reactor.core.scheduler.Scheduler;
@@ -46,6 +49,7 @@ import reactor.core.scheduler.Schedulers;
 import reactor.pool.TestUtils.PoolableTest;
 import reactor.test.StepVerifier;
 import reactor.test.publisher.TestPublisher;
+import reactor.test.scheduler.VirtualTimeScheduler;
 import reactor.test.util.RaceTestUtils;
 import reactor.test.util.TestLogger;
 import reactor.util.Loggers;
@@ -122,10 +126,29 @@ public class CommonPoolTest {
 		};
 	}
 
+	static final <T> Function<PoolBuilder<T>, AbstractPool<T>> multiplexedPool() {
+		return new Function<PoolBuilder<T>, AbstractPool<T>>() {
+			@Override
+			public AbstractPool<T> apply(PoolBuilder<T> builder) {
+				//a single lease per resource, so that the pool can be held to the same expectations as the others
+				return new MultiplexedPool<>(builder.buildConfig());
+			}
+
+			@Override
+			public String toString() {
+				return "multiplexedPool";
+			}
+		};
+	}
+
 	static <T> List<Function<PoolBuilder<T>, AbstractPool<T>>> allPools() {
 		return Arrays.asList(simplePoolFifo(), simplePoolLifo(), affinityPoolFifo(), affinityPoolLifo());
 	}
 
+	static <T> List<Function<PoolBuilder<T>, AbstractPool<T>>> allPoolsAndMultiplexed() {
+		return Arrays.asList(simplePoolFifo(), simplePoolLifo(), affinityPoolFifo(), affinityPoolLifo(), multiplexedPool());
+	}
+
 	static <T> List<Function<PoolBuilder<T>, AbstractPool<T>>> fifoPools() {
 		return Arrays.asList(simplePoolFifo(), affinityPoolFifo());
 	}
@@ -576,10 +599,11 @@ public class CommonPoolTest {
 
 		assertThat(releasedCount).as("before returning").hasValue(0);
 
-		//release the element, which should forward to the cancelled second acquire, itself also cleaning
+		//release the element, which isn't forwarded to the cancelled second acquire since it has been removed
 		slot.release().block();
 
-		assertThat(releasedCount).as("after returning").hasValue(2);
+		assertThat(releasedCount).as("after returning").hasValue(1);
+		assertThat(pool.acquire().block()).as("recycled").isNotNull();
 	}
 
 
@@ -606,10 +630,11 @@ public class CommonPoolTest {
 
 		assertThat(releasedCount).as("before returning").hasValue(0);
 
-		//release the element, which should forward to the cancelled second acquire, itself also cleaning
+		//release the element, which isn't forwarded to the cancelled second acquire since it has been removed
 		slot.release().block();
 
-		assertThat(releasedCount).as("after returning").hasValue(2);
+		assertThat(releasedCount).as("after returning").hasValue(1);
+		assertThat(pool.acquire().block()).as("recycled").isNotNull();
 	}
 
 
@@ -726,6 +751,39 @@ public class CommonPoolTest {
 		}
 	}
 
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void pendingLimitFreedByCancellation(Function<PoolBuilder<Integer>, AbstractPool<Integer>> configAdjuster) {
+		AtomicInteger allocatorCount = new AtomicInteger();
+		PoolBuilder<Integer> builder = PoolBuilder.from(Mono.fromCallable(allocatorCount::incrementAndGet))
+		                                          .sizeMax(1)
+		                                          .initialSize(1)
+		                                          .maxPendingAcquire(1);
+		AbstractPool<Integer> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<Integer> hold = pool.acquire().block();
+			assertThat(hold).isNotNull();
+
+			Disposable cancelled = pool.acquire().subscribe();
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending before cancel").isOne();
+
+			cancelled.dispose();
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending after cancel").isZero();
+
+			AtomicReference<Object> live = new AtomicReference<>();
+			pool.acquire().subscribe(live::set, live::set);
+			assertThat(live.get()).as("live pending not rejected").isNull();
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending live").isOne();
+
+			hold.release().block();
+			assertThat(live.get()).as("live pending served").isInstanceOf(PooledRef.class);
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending after release").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
 	@ParameterizedTest
 	@MethodSource("allPools")
 	void pendingLimitAsync(Function<PoolBuilder<Integer>, AbstractPool<Integer>> configAdjuster) {
@@ -775,223 +833,1265 @@ public class CommonPoolTest {
 
 	@ParameterizedTest
 	@MethodSource("allPools")
-	void cleanerFunctionError(Function<PoolBuilder<PoolableTest>, Pool<PoolableTest>> configAdjuster) {
+	void noopReleaseReusesRecyclerAndRecyclesOnce(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
 		PoolBuilder<PoolableTest> builder = PoolBuilder
 				.from(Mono.fromCallable(PoolableTest::new))
-				.sizeMax(1)
-				.releaseHandler(poolableTest -> Mono.fromRunnable(() -> {
-					poolableTest.clean();
-					throw new IllegalStateException("boom");
-				}))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+				.initialSize(1)
+				.sizeMax(1);
 
-		Pool<PoolableTest> pool = configAdjuster.apply(builder);
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
 
 		PooledRef<PoolableTest> slot = pool.acquire().block();
-
 		assertThat(slot).isNotNull();
 
-		StepVerifier.create(slot.release())
-		            .verifyErrorMessage("boom");
-	}
-
-	@ParameterizedTest
-	@MethodSource("allPools")
-	void cleanerFunctionErrorDiscards(Function<PoolBuilder<PoolableTest>, Pool<PoolableTest>> configAdjuster) {
-		PoolBuilder<PoolableTest> builder = PoolBuilder
-				.from(Mono.fromCallable(PoolableTest::new))
-				.sizeMax(1)
-				.releaseHandler(poolableTest -> Mono.fromRunnable(() -> {
-					poolableTest.clean();
-					throw new IllegalStateException("boom");
-				}))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
-
-		Pool<PoolableTest> pool = configAdjuster.apply(builder);
+		Mono<Void> firstRelease = slot.release();
+		firstRelease.block();
+		firstRelease.block();
 
-		PooledRef<PoolableTest> slot = pool.acquire().block();
+		assertThat(pool.idleSize()).as("recycled once").isOne();
 
-		assertThat(slot).isNotNull();
+		PooledRef<PoolableTest> reacquired = pool.acquire().block();
+		assertThat(reacquired).isNotNull();
+		assertThat(reacquired.poolable()).isSameAs(slot.poolable());
 
-		StepVerifier.create(slot.release())
-		            .verifyErrorMessage("boom");
+		Mono<Void> secondRelease = reacquired.release();
+		assertThat(secondRelease).as("recycler reused").isSameAs(firstRelease);
+		secondRelease.block();
 
-		assertThat(slot.poolable().discarded).as("discarded despite cleaner error").isEqualTo(1);
+		assertThat(pool.idleSize()).as("recycled again").isOne();
+		assertThat(pool.acquire().block()).as("still acquirable").isNotNull();
 	}
 
-
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void disposingPoolDisposesElements(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
-		AtomicInteger cleanerCount = new AtomicInteger();
-
+	@MethodSource("allPoolsAndMultiplexed")
+	void evictInBackgroundDestroysIdleResources(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicBoolean evictAll = new AtomicBoolean();
 		PoolBuilder<PoolableTest> builder = PoolBuilder
 				.from(Mono.fromCallable(PoolableTest::new))
+				.initialSize(3)
 				.sizeMax(3)
-				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+				.evictionPredicate((poolable, metadata) -> evictAll.get())
+				.evictInBackground(Duration.ofMillis(10));
 
 		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> acquired = pool.acquire().block();
+			assertThat(acquired).isNotNull();
+			assertThat(pool.idleSize()).as("idle before eviction").isEqualTo(2);
 
-		PoolableTest pt1 = new PoolableTest(1);
-		PoolableTest pt2 = new PoolableTest(2);
-		PoolableTest pt3 = new PoolableTest(3);
+			evictAll.set(true);
 
-		pool.elementOffer(pt1);
-		pool.elementOffer(pt2);
-		pool.elementOffer(pt3);
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(pool.idleSize()).as("idle after eviction").isZero());
+			assertThat(acquired.poolable().discarded).as("acquired resource untouched").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
 
-		pool.dispose();
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void evictInBackgroundReturnsPermits(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		AtomicBoolean evictAll = new AtomicBoolean();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> new PoolableTest(allocated.incrementAndGet())))
+				.sizeMax(1)
+				.evictionPredicate((poolable, metadata) -> evictAll.get() && poolable.id == 1)
+				.evictInBackground(Duration.ofMillis(10));
 
-		assertThat(pool.idleSize()).as("idleSize").isZero();
-		assertThat(cleanerCount).as("recycled elements").hasValue(0);
-		assertThat(pt1.isDisposed()).as("pt1 disposed").isTrue();
-		assertThat(pt2.isDisposed()).as("pt2 disposed").isTrue();
-		assertThat(pt3.isDisposed()).as("pt3 disposed").isTrue();
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> first = pool.acquire().block();
+			assertThat(first).isNotNull();
+			first.release().block();
+			evictAll.set(true);
+
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(first.poolable().discarded).as("evicted resource destroyed").isOne());
+			assertThat(pool.idleSize()).as("idle after eviction").isZero();
+
+			PooledRef<PoolableTest> second = pool.acquire().block(Duration.ofSeconds(1));
+			assertThat(second).isNotNull();
+			assertThat(second.poolable().id).as("fresh resource").isEqualTo(2);
+		}
+		finally {
+			pool.dispose();
+		}
 	}
 
 	@ParameterizedTest
 	@MethodSource("allPools")
-	void disposingPoolFailsPendingBorrowers(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
-		AtomicInteger cleanerCount = new AtomicInteger();
+	void evictInBackgroundHonoursSubMillisecondInterval(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+		AtomicInteger runs = new AtomicInteger();
 		PoolBuilder<PoolableTest> builder = PoolBuilder
 				.from(Mono.fromCallable(PoolableTest::new))
-				.sizeMax(3)
-				.initialSize(3)
-				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+				.initialSize(1)
+				.evictionPredicate((poolable, metadata) -> runs.incrementAndGet() < 0)
+				.evictInBackground(Duration.ofNanos(250_000), vts);
 
 		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			vts.advanceTimeBy(Duration.ofMillis(1));
 
-		PooledRef<PoolableTest> slot1 = pool.acquire().block();
-		PooledRef<PoolableTest> slot2 = pool.acquire().block();
-		PooledRef<PoolableTest> slot3 = pool.acquire().block();
-		assertThat(slot1).as("slot1").isNotNull();
-		assertThat(slot2).as("slot2").isNotNull();
-		assertThat(slot3).as("slot3").isNotNull();
-
-		PoolableTest acquired1 = slot1.poolable();
-		PoolableTest acquired2 = slot2.poolable();
-		PoolableTest acquired3 = slot3.poolable();
+			assertThat(runs).as("eviction runs").hasValue(4);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
 
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void disposeStopsEvictionInBackground(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.evictInBackground(Duration.ofSeconds(10));
 
-		AtomicReference<Throwable> borrowerError = new AtomicReference<>();
-		Mono<PooledRef<PoolableTest>> pendingBorrower = pool.acquire();
-		pendingBorrower.subscribe(v -> fail("unexpected value " + v),
-				borrowerError::set);
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		assertThat(pool.evictionTask.isDisposed()).as("scheduled").isFalse();
 
 		pool.dispose();
 
-		assertThat(pool.idleSize()).as("idleSize").isZero();
-		assertThat(cleanerCount).as("recycled elements").hasValue(0);
-		assertThat(acquired1.isDisposed()).as("acquired1 held").isFalse();
-		assertThat(acquired2.isDisposed()).as("acquired2 held").isFalse();
-		assertThat(acquired3.isDisposed()).as("acquired3 held").isFalse();
-		assertThat(borrowerError.get()).hasMessage("Pool has been shut down");
+		assertThat(pool.evictionTask.isDisposed()).as("disposed").isTrue();
 	}
 
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void releasingToDisposedPoolDisposesElement(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
-		AtomicInteger cleanerCount = new AtomicInteger();
+	@MethodSource("allPoolsAndMultiplexed")
+	void asyncWarmupAllocatesInParallel(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocating = new AtomicInteger();
+		AtomicInteger maxAllocating = new AtomicInteger();
 		PoolBuilder<PoolableTest> builder = PoolBuilder
-				.from(Mono.fromCallable(PoolableTest::new))
-				.sizeMax(3)
-				.initialSize(3)
-				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+				.from(Mono.defer(() -> {
+					maxAllocating.accumulateAndGet(allocating.incrementAndGet(), Math::max);
+					return Mono.delay(Duration.ofMillis(50))
+					           .map(i -> {
+						           allocating.decrementAndGet();
+						           return new PoolableTest();
+					           });
+				}))
+				.initialSize(10)
+				.sizeMax(12)
+				.asyncWarmup(4);
+
 		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			assertThat(pool.idleSize()).as("nothing allocated in constructor").isZero();
 
-		PooledRef<PoolableTest> slot1 = pool.acquire().block();
-		PooledRef<PoolableTest> slot2 = pool.acquire().block();
-		PooledRef<PoolableTest> slot3 = pool.acquire().block();
+			StepVerifier.create(pool.warmup())
+			            .expectNext(10)
+			            .expectComplete()
+			            .verify(Duration.ofSeconds(5));
 
-		assertThat(slot1).as("slot1").isNotNull();
-		assertThat(slot2).as("slot2").isNotNull();
-		assertThat(slot3).as("slot3").isNotNull();
+			assertThat(pool.idleSize()).as("idle after warmup").isEqualTo(10);
+			assertThat(maxAllocating).as("concurrent allocations").hasValue(4);
+			assertThat(pool.warmup().block()).as("nothing left to warm up").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
 
-		pool.dispose();
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void asyncWarmupRetriesFailedAllocations(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> {
+					if (allocated.incrementAndGet() % 2 == 0) {
+						throw new IllegalStateException("boom");
+					}
+					return new PoolableTest();
+				}))
+				.initialSize(4)
+				.sizeMax(4)
+				.asyncWarmup(1);
 
-		assertThat(pool.idleSize()).as("idleSize").isZero();
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			StepVerifier.create(pool.warmup())
+			            .expectError()
+			            .verify(Duration.ofSeconds(5));
 
-		slot1.release().block();
-		slot2.release().block();
-		slot3.release().block();
+			assertThat(pool.idleSize()).as("successful allocations are idle").isEqualTo(2);
 
-		assertThat(cleanerCount).as("recycled elements").hasValue(0);
-		assertThat(slot1.poolable().isDisposed()).as("acquired1 disposed").isTrue();
-		assertThat(slot2.poolable().isDisposed()).as("acquired2 disposed").isTrue();
-		assertThat(slot3.poolable().isDisposed()).as("acquired3 disposed").isTrue();
+			assertThat(pool.warmup().onErrorReturn(-1).block()).isEqualTo(-1);
+			assertThat(pool.idleSize()).as("retried failed allocations").isEqualTo(3);
+			assertThat(pool.warmup().block()).as("last retry").isEqualTo(1);
+			assertThat(pool.idleSize()).as("fully warmed up").isEqualTo(4);
+		}
+		finally {
+			pool.dispose();
+		}
 	}
 
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void acquiringFromDisposedPoolFailsBorrower(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
-		AtomicInteger cleanerCount = new AtomicInteger();
+	@MethodSource("allPoolsAndMultiplexed")
+	void asyncWarmupKeepsUngrantedPermitsForNextWarmup(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
 		PoolBuilder<PoolableTest> builder = PoolBuilder
 				.from(Mono.fromCallable(PoolableTest::new))
+				.initialSize(3)
 				.sizeMax(3)
-				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
-		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+				.asyncWarmup(1);
 
-		assertThat(pool.idleSize()).as("idleSize").isZero();
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> ref1 = pool.acquire().block();
+			PooledRef<PoolableTest> ref2 = pool.acquire().block();
+			assertThat(ref1).isNotNull();
+			assertThat(ref2).isNotNull();
 
-		pool.dispose();
+			assertThat(pool.warmup().block()).as("only one permit left").isOne();
 
-		StepVerifier.create(pool.acquire())
-		            .verifyErrorMessage("Pool has been shut down");
+			ref1.invalidate().block();
+			ref2.invalidate().block();
 
-		assertThat(cleanerCount).as("recycled elements").hasValue(0);
+			assertThat(pool.warmup().block()).as("warms up the rest once permits are back").isEqualTo(2);
+			assertThat(pool.idleSize()).as("fully warmed up").isEqualTo(3);
+			assertThat(pool.warmup().block()).as("nothing left to warm up").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
 	}
 
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void poolIsDisposed(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+	@MethodSource("allPoolsAndMultiplexed")
+	void asyncWarmupServesPendingBorrowers(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
 		PoolBuilder<PoolableTest> builder = PoolBuilder
-				.from(Mono.fromCallable(PoolableTest::new))
-				.sizeMax(3)
-				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
-		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+				.from(Mono.delay(Duration.ofMillis(100)).map(i -> new PoolableTest()))
+				.initialSize(1)
+				.sizeMax(1)
+				.asyncWarmup(1);
 
-		assertThat(pool.isDisposed()).as("not yet disposed").isFalse();
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			Mono<Integer> warmup = pool.warmup().cache();
+			warmup.subscribe();
+
+			//the warmup holds the only permit, so this borrower has to pend
+			AtomicReference<PooledRef<PoolableTest>> pending = new AtomicReference<>();
+			pool.acquire().subscribe(pending::set);
+			assertThat(pending.get()).as("pending").isNull();
+
+			assertThat(warmup.block(Duration.ofSeconds(5))).isOne();
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(pending.get()).as("served by warmup").isNotNull());
+			assertThat(pool.idleSize()).as("idle").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
 
-		pool.dispose();
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void minIdleAllocatesAheadOfDemand(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> new PoolableTest(allocated.incrementAndGet())))
+				.minIdle(2)
+				.sizeMax(3);
 
-		assertThat(pool.isDisposed()).as("disposed").isTrue();
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			assertThat(pool.idleSize()).as("idle on construction").isEqualTo(2);
+
+			PooledRef<PoolableTest> first = pool.acquire().block();
+			assertThat(first).isNotNull();
+			assertThat(first.poolable().id).as("served from idle").isLessThanOrEqualTo(2);
+			assertThat(pool.idleSize()).as("refilled within permits").isEqualTo(2);
+			assertThat(allocated).as("allocated").hasValue(3);
+
+			PooledRef<PoolableTest> second = pool.acquire().block();
+			assertThat(second).isNotNull();
+			assertThat(pool.idleSize()).as("no permit left to refill").isOne();
+			assertThat(allocated).as("allocated").hasValue(3);
+		}
+		finally {
+			pool.dispose();
+		}
 	}
 
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void disposingPoolClosesCloseable(Function<PoolBuilder<Formatter>, AbstractPool<Formatter>> configAdjuster) {
-		Formatter uniqueElement = new Formatter();
+	@MethodSource("allPoolsAndMultiplexed")
+	void minIdleRefillsAfterInvalidate(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> new PoolableTest(allocated.incrementAndGet())))
+				.minIdle(2)
+				.sizeMax(2);
 
-		PoolBuilder<Formatter> builder = PoolBuilder
-				.from(Mono.just(uniqueElement))
-				.sizeMax(1)
-				.initialSize(1)
-				.evictionPredicate((poolable, metadata) -> true);
-		AbstractPool<Formatter> pool = configAdjuster.apply(builder);
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> first = pool.acquire().block();
+			PooledRef<PoolableTest> second = pool.acquire().block();
+			assertThat(first).isNotNull();
+			assertThat(second).isNotNull();
+			assertThat(pool.idleSize()).as("no permit left to refill").isZero();
 
-		pool.dispose();
+			first.invalidate().block();
 
-		assertThatExceptionOfType(FormatterClosedException.class)
-				.isThrownBy(uniqueElement::flush);
+			assertThat(allocated).as("replacement allocated").hasValue(3);
+			assertThat(pool.idleSize()).as("idle after refill").isOne();
+		}
+		finally {
+			pool.dispose();
+		}
 	}
 
 	@ParameterizedTest
-	@MethodSource("allPools")
-	void allocatorErrorOutsideConstructorIsPropagated(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+	@MethodSource("allPoolsAndMultiplexed")
+	void minIdleCountsAgainstMaxConcurrentAllocations(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger subscribed = new AtomicInteger();
 		PoolBuilder<String> builder = PoolBuilder
-				.from(Mono.<String>error(new IllegalStateException("boom")))
-				.sizeMax(1)
-				.initialSize(0)
-				.evictionPredicate((poolable, metadata) -> true);
-		AbstractPool<String> pool = configAdjuster.apply(builder);
+				.from(Mono.<String>never().doOnSubscribe(s -> subscribed.incrementAndGet()))
+				.minIdle(3)
+				.maxConcurrentAllocations(1);
 
-		assertThatExceptionOfType(IllegalStateException.class)
-				.isThrownBy(pool.acquire()::block)
-				.withMessage("boom");
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+		try {
+			assertThat(subscribed).as("allocations in flight").hasValue(1);
+			assertThat(AbstractPool.ALLOCATING.get(pool)).as("allocating").isOne();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void minIdleRefillsAfterEvictionInBackground(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		AtomicBoolean evictFirst = new AtomicBoolean();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> new PoolableTest(allocated.incrementAndGet())))
+				.minIdle(1)
+				.sizeMax(1)
+				.evictionPredicate((poolable, metadata) -> evictFirst.get() && poolable.id == 1)
+				.evictInBackground(Duration.ofMillis(10));
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			assertThat(pool.idleSize()).as("idle on construction").isOne();
+
+			evictFirst.set(true);
+
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(allocated).as("replacement allocated").hasValue(2));
+			assertThat(pool.idleSize()).as("idle after refill").isOne();
+			PooledRef<PoolableTest> ref = pool.acquire().block();
+			assertThat(ref).isNotNull();
+			assertThat(ref.poolable().id).as("replacement acquired").isEqualTo(2);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void maxConcurrentAllocationsLimitsAllocationsInFlight(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocating = new AtomicInteger();
+		AtomicInteger maxAllocating = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.defer(() -> {
+					maxAllocating.accumulateAndGet(allocating.incrementAndGet(), Math::max);
+					return Mono.delay(Duration.ofMillis(20))
+					           .map(i -> {
+						           allocating.decrementAndGet();
+						           return new PoolableTest();
+					           });
+				}))
+				.sizeMax(10)
+				.maxConcurrentAllocations(2);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			List<PooledRef<PoolableTest>> acquired = Flux.range(0, 8)
+			                                             .flatMap(i -> pool.acquire())
+			                                             .collectList()
+			                                             .block(Duration.ofSeconds(5));
+
+			assertThat(acquired).as("all borrowers served").hasSize(8);
+			assertThat(maxAllocating).as("allocations in flight").hasValue(2);
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(pool.allocating).as("no allocation left in flight").isZero());
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void maxConcurrentAllocationsServesWaitingBorrowerOnRelease(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.defer(() -> allocated.incrementAndGet() == 1 ?
+						Mono.just(new PoolableTest(1)) :
+						Mono.<PoolableTest>never()))
+				.sizeMax(10)
+				.maxConcurrentAllocations(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> first = pool.acquire().block();
+			assertThat(first).isNotNull();
+
+			//this one triggers a never-ending allocation, the next one has to wait
+			pool.acquire().subscribe();
+			AtomicReference<PooledRef<PoolableTest>> waiting = new AtomicReference<>();
+			pool.acquire().subscribe(waiting::set);
+			assertThat(allocated).as("allocations").hasValue(2);
+			assertThat(waiting.get()).as("waiting").isNull();
+
+			first.release().block();
+			assertThat(waiting.get()).as("served by release").isNotNull();
+			assertThat(waiting.get().poolable().id).isOne();
+			assertThat(allocated).as("allocations").hasValue(2);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void adaptiveStrategyGrowsOnDemandWithoutChurn(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeAdaptive(1, 50, Duration.ofSeconds(1));
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+		try {
+			//none of the resources is released, so the limit can only grow from the pending borrowers
+			List<PooledRef<String>> refs = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				refs.add(pool.acquire().block(Duration.ofSeconds(1)));
+			}
+
+			assertThat(refs).extracting(PooledRef::poolable)
+			                .containsExactly("foo1", "foo2", "foo3", "foo4", "foo5");
+			assertThat(pool.acquiredSize()).as("acquired").isEqualTo(5);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void adaptiveStrategyIdleResourcesBeyondInitialLimit(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeAdaptive(1, 4, Duration.ofSeconds(10));
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		//fast allocations grow the limit
+		for (int i = 0; i < 10; i++) {
+			pool.acquire().block().invalidate().block();
+		}
+		assertThat(pool.remainingPermits()).as("grown to max").isEqualTo(4);
+
+		List<PooledRef<String>> refs = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			refs.add(pool.acquire().block(Duration.ofSeconds(1)));
+		}
+
+		for (PooledRef<String> ref : refs) {
+			ref.release().block();
+		}
+		assertThat(pool.idleSize()).as("all idle").isEqualTo(4);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void rateLimitedAllocationServesPendingBorrowers(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeMaxRateLimited(10, 20, 1);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		long start = System.nanoTime();
+		List<PooledRef<String>> refs = Flux.range(0, 3)
+		                                   .flatMap(i -> pool.acquire())
+		                                   .collectList()
+		                                   .block(Duration.ofSeconds(5));
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertThat(refs).as("all served").hasSize(3);
+		assertThat(allocated).as("allocations").hasValue(3);
+		assertThat(elapsedMs).as("paced by the rate").isGreaterThanOrEqualTo(90L);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void rateLimitedAllocationRetriesOnEvictionScheduler(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) throws InterruptedException {
+		VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeMaxRateLimited(10, 20, 1)
+				.evictInBackground(Duration.ZERO, vts);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+		try {
+			AtomicReference<PooledRef<String>> first = new AtomicReference<>();
+			AtomicReference<PooledRef<String>> second = new AtomicReference<>();
+			pool.acquire().subscribe(first::set);
+			pool.acquire().subscribe(second::set);
+			assertThat(first.get()).as("first within the burst").isNotNull();
+			assertThat(pool.pendingAcquireSize()).as("second pending").isOne();
+
+			//the next permit is available after 50ms, but the retry only runs once the scheduler gets there
+			Thread.sleep(100);
+			assertThat(second.get()).as("second before retry").isNull();
+
+			vts.advanceTimeBy(Duration.ofMillis(100));
+			assertThat(second.get()).as("second after retry").isNotNull();
+			assertThat(allocated).as("allocations").hasValue(2);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void weigherChargesPermitsByWeight(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("four"))
+				.sizeMax(10)
+				.weigher(String::length);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> ref1 = pool.acquire().block();
+		PooledRef<String> ref2 = pool.acquire().block();
+		assertThat(pool.remainingPermits()).as("two resources of weight 4").isEqualTo(2);
+
+		PooledRef<String> ref3 = pool.acquire().block();
+		assertThat(pool.remainingPermits()).as("third resource only partially granted").isZero();
+		assertThat(pool.weightShortfall).as("shortfall recorded").isEqualTo(2);
+
+		ref1.invalidate().block();
+		assertThat(pool.remainingPermits()).as("shortfall recouped first").isEqualTo(2);
+		assertThat(pool.weightShortfall).as("shortfall recouped").isZero();
+
+		ref3.invalidate().block();
+		assertThat(pool.remainingPermits()).as("full weight returned").isEqualTo(6);
+
+		ref2.release().block();
+		assertThat(pool.idleSize()).isOne();
+		assertThat(pool.remainingPermits()).as("idle resource keeps its weight").isEqualTo(6);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireUsesIdleThenAllocates(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeMax(5);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> idle1 = pool.acquire().block();
+		PooledRef<String> idle2 = pool.acquire().block();
+		idle1.release().block();
+		idle2.release().block();
+
+		List<PooledRef<String>> batch = pool.acquire(4).collectList().block(Duration.ofSeconds(5));
+
+		assertThat(batch).extracting(PooledRef::poolable)
+		                 .containsExactlyInAnyOrder("foo1", "foo2", "foo3", "foo4");
+		assertThat(pool.acquiredSize()).isEqualTo(4);
+		assertThat(pool.idleSize()).isZero();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireWaitsForWholeBatch(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(3);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> ref1 = pool.acquire().block();
+		PooledRef<String> ref2 = pool.acquire().block();
+
+		StepVerifier.create(pool.acquire(2))
+		            .expectSubscription()
+		            .expectNoEvent(Duration.ofMillis(100))
+		            .then(() -> {
+			            assertThat(pool.acquiredSize()).as("nothing reserved while waiting").isEqualTo(2);
+			            assertThat(pool.remainingPermits()).as("nothing reserved while waiting").isOne();
+			            ref1.release().block();
+		            })
+		            .expectNextCount(2)
+		            .verifyComplete();
+
+		assertThat(pool.acquiredSize()).isEqualTo(3);
+		ref2.release().block();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void concurrentBatchAcquiresDontDeadlock(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(4);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		Long served = Flux.range(0, 50)
+		                  .flatMap(i -> pool.acquire(3)
+		                                    .subscribeOn(Schedulers.parallel())
+		                                    .collectList()
+		                                    .delayElement(Duration.ofMillis(1))
+		                                    .flatMap(refs -> Flux.fromIterable(refs)
+		                                                         .flatMap(PooledRef::release)
+		                                                         .then(Mono.just(refs.size()))))
+		                  .count()
+		                  .block(Duration.ofSeconds(10));
+
+		assertThat(served).isEqualTo(50L);
+		assertThat(pool.acquiredSize()).isZero();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireRespectsMaxConcurrentAllocations(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocating = new AtomicInteger();
+		AtomicInteger maxAllocating = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.defer(() -> {
+					maxAllocating.accumulateAndGet(allocating.incrementAndGet(), Math::max);
+					return Mono.delay(Duration.ofMillis(20))
+					           .map(i -> {
+						           allocating.decrementAndGet();
+						           return new PoolableTest();
+					           });
+				}))
+				.sizeMax(10)
+				.maxConcurrentAllocations(2);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			List<PooledRef<PoolableTest>> batch = pool.acquire(6)
+			                                          .collectList()
+			                                          .block(Duration.ofSeconds(5));
+
+			assertThat(batch).as("whole batch served").hasSize(6);
+			assertThat(maxAllocating).as("allocations in flight").hasValue(2);
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(pool.allocating).as("no allocation left in flight").isZero());
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireCancelledGivesBackQueuedAllocations(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.defer(() -> {
+					allocated.incrementAndGet();
+					return Mono.delay(Duration.ofMillis(50)).map(i -> new PoolableTest());
+				}))
+				.sizeMax(3)
+				.maxConcurrentAllocations(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			Disposable batch = pool.acquire(3).subscribe();
+			assertThat(allocated).as("allocations started").hasValue(1);
+			batch.dispose();
+
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> {
+				       assertThat(pool.allocating).as("no allocation left in flight").isZero();
+				       assertThat(pool.acquiredSize()).as("acquired").isZero();
+				       assertThat(pool.remainingPermits() + pool.idleSize()).as("permits given back").isEqualTo(3);
+			       });
+			assertThat(allocated).as("queued allocations not started").hasValue(1);
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireDeliversOnAcquisitionScheduler(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		Scheduler acquisitionScheduler = Schedulers.newSingle("batchAcquisition");
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(3)
+				.acquisitionScheduler(acquisitionScheduler);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<String> idle = pool.acquire().block(Duration.ofSeconds(5));
+			assertThat(idle).isNotNull();
+			idle.release().block(Duration.ofSeconds(5));
+
+			List<String> threads = pool.acquire(3)
+			                           .map(ref -> Thread.currentThread().getName())
+			                           .collectList()
+			                           .block(Duration.ofSeconds(5));
+
+			assertThat(threads).hasSize(3)
+			                   .allSatisfy(name -> assertThat(name).startsWith("batchAcquisition"));
+		}
+		finally {
+			pool.dispose();
+			acquisitionScheduler.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireCancelledReleasesUnemitted(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(3);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> first = pool.acquire(3).blockFirst(Duration.ofSeconds(5));
+
+		assertThat(first).isNotNull();
+		assertThat(pool.acquiredSize()).isOne();
+		assertThat(pool.idleSize()).isEqualTo(2);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void batchAcquireLargerThanPoolFails(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(3);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		StepVerifier.create(pool.acquire(4))
+		            .verifyErrorMessage("Cannot acquire 4 resources at once from a pool of at most 3");
+		StepVerifier.create(pool.acquire(0))
+		            .verifyErrorMessage("n must be >= 1");
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void releaseAllRecyclesAndServesPending(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(3);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		List<PooledRef<String>> refs = pool.acquire(3).collectList().block(Duration.ofSeconds(5));
+		AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+		pool.acquire().subscribe(pending::set);
+		assertThat(pending).as("pending").hasValue(null);
+
+		pool.releaseAll(refs).block(Duration.ofSeconds(5));
+
+		assertThat(pending.get()).as("pending served").isNotNull();
+		assertThat(pool.acquiredSize()).isOne();
+		assertThat(pool.idleSize()).isEqualTo(2);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void releaseAllRunsReleaseHandlersAndDestroysFailures(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger allocated = new AtomicInteger();
+		List<String> reset = new ArrayList<>();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.releaseHandler(s -> s.equals("foo2") ?
+						Mono.error(new IllegalStateException("boom")) :
+						Mono.fromRunnable(() -> reset.add(s)))
+				.sizeMax(3);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		List<PooledRef<String>> refs = pool.acquire(3).collectList().block(Duration.ofSeconds(5));
+
+		StepVerifier.create(pool.releaseAll(refs))
+		            .verifyErrorMessage("boom");
+
+		assertThat(reset).containsExactlyInAnyOrder("foo1", "foo3");
+		assertThat(pool.acquiredSize()).isZero();
+		assertThat(pool.idleSize()).as("failed reset destroyed").isEqualTo(2);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutRemovesPendingBorrower(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> acquired = pool.acquire().block();
+			assertThat(acquired).isNotNull();
+
+			StepVerifier.create(pool.acquire(Duration.ofMillis(50)))
+			            .expectSubscription()
+			            .then(() -> assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending").isOne())
+			            .expectError(TimeoutException.class)
+			            .verify(Duration.ofSeconds(1));
+
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending after timeout").isZero();
+
+			acquired.release().block();
+			assertThat(pool.idleSize()).as("released resource not delivered to timed out borrower").isOne();
+			assertThat(pool.acquire().block()).as("still acquirable").isNotNull();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutDoesntFireOnceServed(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) throws InterruptedException {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> acquired = pool.acquire().block();
+			assertThat(acquired).isNotNull();
+
+			AtomicReference<Object> pendingResult = new AtomicReference<>();
+			pool.acquire(Duration.ofMillis(100)).subscribe(pendingResult::set, pendingResult::set);
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending").isOne();
+
+			acquired.release().block();
+			assertThat(pendingResult.get()).as("served").isInstanceOf(PooledRef.class);
+
+			Thread.sleep(200);
+			assertThat(pendingResult.get()).as("not timed out").isInstanceOf(PooledRef.class);
+			assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending after delivery").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutZeroIsUntimed(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			assertThat(pool.acquire(Duration.ZERO).block()).isNotNull();
+			assertThat(pool.acquireTimeoutWheel).as("wheel not started").isNull();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutNegativeOrNullIsRejected(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			StepVerifier.create(pool.acquire(Duration.ofMillis(-1)))
+			            .expectErrorSatisfies(e -> assertThat(e).isInstanceOf(IllegalArgumentException.class)
+			                                                    .hasMessage("timeout must be >= 0"))
+			            .verify(Duration.ofSeconds(1));
+			assertThatNullPointerException().isThrownBy(() -> pool.acquire(null))
+			                                .withMessage("timeout");
+			assertThat(pool.acquireTimeoutWheel).as("wheel not started").isNull();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutWheelStopsTickingWithoutTimedBorrowers(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> ref = pool.acquire(Duration.ofMillis(50)).block();
+			assertThat(ref).isNotNull();
+			assertThat(pool.acquireTimeoutWheel.isTicking()).as("ticking").isTrue();
+
+			await().atMost(1, TimeUnit.SECONDS)
+			       .untilAsserted(() -> assertThat(pool.acquireTimeoutWheel.isTicking()).as("stopped ticking").isFalse());
+
+			StepVerifier.create(pool.acquire(Duration.ofMillis(50)))
+			            .expectError(TimeoutException.class)
+			            .verify(Duration.ofSeconds(1));
+			assertThat(pool.acquireTimeoutWheel.isDisposed()).as("wheel still usable").isFalse();
+			ref.release().block();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutWheelWalksCurrentBucketWithinSameTick(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AbstractPool<String> pool = configAdjuster.apply(PoolBuilder.from(Mono.just("foo")));
+		//a tick period that can't elapse during the test, so that every tick happens within the same period
+		AcquireTimeoutWheel wheel = new AcquireTimeoutWheel(pool, VirtualTimeScheduler.create(), TimeUnit.HOURS.toNanos(1), 2);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		BaseSubscriber<AbstractPool.AbstractPooledRef<String>> subscriber = new BaseSubscriber<AbstractPool.AbstractPooledRef<String>>() {
+			@Override
+			protected void hookOnError(Throwable throwable) {
+				error.set(throwable);
+			}
+		};
+		AbstractPool.Borrower<String> borrower = new AbstractPool.Borrower<>(subscriber, pool, Duration.ofMillis(1));
+		borrower.acquireDeadline = wheel.startNanos; //due in the very first tick period
+
+		wheel.add(borrower);
+		wheel.tick();
+
+		assertThat(error.get()).as("timed out on first tick").isInstanceOf(TimeoutException.class);
+		assertThat(wheel.isTicking()).as("stopped ticking").isFalse();
+		pool.dispose();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void acquireTimeoutFollowsEvictionSchedulerClock(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1)
+				.evictInBackground(Duration.ZERO, vts);
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PooledRef<PoolableTest> hold = pool.acquire().block();
+			assertThat(hold).isNotNull();
+
+			AtomicReference<Object> pendingResult = new AtomicReference<>();
+			pool.acquire(Duration.ofHours(1)).subscribe(pendingResult::set, pendingResult::set);
+
+			vts.advanceTimeBy(Duration.ofMinutes(59));
+			assertThat(pendingResult.get()).as("still pending").isNull();
+
+			vts.advanceTimeBy(Duration.ofMinutes(2));
+			assertThat(pendingResult.get()).as("timed out").isInstanceOf(TimeoutException.class);
+			assertThat(pool.pendingAcquireSize()).as("pending").isZero();
+			hold.release().block();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPoolsAndMultiplexed")
+	void disposeStopsAcquireTimeoutWheel(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new));
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+		assertThat(pool.acquire(Duration.ofSeconds(1)).block()).isNotNull();
+		assertThat(pool.acquireTimeoutWheel.isDisposed()).as("wheel started").isFalse();
+
+		pool.dispose();
+
+		assertThat(pool.acquireTimeoutWheel.isDisposed()).as("wheel disposed").isTrue();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void metricsReflectPoolState(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.initialSize(2)
+				.sizeMax(3)
+				.maxPendingAcquire(10);
+
+		Pool<PoolableTest> pool = configAdjuster.apply(builder);
+		try {
+			PoolMetrics metrics = pool.metrics();
+			assertThat(metrics).as("read-only view").isNotInstanceOf(Pool.class);
+			assertThat(metrics.idleSize()).as("idle").isEqualTo(2);
+			assertThat(metrics.acquiredSize()).as("acquired").isZero();
+			assertThat(metrics.allocatedSize()).as("allocated").isEqualTo(2);
+			assertThat(metrics.remainingPermits()).as("permits").isOne();
+			assertThat(metrics.maxPendingAcquireSize()).as("max pending").isEqualTo(10);
+
+			PooledRef<PoolableTest> ref1 = pool.acquire().block();
+			PooledRef<PoolableTest> ref2 = pool.acquire().block();
+			PooledRef<PoolableTest> ref3 = pool.acquire().block();
+			assertThat(ref1).isNotNull();
+			assertThat(ref2).isNotNull();
+			assertThat(ref3).isNotNull();
+			Disposable pending = pool.acquire().subscribe();
+
+			assertThat(metrics.idleSize()).as("idle when all acquired").isZero();
+			assertThat(metrics.acquiredSize()).as("acquired when all acquired").isEqualTo(3);
+			assertThat(metrics.allocatedSize()).as("allocated when all acquired").isEqualTo(3);
+			assertThat(metrics.remainingPermits()).as("permits when all acquired").isZero();
+			assertThat(metrics.pendingAcquireSize()).as("pending when all acquired").isOne();
+
+			pending.dispose();
+			ref1.release().block();
+			ref2.invalidate().block();
+
+			assertThat(metrics.idleSize()).as("idle after release").isOne();
+			assertThat(metrics.acquiredSize()).as("acquired after release").isOne();
+			assertThat(metrics.allocatedSize()).as("allocated after release").isEqualTo(2);
+			assertThat(metrics.remainingPermits()).as("permits after invalidate").isOne();
+			assertThat(metrics.pendingAcquireSize()).as("pending after cancel").isZero();
+		}
+		finally {
+			pool.dispose();
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void metricsUnboundedMaxPending(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		Pool<PoolableTest> pool = configAdjuster.apply(PoolBuilder.from(Mono.fromCallable(PoolableTest::new)));
+
+		assertThat(pool.metrics().maxPendingAcquireSize()).isEqualTo(Integer.MAX_VALUE);
+		assertThat(pool.metrics().remainingPermits()).isEqualTo(Integer.MAX_VALUE);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void cleanerFunctionError(Function<PoolBuilder<PoolableTest>, Pool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1)
+				.releaseHandler(poolableTest -> Mono.fromRunnable(() -> {
+					poolableTest.clean();
+					throw new IllegalStateException("boom");
+				}))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+
+		Pool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		PooledRef<PoolableTest> slot = pool.acquire().block();
+
+		assertThat(slot).isNotNull();
+
+		StepVerifier.create(slot.release())
+		            .verifyErrorMessage("boom");
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void cleanerFunctionErrorDiscards(Function<PoolBuilder<PoolableTest>, Pool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(1)
+				.releaseHandler(poolableTest -> Mono.fromRunnable(() -> {
+					poolableTest.clean();
+					throw new IllegalStateException("boom");
+				}))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+
+		Pool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		PooledRef<PoolableTest> slot = pool.acquire().block();
+
+		assertThat(slot).isNotNull();
+
+		StepVerifier.create(slot.release())
+		            .verifyErrorMessage("boom");
+
+		assertThat(slot.poolable().discarded).as("discarded despite cleaner error").isEqualTo(1);
+	}
+
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void disposingPoolDisposesElements(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger cleanerCount = new AtomicInteger();
+
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(3)
+				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		PoolableTest pt1 = new PoolableTest(1);
+		PoolableTest pt2 = new PoolableTest(2);
+		PoolableTest pt3 = new PoolableTest(3);
+
+		pool.elementOffer(pt1);
+		pool.elementOffer(pt2);
+		pool.elementOffer(pt3);
+
+		pool.dispose();
+
+		assertThat(pool.idleSize()).as("idleSize").isZero();
+		assertThat(cleanerCount).as("recycled elements").hasValue(0);
+		assertThat(pt1.isDisposed()).as("pt1 disposed").isTrue();
+		assertThat(pt2.isDisposed()).as("pt2 disposed").isTrue();
+		assertThat(pt3.isDisposed()).as("pt3 disposed").isTrue();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void disposingPoolFailsPendingBorrowers(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger cleanerCount = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(3)
+				.initialSize(3)
+				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		PooledRef<PoolableTest> slot1 = pool.acquire().block();
+		PooledRef<PoolableTest> slot2 = pool.acquire().block();
+		PooledRef<PoolableTest> slot3 = pool.acquire().block();
+		assertThat(slot1).as("slot1").isNotNull();
+		assertThat(slot2).as("slot2").isNotNull();
+		assertThat(slot3).as("slot3").isNotNull();
+
+		PoolableTest acquired1 = slot1.poolable();
+		PoolableTest acquired2 = slot2.poolable();
+		PoolableTest acquired3 = slot3.poolable();
+
+
+		AtomicReference<Throwable> borrowerError = new AtomicReference<>();
+		Mono<PooledRef<PoolableTest>> pendingBorrower = pool.acquire();
+		pendingBorrower.subscribe(v -> fail("unexpected value " + v),
+				borrowerError::set);
+
+		pool.dispose();
+
+		assertThat(pool.idleSize()).as("idleSize").isZero();
+		assertThat(cleanerCount).as("recycled elements").hasValue(0);
+		assertThat(acquired1.isDisposed()).as("acquired1 held").isFalse();
+		assertThat(acquired2.isDisposed()).as("acquired2 held").isFalse();
+		assertThat(acquired3.isDisposed()).as("acquired3 held").isFalse();
+		assertThat(borrowerError.get()).hasMessage("Pool has been shut down");
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void releasingToDisposedPoolDisposesElement(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger cleanerCount = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(3)
+				.initialSize(3)
+				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		PooledRef<PoolableTest> slot1 = pool.acquire().block();
+		PooledRef<PoolableTest> slot2 = pool.acquire().block();
+		PooledRef<PoolableTest> slot3 = pool.acquire().block();
+
+		assertThat(slot1).as("slot1").isNotNull();
+		assertThat(slot2).as("slot2").isNotNull();
+		assertThat(slot3).as("slot3").isNotNull();
+
+		pool.dispose();
+
+		assertThat(pool.idleSize()).as("idleSize").isZero();
+
+		slot1.release().block();
+		slot2.release().block();
+		slot3.release().block();
+
+		assertThat(cleanerCount).as("recycled elements").hasValue(0);
+		assertThat(slot1.poolable().isDisposed()).as("acquired1 disposed").isTrue();
+		assertThat(slot2.poolable().isDisposed()).as("acquired2 disposed").isTrue();
+		assertThat(slot3.poolable().isDisposed()).as("acquired3 disposed").isTrue();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void acquiringFromDisposedPoolFailsBorrower(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		AtomicInteger cleanerCount = new AtomicInteger();
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(3)
+				.releaseHandler(p -> Mono.fromRunnable(cleanerCount::incrementAndGet))
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		assertThat(pool.idleSize()).as("idleSize").isZero();
+
+		pool.dispose();
+
+		StepVerifier.create(pool.acquire())
+		            .verifyErrorMessage("Pool has been shut down");
+
+		assertThat(cleanerCount).as("recycled elements").hasValue(0);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void poolIsDisposed(Function<PoolBuilder<PoolableTest>, AbstractPool<PoolableTest>> configAdjuster) {
+		PoolBuilder<PoolableTest> builder = PoolBuilder
+				.from(Mono.fromCallable(PoolableTest::new))
+				.sizeMax(3)
+				.evictionPredicate((poolable, metadata) -> !poolable.isHealthy());
+		AbstractPool<PoolableTest> pool = configAdjuster.apply(builder);
+
+		assertThat(pool.isDisposed()).as("not yet disposed").isFalse();
+
+		pool.dispose();
+
+		assertThat(pool.isDisposed()).as("disposed").isTrue();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void disposingPoolClosesCloseable(Function<PoolBuilder<Formatter>, AbstractPool<Formatter>> configAdjuster) {
+		Formatter uniqueElement = new Formatter();
+
+		PoolBuilder<Formatter> builder = PoolBuilder
+				.from(Mono.just(uniqueElement))
+				.sizeMax(1)
+				.initialSize(1)
+				.evictionPredicate((poolable, metadata) -> true);
+		AbstractPool<Formatter> pool = configAdjuster.apply(builder);
+
+		pool.dispose();
+
+		assertThatExceptionOfType(FormatterClosedException.class)
+				.isThrownBy(uniqueElement::flush);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	void allocatorErrorOutsideConstructorIsPropagated(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.<String>error(new IllegalStateException("boom")))
+				.sizeMax(1)
+				.initialSize(0)
+				.evictionPredicate((poolable, metadata) -> true);
+		AbstractPool<String> pool = configAdjuster.apply(builder);
+
+		assertThatExceptionOfType(IllegalStateException.class)
+				.isThrownBy(pool.acquire()::block)
+				.withMessage("boom");
 	}
 
 	@ParameterizedTest
@@ -1079,6 +2179,176 @@ public class CommonPoolTest {
 		assertThat(minSuccess).isBetween(100L, 150L);
 	}
 
+	@ParameterizedTest
+	@MethodSource("allPools")
+	@Tag("metrics")
+	void recordsPendingLatency(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+		TestUtils.InMemoryPoolMetrics virtualClockRecorder = new TestUtils.InMemoryPoolMetrics() {
+			@Override
+			public long now() {
+				return vts.now(TimeUnit.MILLISECONDS);
+			}
+		};
+		AtomicBoolean failAllocation = new AtomicBoolean();
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.delay(Duration.ofMillis(100), vts)
+				          .map(i -> {
+					          if (failAllocation.get()) {
+						          throw new IllegalStateException("boom");
+					          }
+					          return "foo";
+				          }))
+				.sizeMax(1)
+				.metricsRecorder(virtualClockRecorder);
+		Pool<String> pool = configAdjuster.apply(builder);
+
+		AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+		pool.acquire().subscribe(pending::set);
+		assertThat(pending.get()).as("pending before allocation").isNull();
+
+		vts.advanceTimeBy(Duration.ofMillis(100));
+
+		assertThat(pending.get()).as("pending served").isNotNull();
+		assertThat(virtualClockRecorder.getPendingSuccessCount()).as("pending success").isOne();
+		assertThat(virtualClockRecorder.getPendingSuccessHistogram().getMaxValue()).as("pending latency").isEqualTo(100L);
+
+		pending.get().invalidate().block();
+		failAllocation.set(true);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		pool.acquire().subscribe(v -> {}, error::set);
+		vts.advanceTimeBy(Duration.ofMillis(50));
+		assertThat(error.get()).as("error before allocation").isNull();
+
+		vts.advanceTimeBy(Duration.ofMillis(50));
+
+		assertThat(error.get()).as("pending failed").hasMessage("boom");
+		assertThat(virtualClockRecorder.getPendingErrorCount()).as("pending failure").isOne();
+		assertThat(virtualClockRecorder.getPendingErrorHistogram().getMaxValue()).as("failure latency").isEqualTo(100L);
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	@Tag("metrics")
+	void recordsWhetherPendingTookFastPath(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(1)
+				.metricsRecorder(recorder);
+		Pool<String> pool = configAdjuster.apply(builder);
+
+		pool.acquire().block().release().block();
+		assertThat(recorder.getPendingFastPathCount()).as("allocated").isZero();
+
+		PooledRef<String> ref = pool.acquire().block();
+		assertThat(recorder.getPendingFastPathCount()).as("idle resource").isOne();
+
+		AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+		pool.acquire().subscribe(pending::set);
+		ref.release().block();
+
+		assertThat(pending.get()).as("pending served").isNotNull();
+		assertThat(recorder.getPendingSuccessCount()).isEqualTo(3);
+		assertThat(recorder.getPendingFastPathCount()).as("pending borrower served").isOne();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	@Tag("metrics")
+	void noOpRecorderSkipsClockReads(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) {
+		AtomicInteger clockReads = new AtomicInteger();
+		TestUtils.InMemoryPoolMetrics noOpRecorder = new TestUtils.InMemoryPoolMetrics() {
+			@Override
+			public boolean isNoOp() {
+				return true;
+			}
+
+			@Override
+			public long now() {
+				clockReads.incrementAndGet();
+				return super.now();
+			}
+		};
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo"))
+				.sizeMax(1)
+				.metricsRecorder(noOpRecorder);
+		Pool<String> pool = configAdjuster.apply(builder);
+
+		for (int i = 0; i < 100; i++) {
+			PooledRef<String> ref = pool.acquire().block();
+			assertThat(ref).isNotNull();
+			assertThat(ref.metadata().idleTime()).as("idleTime not tracked").isZero();
+			assertThat(ref.metadata().lifeTime()).as("lifeTime not tracked").isZero();
+			ref.release().block();
+		}
+
+		assertThat(clockReads).as("no clock read on allocation/acquire/release").hasValue(0);
+		assertThat(noOpRecorder.getPendingSuccessCount()).as("no pending recorded").isZero();
+		assertThat(noOpRecorder.getFastPathCount() + noOpRecorder.getSlowPathCount()).as("no path recorded").isZero();
+		assertThat(noOpRecorder.getRecycledCount()).as("no recycle recorded").isZero();
+		assertThat(noOpRecorder.getResetCount()).as("no reset recorded").isZero();
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	@Tag("metrics")
+	void noOpRecorderKeepsIdleEviction(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) throws InterruptedException {
+		AtomicInteger allocated = new AtomicInteger();
+		TestUtils.InMemoryPoolMetrics noOpRecorder = new TestUtils.InMemoryPoolMetrics() {
+			@Override
+			public boolean isNoOp() {
+				return true;
+			}
+		};
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.fromCallable(() -> "foo" + allocated.incrementAndGet()))
+				.sizeMax(1)
+				.evictionIdle(Duration.ofMillis(50))
+				.metricsRecorder(noOpRecorder);
+		Pool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> ref = pool.acquire().block();
+		assertThat(ref).isNotNull();
+		ref.release().block();
+		Thread.sleep(100);
+
+		PooledRef<String> ref2 = pool.acquire().block();
+		assertThat(ref2).isNotNull();
+		assertThat(ref2.poolable()).as("idle resource evicted").isEqualTo("foo2");
+	}
+
+	@ParameterizedTest
+	@MethodSource("allPools")
+	@Tag("metrics")
+	void recordsInNanosecondsWithNanosecondClock(Function<PoolBuilder<String>, AbstractPool<String>> configAdjuster) throws InterruptedException {
+		TestUtils.InMemoryPoolMetrics nanoRecorder = new TestUtils.InMemoryPoolMetrics(TimeUnit.NANOSECONDS);
+		PoolBuilder<String> builder = PoolBuilder
+				.from(Mono.just("foo").delayElement(Duration.ofMillis(10)))
+				.sizeMax(1)
+				.metricsRecorder(nanoRecorder);
+		Pool<String> pool = configAdjuster.apply(builder);
+
+		PooledRef<String> ref = pool.acquire().block();
+		assertThat(ref).isNotNull();
+		assertThat(nanoRecorder.getAllocationSuccessHistogram().getMinValue())
+				.as("allocation latency in nanos")
+				.isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+
+		Thread.sleep(20);
+		assertThat(ref.metadata().lifeTime()).as("lifeTime in millis").isBetween(20L, 10_000L);
+		assertThat(ref.metadata().lifeTimeNanos()).as("lifeTimeNanos").isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+		assertThat(ref.metadata().idleTimeNanos()).as("idleTimeNanos while acquired").isZero();
+
+		ref.release().block();
+		Thread.sleep(20);
+		PooledRef<String> reacquired = pool.acquire().block();
+		assertThat(reacquired).isNotNull();
+		assertThat(nanoRecorder.getIdleTimeHistogram().getMaxValue())
+				.as("idle time in nanos")
+				.isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+	}
+
 	@ParameterizedTest
 	@MethodSource("allPools")
 	@Tag("metrics")
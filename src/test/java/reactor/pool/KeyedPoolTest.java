@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Simon Baslé
+ */
+class KeyedPoolTest {
+
+    @Test
+    void separatePoolPerKey() {
+        AtomicInteger allocations = new AtomicInteger();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(key -> Mono.fromCallable(() -> key + allocations.incrementAndGet()))
+                .build();
+
+        PooledRef<String> a = pool.acquire("a").block();
+        PooledRef<String> b = pool.acquire("b").block();
+
+        assertThat(a.poolable()).isEqualTo("a1");
+        assertThat(b.poolable()).isEqualTo("b2");
+        assertThat(pool.keyCount()).isEqualTo(2);
+
+        a.release().block();
+        assertThat(pool.acquire("a").block().poolable()).as("recycled within key a").isEqualTo("a1");
+        assertThat(pool.metrics("c")).isNull();
+    }
+
+    @Test
+    void perKeyLimit() {
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .sizeMaxPerKey(1)
+                .build();
+
+        PooledRef<String> a = pool.acquire("a").block();
+        StepVerifier.create(pool.acquire("a"))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> a.release().block())
+                    .expectNextCount(1)
+                    .verifyComplete();
+
+        assertThat(pool.acquire("b").block()).as("other key not limited").isNotNull();
+    }
+
+    @Test
+    void globalBudgetSharedAcrossKeys() {
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .sizeMaxTotal(2)
+                .build();
+
+        PooledRef<String> a1 = pool.acquire("a").block();
+        PooledRef<String> a2 = pool.acquire("a").block();
+
+        StepVerifier.create(pool.acquire("b"))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> a1.release().block())
+                    .expectNextCount(0)
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> a2.release().block())
+                    .as("key a became idle and got closed, freeing budget for key b")
+                    .assertNext(ref -> assertThat(ref.poolable()).isEqualTo("b"))
+                    .verifyComplete();
+
+        assertThat(pool.metrics("a")).as("key a closed").isNull();
+        assertThat(pool.metrics("b").allocatedSize()).isEqualTo(1);
+    }
+
+    @Test
+    void starvingKeyClosesLeastRecentlyUsedIdleKey() {
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .sizeMaxTotal(2)
+                .build();
+
+        pool.acquire("a").block().release().block();
+        pool.acquire("b").block().release().block();
+        assertThat(pool.keyCount()).isEqualTo(2);
+
+        PooledRef<String> c = pool.acquire("c").block(Duration.ofSeconds(1));
+
+        assertThat(c.poolable()).isEqualTo("c");
+        assertThat(pool.metrics("a")).as("least recently used closed").isNull();
+        assertThat(pool.metrics("b")).as("most recently used kept").isNotNull();
+    }
+
+    @Test
+    void starvingKeyRetriesOnceEvictedKeyIsClosed() {
+        TestPublisher<Void> destroy = TestPublisher.create();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .perKeyPool(builder -> builder.destroyHandler(s -> destroy.mono()))
+                .sizeMaxTotal(1)
+                .build();
+
+        PooledRef<String> a = pool.acquire("a").block();
+
+        StepVerifier.create(pool.acquire("b"))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> a.release().block())
+                    .then(() -> destroy.assertSubscribers(1))
+                    .as("budget only given back once key a's resource is destroyed")
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(destroy::complete)
+                    .assertNext(ref -> assertThat(ref.poolable()).isEqualTo("b"))
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(1));
+
+        destroy.assertNoSubscribers();
+        assertThat(pool.metrics("a")).as("key a closed").isNull();
+        assertThat(pool.metrics("b").allocatedSize()).isOne();
+        assertThat(pool.metrics("b").pendingAcquireSize()).isZero();
+    }
+
+    @Test
+    void pendingKeyRetriesOnceOtherKeyEvictsInBackground() {
+        AtomicBoolean evict = new AtomicBoolean();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .perKeyPool(builder -> builder.evictionPredicate((s, meta) -> evict.get())
+                                              .evictInBackground(Duration.ofMillis(10)))
+                .sizeMaxTotal(2)
+                .build();
+
+        PooledRef<String> a1 = pool.acquire("a").block();
+        pool.acquire("a").block().release().block();
+
+        StepVerifier.create(pool.acquire("b"))
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> evict.set(true))
+                    .as("idle resource of key a evicted, giving back budget")
+                    .assertNext(ref -> assertThat(ref.poolable()).isEqualTo("b"))
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(1));
+
+        assertThat(pool.metrics("a").allocatedSize()).isOne();
+        a1.release().block();
+    }
+
+    @Test
+    void adaptivePerKeyStrategyIsFed() {
+        AllocationStrategies.AdaptiveAllocationStrategy adaptive =
+                new AllocationStrategies.AdaptiveAllocationStrategy(1, 10, Duration.ofSeconds(1).toNanos());
+        PoolMetricsRecorder recorder = PoolBuilder.feedAdaptiveStrategies(
+                new AllocationStrategies.CompositeAllocationStrategy(adaptive, AllocationStrategies.UNBOUNDED),
+                NoOpPoolMetricsRecorder.INSTANCE);
+
+        assertThat(recorder).isInstanceOf(AllocationStrategies.FeedingRecorder.class);
+        assertThat(((AllocationStrategies.FeedingRecorder) recorder).strategy).isSameAs(adaptive);
+    }
+
+    @Test
+    void maxIdleKeysClosesLeastRecentlyUsed() {
+        List<String> destroyed = new ArrayList<>();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .perKeyPool(builder -> builder.destroyHandler(s -> Mono.fromRunnable(() -> destroyed.add(s))))
+                .maxIdleKeys(1)
+                .build();
+
+        pool.acquire("a").block().release().block();
+        pool.acquire("b").block().release().block();
+        PooledRef<String> c = pool.acquire("c").block();
+
+        assertThat(destroyed).containsExactly("a");
+        assertThat(pool.keyCount()).isEqualTo(2);
+        assertThat(c.poolable()).isEqualTo("c");
+    }
+
+    @Test
+    void evictedKeyClosedWithoutBlocking() {
+        TestPublisher<Void> destroy = TestPublisher.create();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .perKeyPool(builder -> builder.destroyHandler(s -> destroy.mono()))
+                .maxIdleKeys(1)
+                .build();
+
+        pool.acquire("a").block().release().block();
+        pool.acquire("b").block().release().block();
+
+        StepVerifier.create(pool.acquire("c"))
+                    .assertNext(ref -> assertThat(ref.poolable()).isEqualTo("c"))
+                    .expectComplete()
+                    .verify(Duration.ofSeconds(1));
+
+        destroy.assertSubscribers(1);
+        assertThat(pool.keyCount()).isEqualTo(2);
+        destroy.complete();
+    }
+
+    @Test
+    void disposeClosesAllKeys() {
+        List<String> destroyed = new ArrayList<>();
+        KeyedPool<String, String> pool = KeyedPoolBuilder.<String, String>from(Mono::just)
+                .perKeyPool(builder -> builder.destroyHandler(s -> Mono.fromRunnable(() -> destroyed.add(s))))
+                .build();
+
+        pool.acquire("a").block().release().block();
+        pool.acquire("b").block().release().block();
+
+        pool.dispose();
+
+        assertThat(destroyed).containsExactlyInAnyOrder("a", "b");
+        assertThat(pool.keyCount()).isZero();
+        StepVerifier.create(pool.acquire("a"))
+                    .verifyErrorMessage("Pool has been shut down");
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2018-Present Pivotal Software Inc, All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package reactor.pool;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+import reactor.test.util.RaceTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static reactor.pool.PoolBuilder.from;
+
+/**
+ * @author Simon Baslé
+ */
+class MultiplexedPoolTest {
+
+    @Test
+    void builderSelectsMultiplexedPool() {
+        assertThat(from(Mono.just("foo")).multiplex(2).build()).isInstanceOf(MultiplexedPool.class);
+        assertThat(from(Mono.just("foo")).multiplex(1).build()).isNotInstanceOf(MultiplexedPool.class);
+    }
+
+    @Test
+    void resourceLentToSeveralBorrowers() {
+        AtomicInteger allocations = new AtomicInteger();
+        Pool<Integer> pool = from(Mono.fromCallable(allocations::incrementAndGet))
+                .multiplex(3)
+                .build();
+
+        List<PooledRef<Integer>> refs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            refs.add(pool.acquire().block());
+        }
+
+        assertThat(refs).extracting(PooledRef::poolable).containsOnly(1);
+        assertThat(allocations).as("single allocation").hasValue(1);
+        assertThat(pool.metrics().acquiredSize()).isOne();
+        assertThat(refs.get(0).metadata().acquireCount()).isEqualTo(3);
+
+        assertThat(pool.acquire().block().poolable()).as("allocated once saturated").isEqualTo(2);
+        assertThat(pool.metrics().allocatedSize()).isEqualTo(2);
+    }
+
+    @Test
+    void leastLoadedResourceIsPreferred() {
+        AtomicInteger allocations = new AtomicInteger();
+        Pool<Integer> pool = from(Mono.fromCallable(allocations::incrementAndGet))
+                .multiplex(2)
+                .build();
+
+        PooledRef<Integer> first1 = pool.acquire().block();
+        PooledRef<Integer> first2 = pool.acquire().block();
+        PooledRef<Integer> second1 = pool.acquire().block();
+        assertThat(second1.poolable()).isEqualTo(2);
+
+        first1.release().block();
+        first2.release().block();
+
+        assertThat(pool.metrics().idleSize()).isOne();
+        assertThat(pool.acquire().block().poolable()).as("unleased resource").isEqualTo(1);
+        assertThat(pool.acquire().block().poolable()).as("resources equally loaded").isIn(1, 2);
+        assertThat(allocations).hasValue(2);
+    }
+
+    @Test
+    void saturatedPoolPendsUntilLeaseReturned() {
+        Pool<String> pool = from(Mono.just("foo"))
+                .sizeMax(1)
+                .multiplex(2)
+                .build();
+
+        PooledRef<String> ref1 = pool.acquire().block();
+        pool.acquire().block();
+
+        StepVerifier.create(pool.acquire())
+                    .expectSubscription()
+                    .expectNoEvent(Duration.ofMillis(100))
+                    .then(() -> ref1.release().block())
+                    .expectNextCount(1)
+                    .verifyComplete();
+    }
+
+    @Test
+    void saturatedPoolTimesOutPendingBorrower() {
+        AbstractPool<String> pool = (AbstractPool<String>) from(Mono.just("foo"))
+                .sizeMax(1)
+                .multiplex(2)
+                .build();
+
+        PooledRef<String> ref1 = pool.acquire().block();
+        pool.acquire(Duration.ofMillis(50)).block();
+
+        StepVerifier.create(pool.acquire(Duration.ofMillis(50)))
+                    .expectSubscription()
+                    .then(() -> assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending").isOne())
+                    .expectError(TimeoutException.class)
+                    .verify(Duration.ofSeconds(1));
+
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending after timeout").isZero();
+        ref1.release().block();
+        assertThat(pool.metrics().acquiredSize()).as("lease not delivered to timed out borrower").isOne();
+        assertThat(pool.acquire(Duration.ofMillis(50)).block()).as("freed lease acquirable").isNotNull();
+    }
+
+    @Test
+    void weigherChargesPermitsOncePerResource() {
+        AbstractPool<String> pool = (AbstractPool<String>) from(Mono.just("four"))
+                .sizeMax(10)
+                .weigher(String::length)
+                .multiplex(2)
+                .build();
+
+        PooledRef<String> ref1 = pool.acquire().block();
+        PooledRef<String> ref2 = pool.acquire().block();
+        assertThat(pool.metrics().allocatedSize()).as("leases of the same resource").isOne();
+        assertThat(pool.remainingPermits()).as("single resource of weight 4").isEqualTo(6);
+
+        PooledRef<String> ref3 = pool.acquire().block();
+        assertThat(pool.metrics().allocatedSize()).isEqualTo(2);
+        assertThat(pool.remainingPermits()).as("two resources of weight 4").isEqualTo(2);
+
+        ref1.invalidate().block();
+        assertThat(pool.remainingPermits()).as("weight kept until last lease returned").isEqualTo(2);
+        ref2.release().block();
+        assertThat(pool.remainingPermits()).as("full weight returned").isEqualTo(6);
+
+        ref3.release().block();
+        assertThat(pool.metrics().idleSize()).isOne();
+        assertThat(pool.remainingPermits()).as("idle resource keeps its weight").isEqualTo(6);
+    }
+
+    @Test
+    void releaseIsIdempotentPerLease() {
+        Pool<String> pool = from(Mono.just("foo"))
+                .multiplex(2)
+                .build();
+
+        PooledRef<String> ref1 = pool.acquire().block();
+        PooledRef<String> ref2 = pool.acquire().block();
+
+        ref1.release().block();
+        ref1.release().block();
+
+        assertThat(pool.metrics().acquiredSize()).as("ref2 still holds the resource").isOne();
+        ref2.release().block();
+        assertThat(pool.metrics().acquiredSize()).isZero();
+        assertThat(pool.metrics().idleSize()).isOne();
+    }
+
+    @Test
+    void invalidatedResourceDestroyedOnceLastLeaseReturned() {
+        List<Integer> destroyed = new ArrayList<>();
+        AtomicInteger allocations = new AtomicInteger();
+        Pool<Integer> pool = from(Mono.fromCallable(allocations::incrementAndGet))
+                .destroyHandler(i -> Mono.fromRunnable(() -> destroyed.add(i)))
+                .multiplex(2)
+                .build();
+
+        PooledRef<Integer> ref1 = pool.acquire().block();
+        PooledRef<Integer> ref2 = pool.acquire().block();
+
+        ref1.invalidate().block();
+        assertThat(destroyed).as("still leased").isEmpty();
+        assertThat(pool.acquire().block().poolable()).as("invalidated resource not lent").isEqualTo(2);
+
+        ref2.release().block();
+        assertThat(destroyed).containsExactly(1);
+    }
+
+    @Test
+    void acquireRacingWithLastLeaseInvalidationNeverLendsDestroyedResource() {
+        for (int i = 0; i < 1000; i++) {
+            AtomicInteger allocations = new AtomicInteger();
+            Pool<TestUtils.PoolableTest> pool = from(Mono.fromCallable(() -> new TestUtils.PoolableTest(allocations.incrementAndGet())))
+                    .multiplex(2)
+                    .build();
+            PooledRef<TestUtils.PoolableTest> lease = pool.acquire().block();
+            AtomicReference<PooledRef<TestUtils.PoolableTest>> raced = new AtomicReference<>();
+
+            RaceTestUtils.race(() -> lease.invalidate().block(), () -> pool.acquire().subscribe(raced::set));
+
+            assertThat(raced.get()).as("round " + i + " served").isNotNull();
+            assertThat(raced.get().poolable().isDisposed()).as("round " + i + " destroyed").isFalse();
+            pool.dispose();
+        }
+    }
+
+    @Test
+    void releaseHandlerRunsOnceLastLeaseReturned() {
+        AtomicInteger resets = new AtomicInteger();
+        Pool<String> pool = from(Mono.just("foo"))
+                .sizeMax(1)
+                .multiplex(2)
+                .releaseHandler(s -> Mono.fromRunnable(resets::incrementAndGet))
+                .build();
+
+        PooledRef<String> ref1 = pool.acquire().block();
+        PooledRef<String> ref2 = pool.acquire().block();
+
+        ref1.release().block();
+        assertThat(resets).as("other lease still in use").hasValue(0);
+
+        ref2.release().block();
+        assertThat(resets).as("reset by last lease").hasValue(1);
+
+        pool.acquire().block().release().block();
+        assertThat(resets).as("reset again after reuse").hasValue(2);
+    }
+
+    @Test
+    void resourceNotLentWhileBeingReset() {
+        TestPublisher<Void> reset = TestPublisher.create();
+        Pool<String> pool = from(Mono.just("foo"))
+                .sizeMax(1)
+                .multiplex(2)
+                .releaseHandler(s -> reset.mono())
+                .build();
+
+        PooledRef<String> ref = pool.acquire().block();
+        AtomicBoolean released = new AtomicBoolean();
+        ref.release().subscribe(null, null, () -> released.set(true));
+        reset.assertSubscribers(1);
+
+        AtomicReference<PooledRef<String>> pending = new AtomicReference<>();
+        pool.acquire().subscribe(pending::set);
+        assertThat(pending.get()).as("not lent while being reset").isNull();
+        assertThat(pool.metrics().pendingAcquireSize()).isOne();
+
+        reset.complete();
+
+        assertThat(released).as("release completes with the reset").isTrue();
+        assertThat(pending.get()).as("lent once reset").isNotNull();
+        assertThat(pending.get().poolable()).isEqualTo("foo");
+    }
+
+    @Test
+    void concurrentBorrowersShareFewResources() {
+        AtomicInteger allocations = new AtomicInteger();
+        Pool<Integer> pool = from(Mono.fromCallable(allocations::incrementAndGet))
+                .multiplex(10)
+                .build();
+
+        Flux.range(0, 1000)
+            .parallel()
+            .runOn(Schedulers.parallel())
+            .flatMap(i -> pool.acquireInScope(mono -> mono.delayElement(Duration.ofMillis(1))))
+            .sequential()
+            .blockLast(Duration.ofSeconds(10));
+
+        await().untilAsserted(() -> assertThat(pool.metrics().acquiredSize()).isZero());
+        assertThat(allocations.get()).isLessThanOrEqualTo(1000 / 10 + Schedulers.DEFAULT_POOL_SIZE);
+        assertThat(pool.metrics().allocatedSize()).isEqualTo(allocations.get());
+    }
+
+    @Test
+    void disposeDestroysIdleResourcesAndLeasedOnesOnRelease() {
+        List<Integer> destroyed = new ArrayList<>();
+        AtomicInteger allocations = new AtomicInteger();
+        Pool<Integer> pool = from(Mono.fromCallable(allocations::incrementAndGet))
+                .destroyHandler(i -> Mono.fromRunnable(() -> destroyed.add(i)))
+                .multiplex(2)
+                .build();
+
+        PooledRef<Integer> ref1 = pool.acquire().block();
+        PooledRef<Integer> ref2 = pool.acquire().block();
+        pool.acquire().block().release().block();
+
+        pool.dispose();
+        assertThat(destroyed).as("idle resource destroyed").containsExactly(2);
+
+        ref1.release().block();
+        assertThat(destroyed).as("resource still leased").containsExactly(2);
+        ref2.release().block();
+        assertThat(destroyed).containsExactly(2, 1);
+
+        StepVerifier.create(pool.acquire())
+                    .verifyErrorMessage("Pool has been shut down");
+    }
+
+    @Test
+    void disposeLaterCompletesOnceIdleResourcesDestroyed() {
+        TestPublisher<Void> destroy = TestPublisher.create();
+        MultiplexedPool<String> pool = (MultiplexedPool<String>) from(Mono.just("foo"))
+                .destroyHandler(s -> destroy.mono())
+                .multiplex(2)
+                .build();
+        pool.acquire().block().release().block();
+
+        AtomicBoolean disposed = new AtomicBoolean();
+        pool.disposeLater().subscribe(null, null, () -> disposed.set(true));
+
+        destroy.assertSubscribers(1);
+        assertThat(pool.isDisposed()).isTrue();
+        assertThat(disposed).as("idle resource still being destroyed").isFalse();
+
+        destroy.complete();
+        assertThat(disposed).as("idle resource destroyed").isTrue();
+    }
+}
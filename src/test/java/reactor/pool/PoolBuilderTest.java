@@ -30,6 +30,7 @@ import reactor.test.StepVerifier;
 import reactor.test.publisher.PublisherProbe;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 class PoolBuilderTest {
 
@@ -107,4 +108,50 @@ class PoolBuilderTest {
                     .assertNext(n -> assertThat(n).matches(numberPredicate))
                     .verifyComplete();
     }
-}
\ No newline at end of file
+
+    @Test
+    void sizeAdaptiveFeedsStrategyFromRecorder() {
+        TestUtils.InMemoryPoolMetrics recorder = new TestUtils.InMemoryPoolMetrics();
+        AbstractPool.DefaultPoolConfig<String> config = PoolBuilder.from(Mono.just("foo"))
+                                                                   .sizeAdaptive(1, 10, Duration.ofSeconds(1))
+                                                                   .metricsRecorder(recorder)
+                                                                   .buildConfig();
+
+        assertThat(config.metricsRecorder).isInstanceOf(AllocationStrategies.FeedingRecorder.class);
+        assertThat(config.allocationStrategy.estimatePermitCount()).as("initial limit").isOne();
+
+        config.metricsRecorder.recordAllocationSuccessAndLatency(10);
+
+        assertThat(config.allocationStrategy.estimatePermitCount()).as("grown limit").isEqualTo(2);
+        assertThat(recorder.getAllocationSuccessCount()).as("delegate recorded").isOne();
+    }
+
+    @Test
+    void sizeAdaptiveCreatesStrategyPerBuild() {
+        PoolBuilder<String> builder = PoolBuilder.from(Mono.just("foo"))
+                                                 .sizeAdaptive(1, 10, Duration.ofSeconds(1));
+        AbstractPool.DefaultPoolConfig<String> config1 = builder.buildConfig();
+        AbstractPool.DefaultPoolConfig<String> config2 = builder.buildConfig();
+
+        assertThat(config1.allocationStrategy).isNotSameAs(config2.allocationStrategy);
+
+        config1.metricsRecorder.recordAllocationSuccessAndLatency(10);
+
+        assertThat(config1.allocationStrategy.estimatePermitCount()).as("grown limit").isEqualTo(2);
+        assertThat(config2.allocationStrategy.estimatePermitCount()).as("other limit").isOne();
+    }
+
+    @Test
+    void sizeAdaptiveValidatesArguments() {
+        PoolBuilder<String> builder = PoolBuilder.from(Mono.just("foo"));
+
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> builder.sizeAdaptive(-1, 10, Duration.ofSeconds(1)))
+                                                                   .withMessage("minSize must be >= 0");
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> builder.sizeAdaptive(5, 4, Duration.ofSeconds(1)))
+                                                                   .withMessage("maxSize must be >= minSize");
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> builder.sizeAdaptive(1, 10, Duration.ZERO))
+                                                                   .withMessage("allocationLatencyThreshold must be positive");
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> builder.sizeAdaptive(1, 10, Duration.ofMillis(-1)))
+                                                                   .withMessage("allocationLatencyThreshold must be positive");
+    }
+}
@@ -34,6 +34,8 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.reactivestreams.Subscription;
 
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.BaseSubscriber;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -43,6 +45,7 @@ import reactor.pool.AbstractPool.DefaultPoolConfig;
 import reactor.pool.TestUtils.PoolableTest;
 import reactor.test.StepVerifier;
 import reactor.test.publisher.TestPublisher;
+import reactor.test.scheduler.VirtualTimeScheduler;
 import reactor.util.function.Tuple2;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -845,6 +848,117 @@ class SimpleFifoPoolTest {
         }
     }
 
+    @Test
+    void acquireIdleTakesFastPath() {
+        TestUtils.InMemoryPoolMetrics recorder = new TestUtils.InMemoryPoolMetrics();
+        SimpleFifoPool<PoolableTest> pool = new SimpleFifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .metricsRecorder(recorder)
+                        .buildConfig());
+
+        PooledRef<PoolableTest> ref = pool.acquire().block();
+
+        assertThat(ref).as("acquired").isNotNull();
+        assertThat(recorder.getFastPathCount()).as("fast path").isOne();
+        assertThat(pool.acquired).as("acquired count").isOne();
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isZero();
+        assertThat(pool.elements).as("idle").isEmpty();
+    }
+
+    @Test
+    void acquireDoesntTakeFastPathWhenBorrowersPending() {
+        TestUtils.InMemoryPoolMetrics recorder = new TestUtils.InMemoryPoolMetrics();
+        SimpleFifoPool<PoolableTest> pool = new SimpleFifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .metricsRecorder(recorder)
+                        .buildConfig());
+
+        //queue a borrower without draining, so that it is pending while a resource is idle
+        AtomicReference<AbstractPool.AbstractPooledRef<PoolableTest>> queued = new AtomicReference<>();
+        AbstractPool.Borrower<PoolableTest> borrower = new AbstractPool.Borrower<>(new BaseSubscriber<AbstractPool.AbstractPooledRef<PoolableTest>>() {
+            @Override
+            protected void hookOnNext(AbstractPool.AbstractPooledRef<PoolableTest> value) {
+                queued.set(value);
+            }
+        }, pool, Duration.ZERO);
+        borrower.pendingStart = recorder.now();
+        pool.pendingOffer(borrower);
+        assertThat(pool.elements).as("idle").hasSize(1);
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isOne();
+
+        AtomicReference<PooledRef<PoolableTest>> late = new AtomicReference<>();
+        pool.acquire().subscribe(late::set);
+
+        assertThat(recorder.getFastPathCount()).as("fast path").isZero();
+        assertThat(queued.get()).as("queued borrower served first").isNotNull();
+        assertThat(recorder.getSlowPathCount()).as("slow path").isOne();
+        assertThat(late.get()).as("late borrower pending").isNull();
+
+        queued.get().release().block();
+
+        assertThat(late.get()).as("late borrower served on release").isNotNull();
+        assertThat(late.get().poolable()).isSameAs(queued.get().poolable());
+    }
+
+    @Test
+    void cancelledPendingsArePurged() {
+        SimpleFifoPool<PoolableTest> pool = new SimpleFifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .buildConfig());
+
+        PooledRef<PoolableTest> hold = pool.acquire().block();
+        assertThat(hold).as("hold").isNotNull();
+
+        Disposable.Composite pendings = Disposables.composite();
+        for (int i = 0; i < 100; i++) {
+            pendings.add(pool.acquire().subscribe());
+        }
+        pendings.dispose();
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isZero();
+        assertThat(pool.pending.size()).as("cancelled pendings still queued").isEqualTo(100);
+
+        hold.release().block();
+
+        assertThat(pool.pending.size()).as("cancelled pendings purged").isZero();
+        assertThat(pool.elements).as("idle").hasSize(1);
+    }
+
+    @Test
+    void timedOutPendingsAreCompactedBehindHead() {
+        VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+        SimpleFifoPool<PoolableTest> pool = new SimpleFifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .evictInBackground(Duration.ZERO, vts)
+                        .buildConfig());
+
+        PooledRef<PoolableTest> hold = pool.acquire().block();
+        assertThat(hold).as("hold").isNotNull();
+
+        pool.acquire().subscribe();
+        for (int i = 0; i < 100; i++) {
+            pool.acquire(Duration.ofSeconds(1)).subscribe(v -> {}, e -> {});
+        }
+        assertThat(pool.pending.size()).as("pendings queued").isEqualTo(101);
+        vts.advanceTimeBy(Duration.ofMillis(900));
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count before timeout").isEqualTo(101);
+
+        vts.advanceTimeBy(Duration.ofMillis(200));
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isOne();
+        assertThat(pool.pending.size()).as("timed out pendings compacted").isOne();
+
+        hold.release().block();
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("untimed pending served").isZero();
+        pool.dispose();
+    }
+
     @Test
     void stillacquiredAfterPoolDisposedMaintainsCount() {
         AtomicInteger cleanerCount = new AtomicInteger();
@@ -874,4 +988,29 @@ class SimpleFifoPoolTest {
 
         assertThat(pool.acquired).as("after releases").isEqualTo(0);
     }
-}
\ No newline at end of file
+
+    @Test
+    void releaseAllCancelledMidResetStillRecyclesAndServesPending() {
+        TestPublisher<Void> cleaner = TestPublisher.create();
+        SimpleFifoPool<PoolableTest> pool = new SimpleFifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .sizeMax(2)
+                        .releaseHandler(p -> cleaner.mono())
+                        .buildConfig());
+
+        List<PooledRef<PoolableTest>> refs = pool.acquire(2).collectList().block(Duration.ofSeconds(5));
+        AtomicReference<PooledRef<PoolableTest>> pending = new AtomicReference<>();
+        pool.acquire().subscribe(pending::set);
+
+        Disposable release = pool.releaseAll(refs).subscribe();
+        cleaner.assertSubscribers(2);
+        release.dispose();
+        cleaner.assertSubscribers(2);
+
+        cleaner.complete();
+
+        assertThat(pending.get()).as("pending served").isNotNull();
+        assertThat(pool.acquiredSize()).isOne();
+        assertThat(pool.idleSize()).isOne();
+    }
+}
@@ -32,6 +32,8 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.reactivestreams.Subscription;
 
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.BaseSubscriber;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -39,6 +41,7 @@ import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
 import reactor.pool.AbstractPool.DefaultPoolConfig;
 import reactor.pool.TestUtils.PoolableTest;
+import reactor.test.scheduler.VirtualTimeScheduler;
 import reactor.test.util.RaceTestUtils;
 import reactor.util.function.Tuple2;
 
@@ -725,6 +728,61 @@ class SimpleLifoPoolTest {
         }
     }
 
+    @Test
+    void cancelledPendingsArePurged() {
+        SimpleLifoPool<PoolableTest> pool = new SimpleLifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .buildConfig());
+
+        PooledRef<PoolableTest> hold = pool.acquire().block();
+        assertThat(hold).as("hold").isNotNull();
+
+        Disposable.Composite pendings = Disposables.composite();
+        for (int i = 0; i < 100; i++) {
+            pendings.add(pool.acquire().subscribe());
+        }
+        pendings.dispose();
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isZero();
+        assertThat(pool.pending.size()).as("cancelled pendings still queued").isEqualTo(100);
+
+        hold.release().block();
+
+        assertThat(pool.pending.size()).as("cancelled pendings purged").isZero();
+        assertThat(pool.elements).as("idle").hasSize(1);
+    }
+
+    @Test
+    void timedOutPendingsAreCompactedBehindHead() {
+        VirtualTimeScheduler vts = VirtualTimeScheduler.create();
+        SimpleLifoPool<PoolableTest> pool = new SimpleLifoPool<>(
+                from(Mono.fromCallable(PoolableTest::new))
+                        .initialSize(1)
+                        .sizeMax(1)
+                        .evictInBackground(Duration.ZERO, vts)
+                        .buildConfig());
+
+        PooledRef<PoolableTest> hold = pool.acquire().block();
+        assertThat(hold).as("hold").isNotNull();
+
+        for (int i = 0; i < 100; i++) {
+            pool.acquire(Duration.ofSeconds(1)).subscribe(v -> {}, e -> {});
+        }
+        pool.acquire().subscribe();
+        assertThat(pool.pending.size()).as("pendings stacked").isEqualTo(101);
+        vts.advanceTimeBy(Duration.ofMillis(900));
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count before timeout").isEqualTo(101);
+
+        vts.advanceTimeBy(Duration.ofMillis(200));
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("pending count").isOne();
+        assertThat(pool.pending.size()).as("timed out pendings compacted").isOne();
+
+        hold.release().block();
+        assertThat(AbstractPool.PENDING_COUNT.get(pool)).as("untimed pending served").isZero();
+        pool.dispose();
+    }
+
     @Test
     void stillacquiredAfterPoolDisposedMaintainsCount() {
         AtomicInteger cleanerCount = new AtomicInteger();
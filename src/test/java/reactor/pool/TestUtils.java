@@ -137,19 +137,30 @@ public class TestUtils {
 
         private final ShortCountsHistogram allocationSuccessHistogram;
         private final ShortCountsHistogram allocationErrorHistogram;
+        private final ShortCountsHistogram pendingSuccessHistogram;
+        private final ShortCountsHistogram pendingErrorHistogram;
         private final ShortCountsHistogram resetHistogram;
         private final ShortCountsHistogram destroyHistogram;
         private final LongAdder recycledCounter;
         private final LongAdder slowPathCounter;
         private final LongAdder fastPathCounter;
+        private final LongAdder pendingFastPathCounter;
         private final Histogram lifetimeHistogram;
         private final Histogram idleTimeHistogram;
+        private final TimeUnit timeUnit;
 
         public InMemoryPoolMetrics() {
-            long maxLatency = TimeUnit.HOURS.toMillis(1);
+            this(TimeUnit.MILLISECONDS);
+        }
+
+        public InMemoryPoolMetrics(TimeUnit timeUnit) {
+            this.timeUnit = timeUnit;
+            long maxLatency = timeUnit.convert(1, TimeUnit.HOURS);
             int precision = 3; //precision 3 = 1/1000 of each time unit
             allocationSuccessHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
             allocationErrorHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
+            pendingSuccessHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
+            pendingErrorHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
             resetHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
             destroyHistogram = new ShortCountsHistogram(1L, maxLatency, precision);
             lifetimeHistogram = new Histogram(precision);
@@ -157,38 +168,62 @@ public class TestUtils {
             recycledCounter = new LongAdder();
             slowPathCounter = new LongAdder();
             fastPathCounter = new LongAdder();
+            pendingFastPathCounter = new LongAdder();
         }
 
         @Override
         public long now() {
-            return System.nanoTime() / 1000000;
+            return timeUnit.convert(System.nanoTime(), TimeUnit.NANOSECONDS);
         }
 
         @Override
-        public long measureTime(long startTimeMillis) {
-            final long l = (System.nanoTime() / 1000000) - startTimeMillis;
+        public long measureTime(long startTime) {
+            final long l = now() - startTime;
             if (l <= 0) return 1;
             return l;
         }
 
         @Override
-        public void recordAllocationSuccessAndLatency(long latencyMs) {
-            allocationSuccessHistogram.recordValue(latencyMs);
+        public TimeUnit timeUnit() {
+            return timeUnit;
+        }
+
+        @Override
+        public void recordAllocationSuccessAndLatency(long latency) {
+            allocationSuccessHistogram.recordValue(latency);
+        }
+
+        @Override
+        public void recordAllocationFailureAndLatency(long latency) {
+            allocationErrorHistogram.recordValue(latency);
+        }
+
+        @Override
+        public void recordPendingSuccessAndLatency(long latency) {
+            pendingSuccessHistogram.recordValue(latency);
+        }
+
+        @Override
+        public void recordPendingSuccessAndLatency(long latency, boolean fastPath) {
+            recordPendingSuccessAndLatency(latency);
+            if (fastPath) {
+                pendingFastPathCounter.increment();
+            }
         }
 
         @Override
-        public void recordAllocationFailureAndLatency(long latencyMs) {
-            allocationErrorHistogram.recordValue(latencyMs);
+        public void recordPendingFailureAndLatency(long latency) {
+            pendingErrorHistogram.recordValue(latency);
         }
 
         @Override
-        public void recordResetLatency(long latencyMs) {
-            resetHistogram.recordValue(latencyMs);
+        public void recordResetLatency(long latency) {
+            resetHistogram.recordValue(latency);
         }
 
         @Override
-        public void recordDestroyLatency(long latencyMs) {
-            destroyHistogram.recordValue(latencyMs);
+        public void recordDestroyLatency(long latency) {
+            destroyHistogram.recordValue(latency);
         }
 
         @Override
@@ -197,13 +232,13 @@ public class TestUtils {
         }
 
         @Override
-        public void recordLifetimeDuration(long millisecondsSinceAllocation) {
-            this.lifetimeHistogram.recordValue(millisecondsSinceAllocation);
+        public void recordLifetimeDuration(long timeSinceAllocation) {
+            this.lifetimeHistogram.recordValue(timeSinceAllocation);
         }
 
         @Override
-        public void recordIdleTime(long millisecondsIdle) {
-            this.idleTimeHistogram.recordValue(millisecondsIdle);
+        public void recordIdleTime(long idleTime) {
+            this.idleTimeHistogram.recordValue(idleTime);
         }
 
         @Override
@@ -228,6 +263,26 @@ public class TestUtils {
             return allocationErrorHistogram.getTotalCount();
         }
 
+        public long getPendingSuccessCount() {
+            return pendingSuccessHistogram.getTotalCount();
+        }
+
+        public long getPendingFastPathCount() {
+            return pendingFastPathCounter.sum();
+        }
+
+        public long getPendingErrorCount() {
+            return pendingErrorHistogram.getTotalCount();
+        }
+
+        public ShortCountsHistogram getPendingSuccessHistogram() {
+            return pendingSuccessHistogram;
+        }
+
+        public ShortCountsHistogram getPendingErrorHistogram() {
+            return pendingErrorHistogram;
+        }
+
         public long getResetCount() {
             return resetHistogram.getTotalCount();
         }